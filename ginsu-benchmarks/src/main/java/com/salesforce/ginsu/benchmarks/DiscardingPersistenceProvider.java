@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.benchmarks;
+
+import com.salesforce.ginsu.persistence.PersistenceProvider;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+/**
+ * Accepts rows and throws them away, so that benchmarks measure only the row layer.  The last request is kept so
+ * that the JIT can't optimize away building its row, and so that benchmarks can do more with the row.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+class DiscardingPersistenceProvider implements PersistenceProvider {
+
+    private UpdateRequest lastRequest;
+
+    @Override
+    public void validateSchema(ValidateSchemaRequest request) {
+    }
+
+    @Override
+    public void createSchema(CreateSchemaRequest request) {
+    }
+
+    @Override
+    public SurrogateKey update(UpdateRequest request) {
+        this.lastRequest = request;
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    UpdateRequest getLastRequest() {
+        return lastRequest;
+    }
+}
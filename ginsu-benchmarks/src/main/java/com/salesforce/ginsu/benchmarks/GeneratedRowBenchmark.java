@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.benchmarks;
+
+import com.salesforce.ginsu.persistence.Row;
+import com.salesforce.ginsu.persistence.jdbc.JdbcRowBinder;
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.SchemaBuilder;
+import com.salesforce.ginsu.schema.Table;
+import com.salesforce.ginsu.schema.TableBuilder;
+import com.salesforce.ginsu.warehouse.RowBuilder;
+import com.salesforce.ginsu.warehouse.Warehouse;
+import com.salesforce.ginsu.warehouse.WarehouseBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generic row class against rows generated per table (SchemaBuilder.setGeneratedRowClasses()) on the
+ * per-row work of the ETL path: building a fact row, hashing and comparing it as the key cache would, and binding it
+ * to an INSERT.  Binding is to an in-memory H2 statement that's never executed.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedRowBenchmark {
+
+    private static final int MEASURES = 6;
+
+    @Param({"false", "true"})
+    public boolean generated;
+
+    private Warehouse warehouse;
+    private DiscardingPersistenceProvider persistence;
+    private Table fact;
+    private final Column<Long>[] longColumns = new Column[MEASURES];
+    private final Column<Double>[] doubleColumns = new Column[MEASURES];
+    private Column<String> nameColumn;
+    private JdbcRowBinder binder;
+    private Connection conn;
+    private PreparedStatement stmt;
+    private Row previous;
+    private long counter;
+
+    @Setup
+    public void setup() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create().setGeneratedRowClasses(generated);
+        final TableBuilder tb = sb.factTableBuilder("measures");
+        final StringBuilder ddl = new StringBuilder("CREATE TABLE MEASURES (NAME VARCHAR(255)");
+        final StringBuilder insert = new StringBuilder("INSERT INTO MEASURES VALUES (?");
+        nameColumn = tb.addColumn("name", ColumnType.STRING).build();
+        for (int i = 0; i < MEASURES; i++) {
+            longColumns[i] = tb.addColumn("long" + i, ColumnType.LONG).build();
+            doubleColumns[i] = tb.addColumn("double" + i, ColumnType.DOUBLE).build();
+            ddl.append(", LONG").append(i).append(" BIGINT, DOUBLE").append(i).append(" DOUBLE");
+            insert.append(", ?, ?");
+        }
+        this.fact = tb.build();
+        this.persistence = new DiscardingPersistenceProvider();
+        this.warehouse = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(persistence).build();
+        this.conn = DriverManager.getConnection("jdbc:h2:mem:");
+        try (final Statement s = conn.createStatement()) {
+            s.execute(ddl.append(')').toString());
+        }
+        this.stmt = conn.prepareStatement(insert.append(')').toString());
+        this.previous = build(0);
+        this.binder = JdbcRowBinder.forValueColumns(persistence.getLastRequest().getTableDef());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        stmt.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public Object build() {
+        return build(counter++);
+    }
+
+    @Benchmark
+    public boolean buildAndCompare() {
+        // what a key cache lookup does with a new row
+        final Row row = build(counter++);
+        return row.hashCode() == previous.hashCode() && row.equals(previous);
+    }
+
+    @Benchmark
+    public int buildAndBind() throws SQLException {
+        final Row row = build(counter++);
+        return binder.bind(stmt, 1, row);
+    }
+
+    private Row build(final long n) {
+        // values are large enough to miss the Long.valueOf cache
+        final long base = n * 1000003L;
+        final RowBuilder rb = warehouse.buildRow(fact);
+        rb.set(nameColumn, "row");
+        for (int i = 0; i < MEASURES; i++) {
+            rb.setLong(longColumns[i], base + i);
+            rb.setDouble(doubleColumns[i], base * 0.5 + i);
+        }
+        rb.insert();
+        return persistence.getLastRequest().getRow();
+    }
+}
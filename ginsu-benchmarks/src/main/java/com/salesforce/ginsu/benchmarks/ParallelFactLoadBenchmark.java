@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.benchmarks;
+
+import com.salesforce.ginsu.persist.h2.H2PersistenceProviderBuilder;
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.SchemaBuilder;
+import com.salesforce.ginsu.schema.Table;
+import com.salesforce.ginsu.schema.TableBuilder;
+import com.salesforce.ginsu.warehouse.RowBuilder;
+import com.salesforce.ginsu.warehouse.Warehouse;
+import com.salesforce.ginsu.warehouse.WarehouseBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+
+/**
+ * Loads a fixed number of fact rows into an in-memory H2 warehouse from 1, 4, 8 and 16 threads, either from a
+ * hand-rolled thread pool calling RowBuilder.insert() or through Warehouse.loadParallel().  The score is rows per
+ * second for the whole load, including the drain on close().
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelFactLoadBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int MEASURES = 4;
+    private static final AtomicInteger dbCounter = new AtomicInteger();
+
+    @Param({"1", "4", "8", "16"})
+    public int threads;
+
+    @Param({"5000"})
+    public int batchSize;
+
+    @Param({"executor", "loadParallel"})
+    public String loader;
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void load() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.factTableBuilder("load");
+        final Column<Long>[] longColumns = new Column[MEASURES];
+        final Column<Double>[] doubleColumns = new Column[MEASURES];
+        for (int i = 0; i < MEASURES; i++) {
+            longColumns[i] = tb.addColumn("long" + i, ColumnType.LONG).build();
+            doubleColumns[i] = tb.addColumn("double" + i, ColumnType.DOUBLE).build();
+        }
+        final Table fact = tb.build();
+        final Logger quiet = Logger.getAnonymousLogger();
+        quiet.setLevel(Level.WARNING);
+        final Warehouse warehouse = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(
+                new H2PersistenceProviderBuilder().
+                        connectionString("jdbc:h2:mem:load" + dbCounter.incrementAndGet() + ";MULTI_THREADED=1").
+                        insertBatchSize(batchSize).
+                        logger(quiet).
+                        build()).setLoadParallelism(threads).build();
+        if (loader.equals("loadParallel")) {
+            try {
+                warehouse.loadParallel(fact, LongStream.range(0, ROWS).parallel().boxed(), (r, rb) -> {
+                    for (int i = 0; i < MEASURES; i++) {
+                        rb.setLong(longColumns[i], r * 31 + i);
+                        rb.setDouble(doubleColumns[i], r * 0.5 + i);
+                    }
+                    return true;
+                });
+            } finally {
+                warehouse.close();
+            }
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int first = t * (ROWS / threads);
+                final int last = (t == threads - 1) ? ROWS : first + (ROWS / threads);
+                futures.add(executor.submit(() -> {
+                    for (long r = first; r < last; r++) {
+                        final RowBuilder rb = warehouse.buildRow(fact);
+                        for (int i = 0; i < MEASURES; i++) {
+                            rb.setLong(longColumns[i], r * 31 + i);
+                            rb.setDouble(doubleColumns[i], r * 0.5 + i);
+                        }
+                        rb.insert();
+                    }
+                }));
+            }
+            for (final Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+            warehouse.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.benchmarks;
+
+import com.salesforce.ginsu.persistence.PersistenceException;
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.SchemaBuilder;
+import com.salesforce.ginsu.schema.Table;
+import com.salesforce.ginsu.schema.TableBuilder;
+import com.salesforce.ginsu.warehouse.RowBuilder;
+import com.salesforce.ginsu.warehouse.Warehouse;
+import com.salesforce.ginsu.warehouse.WarehouseBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building fact rows through the boxing RowBuilder.set() against the unboxed setters.  Run with
+ * '-prof gc' and compare gc.alloc.rate.norm.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowBuilderBenchmark {
+
+    private static final int MEASURES = 6;
+
+    private Warehouse warehouse;
+    private Table fact;
+    private final Column<Long>[] longColumns = new Column[MEASURES];
+    private final Column<Double>[] doubleColumns = new Column[MEASURES];
+    private long counter;
+
+    @Setup
+    public void setup() throws PersistenceException {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.factTableBuilder("measures");
+        for (int i = 0; i < MEASURES; i++) {
+            longColumns[i] = tb.addColumn("long" + i, ColumnType.LONG).build();
+            doubleColumns[i] = tb.addColumn("double" + i, ColumnType.DOUBLE).build();
+        }
+        this.fact = tb.build();
+        this.warehouse = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new DiscardingPersistenceProvider()).build();
+    }
+
+    @Benchmark
+    public Object boxed() {
+        // values are large enough to miss the Long.valueOf cache
+        final long base = (counter++) * 1000003L;
+        final RowBuilder rb = warehouse.buildRow(fact);
+        for (int i = 0; i < MEASURES; i++) {
+            rb.set(longColumns[i], base + i);
+            rb.set(doubleColumns[i], base * 0.5 + i);
+        }
+        return rb.insert();
+    }
+
+    @Benchmark
+    public Object unboxed() {
+        final long base = (counter++) * 1000003L;
+        final RowBuilder rb = warehouse.buildRow(fact);
+        for (int i = 0; i < MEASURES; i++) {
+            rb.setLong(longColumns[i], base + i);
+            rb.setDouble(doubleColumns[i], base * 0.5 + i);
+        }
+        return rb.insert();
+    }
+}
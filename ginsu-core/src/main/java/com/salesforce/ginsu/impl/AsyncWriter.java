@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.warehouse.WarehouseBuilder.AsyncBackPressure;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs the updates behind RowBuilder.insertAsync() and upsertAsync() on a fixed pool of writer threads, fed by a
+ * bounded queue.  Each writer calls the PersistenceProvider like any other loader thread would, so a provider that
+ * batches per thread (as H2's does) groups each writer's rows into batches per table while the callers go back to
+ * producing rows.
+ *
+ * When the queue is full, what happens to the caller depends on the AsyncBackPressure.  Updates submitted from a
+ * writer thread, e.g. a fact row chained on a dimension key's future, run right there instead of being queued;
+ * otherwise a full queue could leave every writer waiting on itself.  Writer threads are started on first use.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+final class AsyncWriter implements Closeable {
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    AsyncWriter(final int threads, final int queueCapacity, final AsyncBackPressure backPressure) {
+        if (threads <= 0) throw new IllegalArgumentException("invalid thread count " + threads);
+        if (queueCapacity <= 0) throw new IllegalArgumentException("invalid queue capacity " + queueCapacity);
+        final String namePrefix = "ginsu-async-writer-" + poolCounter.incrementAndGet() + "-";
+        final AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new WriterThread(this, r, namePrefix + threadCounter.incrementAndGet()),
+                createRejectionHandler(requireNonNull(backPressure)));
+    }
+
+    /**
+     * Queues the update to run on a writer thread.
+     *
+     * @return a future that completes with whatever the update returns, or with whatever it throws.  It also
+     * completes exceptionally with a RejectedExecutionException if the update couldn't be queued.
+     */
+    <T> CompletableFuture<T> submit(final Supplier<T> update) {
+        requireNonNull(update);
+        final CompletableFuture<T> out = new CompletableFuture<>();
+        final Runnable task = () -> {
+            try {
+                out.complete(update.get());
+            } catch (Throwable t) {
+                out.completeExceptionally(t);
+            }
+        };
+        final Thread current = Thread.currentThread();
+        if (current instanceof WriterThread && ((WriterThread) current).owner == this) {
+            task.run();
+            return out;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            out.completeExceptionally(e);
+        }
+        return out;
+    }
+
+    /**
+     * Stops taking updates and waits for the ones already queued to finish.
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting; the queue is bounded, so it will drain
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for async updates to finish");
+        }
+    }
+
+    private static RejectedExecutionHandler createRejectionHandler(final AsyncBackPressure backPressure) {
+        switch (backPressure) {
+            case BLOCK:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) throw new RejectedExecutionException("warehouse is closed");
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("interrupted waiting for room in the queue", e);
+                    }
+                    // close() may have run while we waited, and the workers may be gone; if nobody has taken the task,
+                    // take it back so that its future fails rather than never completing
+                    if (executor.isShutdown() && executor.getQueue().remove(task)) {
+                        throw new RejectedExecutionException("warehouse is closed");
+                    }
+                };
+            case CALLER_RUNS:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) throw new RejectedExecutionException("warehouse is closed");
+                    task.run();
+                };
+            case REJECT:
+                return (task, executor) -> {
+                    throw new RejectedExecutionException(executor.isShutdown() ? "warehouse is closed" : "async queue is full");
+                };
+            default:
+                throw new IllegalArgumentException("unknown back pressure " + backPressure);
+        }
+    }
+
+    private static final class WriterThread extends Thread {
+
+        private final AsyncWriter owner;
+
+        WriterThread(final AsyncWriter owner, final Runnable r, final String name) {
+            super(r, name);
+            this.owner = owner;
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.DateDimensionBuilder.Grain;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.Immutable;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.IsoFields;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The members of a date dimension: a row for every day or hour in a range.  A day's key is its date as a yyyymmdd
+ * number, and an hour's is the number of hours since the epoch, so neither depends on the range and both can be read
+ * straight off the key.
+ *
+ * The start of every day in the range is kept in an array.  The day an instant falls in is estimated by dividing by
+ * the length of a day and then corrected for daylight saving time, which comes to a step or two along the array.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class CalendarMembers implements FixedMembers {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The columns of a date dimension, in the order they're added to the table.
+     */
+    enum Attribute {
+        TIME("time", ColumnType.TIMESTAMP),
+        DATE("date", ColumnType.DATE),
+        HOUR("hour", ColumnType.INTEGER),
+        YEAR("year", ColumnType.INTEGER),
+        QUARTER("quarter", ColumnType.INTEGER),
+        MONTH("month", ColumnType.INTEGER),
+        DAY_OF_MONTH("dayOfMonth", ColumnType.INTEGER),
+        DAY_OF_WEEK("dayOfWeek", ColumnType.INTEGER),
+        DAY_OF_YEAR("dayOfYear", ColumnType.INTEGER),
+        WEEK_OF_YEAR("weekOfYear", ColumnType.INTEGER),
+        WEEK_YEAR("weekYear", ColumnType.INTEGER),
+        IS_WEEKEND("isWeekend", ColumnType.BOOLEAN),
+        FISCAL_YEAR("fiscalYear", ColumnType.INTEGER),
+        FISCAL_QUARTER("fiscalQuarter", ColumnType.INTEGER),
+        FISCAL_PERIOD("fiscalPeriod", ColumnType.INTEGER);
+
+        final String columnName;
+        final ColumnType type;
+
+        Attribute(final String columnName, final ColumnType type) {
+            this.columnName = requireNonNull(columnName);
+            this.type = requireNonNull(type);
+        }
+
+        /**
+         * @return the attributes of a dimension with the given grain.  The first one identifies a row.
+         */
+        static List<Attribute> forGrain(final Grain grain) {
+            final List<Attribute> out = new ArrayList<>(Arrays.asList(values()));
+            if (grain == Grain.DAY) {
+                out.remove(TIME);
+                out.remove(HOUR);
+            }
+            return out;
+        }
+    }
+
+    private final Grain grain;
+    private final LocalDate first;
+    private final LocalDate last;
+    private final ZoneId zone;
+    private final Month fiscalYearStart;
+    private final Map<Attribute, ColumnImpl<?>> columns;
+    private final ColumnImpl<? extends java.util.Date> dateColumn;
+    private final long[] dayStarts;
+    private final int[] dayKeys;
+    private final long firstHour;
+    private final int size;
+
+    /**
+     * @param dateColumn the column for the first of Attribute.forGrain(grain), which rows are looked up by.
+     * @param columns    the table's column for each of Attribute.forGrain(grain), including dateColumn.
+     * @throws IllegalStateException if there would be more than MAX_MEMBERS rows.
+     */
+    CalendarMembers(final Grain grain, final LocalDate first, final LocalDate last, final ZoneId zone,
+                    final Month fiscalYearStart, final ColumnImpl<? extends java.util.Date> dateColumn,
+                    final Map<Attribute, ColumnImpl<?>> columns) {
+        this.grain = requireNonNull(grain);
+        this.first = requireNonNull(first);
+        this.last = requireNonNull(last);
+        this.zone = requireNonNull(zone);
+        this.fiscalYearStart = requireNonNull(fiscalYearStart);
+        this.columns = ImmutableMap.copyOf(columns);
+        if (!this.columns.keySet().equals(EnumSet.copyOf(Attribute.forGrain(grain)))) {
+            throw new IllegalArgumentException("expected columns for " + Attribute.forGrain(grain) + ", got " + columns.keySet());
+        }
+        this.dateColumn = requireNonNull(dateColumn);
+        if (this.columns.get(Attribute.forGrain(grain).get(0)) != dateColumn) {
+            throw new IllegalArgumentException(dateColumn.getName() + " is not the " + Attribute.forGrain(grain).get(0) + " column");
+        }
+        final long days = last.toEpochDay() - first.toEpochDay() + 1;
+        if (days < 1) throw new IllegalArgumentException(first + " is after " + last);
+        if (days > MAX_MEMBERS) throw new IllegalStateException("date dimension has more than " + MAX_MEMBERS + " days");
+        // one more than the number of days, so that every day has an end
+        this.dayStarts = new long[(int) days + 1];
+        this.dayKeys = new int[(int) days];
+        for (int i = 0; i <= days; i++) {
+            final LocalDate date = first.plusDays(i);
+            dayStarts[i] = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            if (i < days) dayKeys[i] = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+        }
+        if (grain == Grain.HOUR) {
+            this.firstHour = Math.floorDiv(dayStarts[0], HOUR_MILLIS);
+            final long hours = Math.floorDiv(dayStarts[(int) days] - 1, HOUR_MILLIS) + 1 - firstHour;
+            if (hours > MAX_MEMBERS) throw new IllegalStateException("date dimension has more than " + MAX_MEMBERS + " hours");
+            this.size = (int) hours;
+        } else {
+            this.firstHour = 0;
+            this.size = (int) days;
+        }
+    }
+
+    ColumnImpl<? extends java.util.Date> getDateColumn() {
+        return this.dateColumn;
+    }
+
+    @Override
+    public SurrogateKey getKey(final RowImpl row) {
+        if (row.isNull(dateColumn)) throw new IllegalArgumentException(dateColumn.getName() + " can't be null");
+        return getKey(row.getEpochMillis(dateColumn));
+    }
+
+    /**
+     * Hours are counted from the epoch, so an hour of a zone whose offset isn't a whole number of hours starts
+     * part way through a local hour.
+     */
+    SurrogateKey getKey(final long epochMillis) {
+        if (grain == Grain.HOUR) {
+            final long hour = Math.floorDiv(epochMillis, HOUR_MILLIS);
+            if (hour < firstHour || hour >= firstHour + size) throw outOfRange(epochMillis);
+            return new LongSurrogateKey(hour);
+        }
+        if (epochMillis < dayStarts[0] || epochMillis >= dayStarts[dayStarts.length - 1]) throw outOfRange(epochMillis);
+        int i = (int) Math.min((epochMillis - dayStarts[0]) / DAY_MILLIS, dayKeys.length - 1);
+        while (dayStarts[i] > epochMillis) i--;
+        while (dayStarts[i + 1] <= epochMillis) i++;
+        return new LongSurrogateKey(dayKeys[i]);
+    }
+
+    SurrogateKey getKey(final LocalDate date) {
+        if (grain != Grain.DAY) throw new IllegalStateException("dimension has a row per " + grain + ", not per day");
+        if (date.isBefore(first) || date.isAfter(last)) {
+            throw new IllegalArgumentException(date + " is outside " + first + " to " + last);
+        }
+        return new LongSurrogateKey(date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth());
+    }
+
+    @Override
+    public List<RowImpl> getRows(final TableImpl table) {
+        requireNonNull(table);
+        return new AbstractList<RowImpl>() {
+            @Override
+            public RowImpl get(final int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+                final long start = grain == Grain.DAY ? dayStarts[index] : (firstHour + index) * HOUR_MILLIS;
+                final ZonedDateTime time = Instant.ofEpochMilli(start).atZone(zone);
+                final Object[] values = new Object[table.getColumnCount()];
+                for (final Map.Entry<Attribute, ColumnImpl<?>> column : columns.entrySet()) {
+                    values[column.getValue().getOrdinal()] = getValue(column.getKey(), time);
+                }
+                final RowImpl out = new RowImpl(table, values);
+                out.setKey(new LongSurrogateKey(grain == Grain.DAY ? dayKeys[index] : firstHour + index));
+                return out;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Object getValue(final Attribute attribute, final ZonedDateTime time) {
+        final LocalDate date = time.toLocalDate();
+        switch (attribute) {
+            case TIME:
+                return new Timestamp(time.toInstant().toEpochMilli());
+            case DATE:
+                return new java.sql.Date(date.atStartOfDay(zone).toInstant().toEpochMilli());
+            case HOUR:
+                return time.getHour();
+            case YEAR:
+                return date.getYear();
+            case QUARTER:
+                return (date.getMonthValue() - 1) / 3 + 1;
+            case MONTH:
+                return date.getMonthValue();
+            case DAY_OF_MONTH:
+                return date.getDayOfMonth();
+            case DAY_OF_WEEK:
+                return date.getDayOfWeek().getValue();
+            case DAY_OF_YEAR:
+                return date.getDayOfYear();
+            case WEEK_OF_YEAR:
+                return date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case WEEK_YEAR:
+                return date.get(IsoFields.WEEK_BASED_YEAR);
+            case IS_WEEKEND:
+                return date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+            case FISCAL_YEAR:
+                return date.getMonthValue() < fiscalYearStart.getValue() || fiscalYearStart == Month.JANUARY ?
+                        date.getYear() : date.getYear() + 1;
+            case FISCAL_QUARTER:
+                return (getFiscalPeriod(date) - 1) / 3 + 1;
+            case FISCAL_PERIOD:
+                return getFiscalPeriod(date);
+            default:
+                throw new IllegalStateException("unknown attribute " + attribute);
+        }
+    }
+
+    /**
+     * @return the month of the fiscal year, from 1 to 12.
+     */
+    private int getFiscalPeriod(final LocalDate date) {
+        return (date.getMonthValue() - fiscalYearStart.getValue() + 12) % 12 + 1;
+    }
+
+    private IllegalArgumentException outOfRange(final long epochMillis) {
+        return new IllegalArgumentException(Instant.ofEpochMilli(epochMillis) + " is outside " + first + " to " + last + " in " + zone);
+    }
+}
@@ -11,7 +11,6 @@ import com.salesforce.ginsu.schema.ColumnBuilder;
 import com.salesforce.ginsu.schema.ColumnType;
 
 import java.util.Properties;
-import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
@@ -22,7 +21,12 @@ import static java.util.Objects.requireNonNull;
  */
 class ColumnBuilderImpl<T> implements ColumnBuilder<T> {
 
-    private final Consumer<ColumnImpl> builtColumnConsumer;
+    /**
+     * The length of STRING columns that don't say otherwise.
+     */
+    static final int DEFAULT_MAX_LENGTH = 255;
+
+    private final TableBuilderImpl owner;
     private final ColumnType type;
     private String name;
     private Properties properties;
@@ -32,19 +36,20 @@ class ColumnBuilderImpl<T> implements ColumnBuilder<T> {
     private boolean isUsedUp = false;
     private boolean needsIndex = true;
     private T defaultValueOrNull;
+    private int maxLength = DEFAULT_MAX_LENGTH;
 
-    ColumnBuilderImpl(final String name, final ColumnType type, final Consumer<ColumnImpl> consumer) {
+    ColumnBuilderImpl(final String name, final ColumnType type, final TableBuilderImpl owner) {
         this.name = requireNonNull(name);
         this.type = requireNonNull(type);
         this.referencedTable = null;
-        this.builtColumnConsumer = requireNonNull(consumer);
+        this.owner = requireNonNull(owner);
     }
 
-    ColumnBuilderImpl(final String name, final TableImpl referencedTable, final Consumer<ColumnImpl> consumer) {
+    ColumnBuilderImpl(final String name, final TableImpl referencedTable, final TableBuilderImpl owner) {
         this.name = requireNonNull(name);
         this.type = ColumnType.FOREIGN_KEY;
         this.referencedTable = requireNonNull(referencedTable);
-        this.builtColumnConsumer = requireNonNull(consumer);
+        this.owner = requireNonNull(owner);
     }
 
     @Override
@@ -57,6 +62,8 @@ class ColumnBuilderImpl<T> implements ColumnBuilder<T> {
     @Override
     public ColumnBuilder setMaxLength(int length) {
         checkState();
+        if (length <= 0) throw new IllegalArgumentException("invalid max length " + length);
+        this.maxLength = length;
         return this;
     }
 
@@ -82,8 +89,9 @@ class ColumnBuilderImpl<T> implements ColumnBuilder<T> {
     @Override
     public Column<T> build() {
         checkState();
-        final ColumnImpl<T> built = new ColumnImpl<T>(name, defaultValueOrNull, isNullable, type, referencedTable, valueConverter, needsIndex);
-        this.builtColumnConsumer.accept(built);
+        final ColumnImpl<T> built = new ColumnImpl<T>(name, owner.getNextColumnOrdinal(), defaultValueOrNull, isNullable, type,
+                referencedTable, valueConverter, needsIndex, maxLength);
+        this.owner.accept(built);
         isUsedUp = true;
         return built;
     }
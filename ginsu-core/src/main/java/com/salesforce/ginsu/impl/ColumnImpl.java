@@ -24,20 +24,26 @@ import static java.util.Objects.requireNonNull;
 final class ColumnImpl<T> implements Column<T>, ColumnDef {
 
     private final String name;
+    private final int ordinal;
     private final T defaultValueOrNull;
     private final boolean isNullable;
     private final boolean needsIndex;
     private final ColumnType type;
     private final TableImpl referencedTable;
     private final Function<Object, T> valueConverter;
+    private final int maxLength;
 
-    ColumnImpl(String name, T defaultValueOrNull, boolean isNullable, ColumnType type, TableImpl referencedTable, Function<Object, T> valueConverterOrNull, boolean needsIndex) {
+    ColumnImpl(String name, int ordinal, T defaultValueOrNull, boolean isNullable, ColumnType type, TableImpl referencedTable, Function<Object, T> valueConverterOrNull, boolean needsIndex, int maxLength) {
         this.name = requireNonNull(name);
+        if (ordinal < 0) throw new IllegalArgumentException("invalid ordinal " + ordinal);
+        this.ordinal = ordinal;
         this.defaultValueOrNull = defaultValueOrNull;
         this.isNullable = isNullable;
         this.type = requireNonNull(type);
         this.valueConverter = valueConverterOrNull;
         this.needsIndex = needsIndex;
+        if (maxLength <= 0) throw new IllegalArgumentException("invalid max length " + maxLength);
+        this.maxLength = maxLength;
         switch (type) {
             case FOREIGN_KEY:
                 this.referencedTable = requireNonNull(referencedTable);
@@ -80,6 +86,29 @@ final class ColumnImpl<T> implements Column<T>, ColumnDef {
         return this.needsIndex;
     }
 
+    @Override
+    public int getMaxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * @return the position of this column in its table's value columns.  Rows use it to index their values.
+     */
+    int getOrdinal() {
+        return this.ordinal;
+    }
+
+    boolean hasValueConverter() {
+        return this.valueConverter != null;
+    }
+
+    /**
+     * @return the function that values are passed through before they're set, or null if there isn't one.
+     */
+    Function<Object, T> getValueConverter() {
+        return this.valueConverter;
+    }
+
     public T getDefaultValue() {
         return this.defaultValueOrNull;
     }
@@ -112,7 +141,8 @@ final class ColumnImpl<T> implements Column<T>, ColumnDef {
                 throw new IllegalArgumentException(this.name + " can't be set to null");
             }
         } else {
-            if (!this.type.getJavaType().isAssignableFrom(value.getClass())) {
+            final Class<?> javaType = this.type.getJavaType();
+            if (value.getClass() != javaType && !javaType.isAssignableFrom(value.getClass())) {
                 throw new IllegalArgumentException(this.name + " doesn't accept values of type " + value.getClass().getName());
             }
         }
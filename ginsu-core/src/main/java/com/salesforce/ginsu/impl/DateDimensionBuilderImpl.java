@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.impl.CalendarMembers.Attribute;
+import com.salesforce.ginsu.schema.DateDimension;
+import com.salesforce.ginsu.schema.DateDimensionBuilder;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+class DateDimensionBuilderImpl implements DateDimensionBuilder {
+
+    private final TableBuilderImpl tableBuilder;
+    private LocalDate first;
+    private LocalDate last;
+    private Grain grain = Grain.DAY;
+    private ZoneId zone = ZoneId.systemDefault();
+    private Month fiscalYearStart = Month.JANUARY;
+
+    /**
+     * @param tableBuilder builds the dimension's table, which this adds the columns to.
+     */
+    DateDimensionBuilderImpl(TableBuilderImpl tableBuilder) {
+        this.tableBuilder = requireNonNull(tableBuilder);
+    }
+
+    @Override
+    public DateDimensionBuilder setRange(LocalDate first, LocalDate last) {
+        requireNonNull(first);
+        requireNonNull(last);
+        if (first.isAfter(last)) throw new IllegalArgumentException(first + " is after " + last);
+        this.first = first;
+        this.last = last;
+        return this;
+    }
+
+    @Override
+    public DateDimensionBuilder setGrain(Grain grain) {
+        this.grain = requireNonNull(grain);
+        return this;
+    }
+
+    @Override
+    public DateDimensionBuilder setTimeZone(ZoneId zone) {
+        this.zone = requireNonNull(zone);
+        return this;
+    }
+
+    @Override
+    public DateDimensionBuilder setFiscalYearStart(Month month) {
+        this.fiscalYearStart = requireNonNull(month);
+        return this;
+    }
+
+    @Override
+    public DateDimension build() {
+        if (this.first == null) throw new IllegalStateException("no range given for the date dimension");
+        final List<Attribute> attributes = Attribute.forGrain(grain);
+        // built here rather than through addColumn(), whose builder is raw, so that it keeps its type
+        final ColumnImpl<java.util.Date> dateColumn = (ColumnImpl<java.util.Date>) new ColumnBuilderImpl<java.util.Date>(
+                attributes.get(0).columnName, attributes.get(0).type, tableBuilder).build();
+        final Map<Attribute, ColumnImpl<?>> columns = new EnumMap<>(Attribute.class);
+        columns.put(attributes.get(0), dateColumn);
+        for (final Attribute attribute : attributes.subList(1, attributes.size())) {
+            columns.put(attribute, (ColumnImpl<?>) tableBuilder.addColumn(attribute.columnName, attribute.type).build());
+        }
+        final CalendarMembers members = new CalendarMembers(grain, first, last, zone, fiscalYearStart, dateColumn, columns);
+        tableBuilder.setPrimaryKeyColumns(Collections.singletonList(dateColumn));
+        tableBuilder.fixedMembers(members);
+        return new DateDimensionImpl((TableImpl) tableBuilder.build(), members);
+    }
+}
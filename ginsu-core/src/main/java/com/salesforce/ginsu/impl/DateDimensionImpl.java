@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.DateDimension;
+import com.salesforce.ginsu.schema.Table;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.Immutable;
+import java.time.LocalDate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class DateDimensionImpl implements DateDimension {
+
+    private final TableImpl table;
+    private final CalendarMembers members;
+
+    DateDimensionImpl(TableImpl table, CalendarMembers members) {
+        this.table = requireNonNull(table);
+        this.members = requireNonNull(members);
+    }
+
+    @Override
+    public Table getTable() {
+        return this.table;
+    }
+
+    @Override
+    public Column<? extends java.util.Date> getDateColumn() {
+        return members.getDateColumn();
+    }
+
+    @Override
+    public SurrogateKey getKey(long epochMillis) {
+        return members.getKey(epochMillis);
+    }
+
+    @Override
+    public SurrogateKey getKey(LocalDate date) {
+        return members.getKey(requireNonNull(date));
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import java.util.List;
+
+/**
+ * The members of a dimension whose rows are all known when the schema is built.  The rows are written along with the
+ * table, and the key of a row is computed from its values rather than looked up, so upserting one doesn't touch the
+ * PersistenceProvider or the key cache.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+interface FixedMembers {
+
+    /**
+     * Every member is written when the table is created, so there had better not be too many.
+     */
+    int MAX_MEMBERS = 1 << 20;
+
+    /**
+     * @return the key of the member with the row's values.
+     * @throws IllegalArgumentException if none of the members have them.
+     */
+    SurrogateKey getKey(RowImpl row);
+
+    /**
+     * @return every member of the table, with its key set, in key order.
+     */
+    List<RowImpl> getRows(TableImpl table);
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.jdbc.JdbcBindable;
+import com.salesforce.ginsu.persistence.jdbc.JdbcRowBinder;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Objects;
+
+/**
+ * Base class of the row classes that RowClassGenerator generates for a table.  The generated subclass has a field
+ * per column, typed by column type, and implements the abstract methods here with a switch on the ordinal, or, for
+ * valuesEqual(), computeHashCode() and bindValues(), straight-line code over every column.
+ *
+ * The static methods are what the generated code calls for anything more than a field access.  They're small enough
+ * for the JIT to inline.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+abstract class GeneratedRow extends RowImpl implements JdbcBindable {
+
+    GeneratedRow(TableImpl table) {
+        super(table);
+    }
+
+    @Override
+    abstract void set(int ordinal, Object value);
+
+    @Override
+    abstract void setPrimitive(int ordinal, long value);
+
+    @Override
+    abstract boolean isNull(int ordinal);
+
+    @Override
+    abstract Object getValue(int ordinal);
+
+    /**
+     * @return the value of a non-null INTEGER, LONG, DOUBLE (raw bits), BOOLEAN (0 or 1), DATE or TIMESTAMP (epoch
+     * millis) column.
+     */
+    abstract long getPrimitive(int ordinal);
+
+    @Override
+    abstract boolean valuesEqual(RowImpl that);
+
+    @Override
+    abstract boolean valueEquals(RowImpl that, int ordinal);
+
+    @Override
+    abstract int valueHash(int ordinal);
+
+    @Override
+    abstract int computeHashCode();
+
+    @Override
+    public final int getInt(final ColumnDef column) {
+        return (int) getPrimitive(((ColumnImpl) column).getOrdinal());
+    }
+
+    @Override
+    public final long getLong(final ColumnDef column) {
+        return getPrimitive(((ColumnImpl) column).getOrdinal());
+    }
+
+    @Override
+    public final double getDouble(final ColumnDef column) {
+        return Double.longBitsToDouble(getPrimitive(((ColumnImpl) column).getOrdinal()));
+    }
+
+    @Override
+    public final boolean getBoolean(final ColumnDef column) {
+        return getPrimitive(((ColumnImpl) column).getOrdinal()) != 0;
+    }
+
+    @Override
+    public final long getEpochMillis(final ColumnDef column) {
+        return getPrimitive(((ColumnImpl) column).getOrdinal());
+    }
+
+    // ========================================================================
+    // Called from generated code.  Numeric columns are null if their bit in the row's presence bits is clear; bit
+    // (ordinal % 64) of presence field (ordinal / 64).  DATE and TIMESTAMP columns hold either a value or, if they
+    // were set in epoch millis, Slot.PRIMITIVE and the millis in a long field.
+
+    static boolean isAbsent(final long presence, final int ordinal) {
+        return (presence & (1L << ordinal)) == 0;
+    }
+
+    static long setPresent(final long presence, final int ordinal, final boolean isPresent) {
+        return isPresent ? presence | (1L << ordinal) : presence & ~(1L << ordinal);
+    }
+
+    /**
+     * @return true if both rows' numeric values for a column are null or they're both the same.  Doubles are passed
+     * as Double.doubleToLongBits() so that they compare the way Double.equals() does.
+     */
+    static boolean sameNumber(final long presence, final long thatPresence, final int ordinal, final long value, final long thatValue) {
+        final long bit = 1L << ordinal;
+        if ((presence & bit) != (thatPresence & bit)) return false;
+        return (presence & bit) == 0 || value == thatValue;
+    }
+
+    static boolean sameDate(final Object value, final long millis, final Object thatValue, final long thatMillis, final boolean isTimestamp) {
+        if (value == RowImpl.Slot.PRIMITIVE && thatValue == RowImpl.Slot.PRIMITIVE) return millis == thatMillis;
+        return Objects.equals(date(value, millis, isTimestamp), date(thatValue, thatMillis, isTimestamp));
+    }
+
+    static Object date(final Object value, final long millis, final boolean isTimestamp) {
+        if (value != RowImpl.Slot.PRIMITIVE) return value;
+        return isTimestamp ? new Timestamp(millis) : new java.sql.Date(millis);
+    }
+
+    static long millis(final Object value, final long millis) {
+        return value == RowImpl.Slot.PRIMITIVE ? millis : ((java.util.Date) value).getTime();
+    }
+
+    static int hashInt(final long presence, final int ordinal, final int value) {
+        return isAbsent(presence, ordinal) ? 0 : Integer.hashCode(value);
+    }
+
+    static int hashLong(final long presence, final int ordinal, final long value) {
+        return isAbsent(presence, ordinal) ? 0 : Long.hashCode(value);
+    }
+
+    static int hashDouble(final long presence, final int ordinal, final double value) {
+        return isAbsent(presence, ordinal) ? 0 : Double.hashCode(value);
+    }
+
+    static int hashBoolean(final long presence, final int ordinal, final boolean value) {
+        return isAbsent(presence, ordinal) ? 0 : Boolean.hashCode(value);
+    }
+
+    /**
+     * Hashes a DATE or TIMESTAMP the way java.util.Date does.
+     */
+    static int hashDate(final Object value, final long millis) {
+        if (value != RowImpl.Slot.PRIMITIVE) return Objects.hashCode(value);
+        return (int) millis ^ (int) (millis >> 32);
+    }
+
+    static Object boxInt(final long presence, final int ordinal, final int value) {
+        return isAbsent(presence, ordinal) ? null : Integer.valueOf(value);
+    }
+
+    static Object boxLong(final long presence, final int ordinal, final long value) {
+        return isAbsent(presence, ordinal) ? null : Long.valueOf(value);
+    }
+
+    static Object boxDouble(final long presence, final int ordinal, final double value) {
+        return isAbsent(presence, ordinal) ? null : Double.valueOf(value);
+    }
+
+    static Object boxBoolean(final long presence, final int ordinal, final boolean value) {
+        return isAbsent(presence, ordinal) ? null : Boolean.valueOf(value);
+    }
+
+    static void bindInt(final PreparedStatement stmt, final int paramIndex, final long presence, final int ordinal, final int value) throws SQLException {
+        if (isAbsent(presence, ordinal)) {
+            stmt.setNull(paramIndex, Types.INTEGER);
+        } else {
+            stmt.setInt(paramIndex, value);
+        }
+    }
+
+    static void bindLong(final PreparedStatement stmt, final int paramIndex, final long presence, final int ordinal, final long value) throws SQLException {
+        if (isAbsent(presence, ordinal)) {
+            stmt.setNull(paramIndex, Types.BIGINT);
+        } else {
+            stmt.setLong(paramIndex, value);
+        }
+    }
+
+    static void bindDouble(final PreparedStatement stmt, final int paramIndex, final long presence, final int ordinal, final double value) throws SQLException {
+        if (isAbsent(presence, ordinal)) {
+            stmt.setNull(paramIndex, Types.DOUBLE);
+        } else {
+            stmt.setDouble(paramIndex, value);
+        }
+    }
+
+    static void bindBoolean(final PreparedStatement stmt, final int paramIndex, final long presence, final int ordinal, final boolean value) throws SQLException {
+        if (isAbsent(presence, ordinal)) {
+            stmt.setNull(paramIndex, Types.BOOLEAN);
+        } else {
+            stmt.setBoolean(paramIndex, value);
+        }
+    }
+
+    static void bindDate(final PreparedStatement stmt, final int paramIndex, final Object value, final long millis) throws SQLException {
+        stmt.setDate(paramIndex, (java.sql.Date) date(value, millis, false));
+    }
+
+    static void bindTimestamp(final PreparedStatement stmt, final int paramIndex, final Object value, final long millis) throws SQLException {
+        stmt.setTimestamp(paramIndex, (Timestamp) date(value, millis, true));
+    }
+
+    static void bindString(final PreparedStatement stmt, final int paramIndex, final Object value, final int maxLength) throws SQLException {
+        JdbcRowBinder.setString(stmt, paramIndex, (String) value, maxLength);
+    }
+
+    static void bindKey(final PreparedStatement stmt, final int paramIndex, final Object value) throws SQLException {
+        JdbcRowBinder.setKey(stmt, paramIndex, value);
+    }
+
+    static IllegalArgumentException invalidOrdinal(final int ordinal) {
+        return new IllegalArgumentException("invalid ordinal " + ordinal);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded, in-process map of row values to SurrogateKey for a single table.  Sits in front of the
+ * PersistenceProvider so that upserts of rows we've already seen don't have to go to the database.
+ *
+ * Entries are keyed by the row's natural key.  If the table has columns outside of its natural key, the entry also
+ * holds the row, so that a row with changed values can be told apart.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class HeapKeyCache implements KeyCache {
+
+    private final long maximumSize;
+    private final Cache<Object, Object> cache; // SurrogateKeys, or Entries for rows with more than a natural key
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    HeapKeyCache(long maximumSize) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("invalid maximumSize " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    @Override
+    public SurrogateKey get(RowImpl row) {
+        final Object naturalKey = row.getNaturalKey();
+        final Object value = cache.getIfPresent(naturalKey);
+        final SurrogateKey out;
+        if (value instanceof Entry) {
+            final Entry entry = (Entry) value;
+            out = entry.row.equals(row) ? entry.key : null;
+        } else {
+            out = (SurrogateKey) value;
+        }
+        (out == null ? misses : hits).increment();
+        return out;
+    }
+
+    @Override
+    public void put(RowImpl row, SurrogateKey key) {
+        final Object naturalKey = row.getNaturalKey();
+        cache.put(naturalKey, naturalKey == row ? requireNonNull(key) : new Entry(row, requireNonNull(key)));
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    private static final class Entry {
+
+        private final RowImpl row;
+        private final SurrogateKey key;
+
+        Entry(final RowImpl row, final SurrogateKey key) {
+            this.row = row;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The upserts of a single dimension that are on their way to the PersistenceProvider, by natural key.  When several
+ * threads miss the key cache on the same new member at once, the first one to get here does the upsert and the rest
+ * wait for its key, rather than all of them running the same MERGE and SELECT against the same rows.
+ *
+ * A thread whose row has the same natural key as one in flight but different attributes waits for that upsert to
+ * finish and then does its own, so that updates to a member don't race each other either.  A thread whose leader
+ * failed tries again itself rather than sharing the failure.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class InFlightUpserts {
+
+    private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param upsert does the upsert and puts the key in the key cache, so that nobody who comes along after this
+     *               returns needs to wait for anything.
+     */
+    SurrogateKey upsert(final RowImpl row, final Supplier<SurrogateKey> upsert) {
+        final Object naturalKey = row.getNaturalKey();
+        while (true) {
+            final Flight mine = new Flight(row);
+            final Flight theirs = flights.putIfAbsent(naturalKey, mine);
+            if (theirs != null) {
+                final SurrogateKey key = awaitQuietly(theirs);
+                if (key != null && theirs.row.equals(row)) {
+                    coalesced.increment();
+                    return key;
+                }
+                continue;
+            }
+            try {
+                final SurrogateKey key = upsert.get();
+                mine.key.complete(key);
+                return key;
+            } catch (RuntimeException | Error e) {
+                mine.key.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(naturalKey, mine);
+            }
+        }
+    }
+
+    /**
+     * @return how many upserts were answered with another thread's key.
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the key, or null if the upsert failed.
+     */
+    private static SurrogateKey awaitQuietly(final Flight flight) {
+        try {
+            return flight.key.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    private static final class Flight {
+
+        private final RowImpl row;
+        private final CompletableFuture<SurrogateKey> key = new CompletableFuture<>();
+
+        Flight(final RowImpl row) {
+            this.row = requireNonNull(row);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.EnumToStringValueConverter;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.AbstractList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The members of a junk dimension: every combination of its columns' values.  Each column is either a BOOLEAN or a
+ * STRING with an EnumToStringValueConverter, so it has a short, fixed list of values, plus null if it's nullable.
+ *
+ * A member's key is one more than its position in the combinations, counted in mixed radix with the first column most
+ * significant.  Working out the key of a row is a comparison or two per column, with no lookups.  This also means
+ * that adding a column or an enum constant renumbers the members.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class JunkMembers implements FixedMembers {
+
+    private final ColumnImpl<?>[] columns;
+    private final Object[][] domains;
+    private final long[] weights;
+    private final int size;
+
+    private JunkMembers(final ColumnImpl<?>[] columns, final Object[][] domains) {
+        this.columns = requireNonNull(columns);
+        this.domains = requireNonNull(domains);
+        this.weights = new long[columns.length];
+        long size = 1;
+        for (int i = columns.length - 1; i >= 0; i--) {
+            weights[i] = size;
+            size *= domains[i].length;
+        }
+        this.size = (int) size;
+    }
+
+    /**
+     * @throws IllegalStateException if a column doesn't have a fixed list of values, or there are more than
+     *                               MAX_MEMBERS combinations of them.
+     */
+    static JunkMembers create(final String tableName, final List<? extends ColumnImpl<?>> columns) {
+        requireNonNull(tableName);
+        if (columns.isEmpty()) {
+            throw new IllegalStateException("junk dimension " + tableName + " has no columns");
+        }
+        final Object[][] domains = new Object[columns.size()][];
+        long size = 1;
+        for (int i = 0; i < domains.length; i++) {
+            domains[i] = getDomain(tableName, columns.get(i));
+            size *= domains[i].length;
+            if (size > MAX_MEMBERS) {
+                throw new IllegalStateException("junk dimension " + tableName + " has more than " + MAX_MEMBERS + " members");
+            }
+        }
+        return new JunkMembers(columns.toArray(new ColumnImpl<?>[0]), domains);
+    }
+
+    /**
+     * @return the column's values in the order they're counted: false before true, enum names in ordinal order, and
+     * null last.
+     */
+    private static Object[] getDomain(final String tableName, final ColumnImpl<?> column) {
+        final Object[] values;
+        if (column.getType() == ColumnType.BOOLEAN) {
+            values = new Object[]{Boolean.FALSE, Boolean.TRUE};
+        } else if (column.getType() == ColumnType.STRING && column.getValueConverter() instanceof EnumToStringValueConverter) {
+            final Enum<?>[] constants = ((EnumToStringValueConverter<?>) column.getValueConverter()).getEnumClass().getEnumConstants();
+            values = new Object[constants.length];
+            for (int i = 0; i < constants.length; i++) {
+                values[i] = constants[i].name();
+            }
+        } else {
+            throw new IllegalStateException("junk dimension " + tableName + " can't have column " + column.getName() +
+                    "; columns must be BOOLEAN or STRING with an EnumToStringValueConverter");
+        }
+        if (!column.isNullable()) return values;
+        final Object[] out = new Object[values.length + 1];
+        System.arraycopy(values, 0, out, 0, values.length);
+        return out;
+    }
+
+    @Override
+    public SurrogateKey getKey(final RowImpl row) {
+        long index = 0;
+        for (int i = 0; i < columns.length; i++) {
+            index += weights[i] * indexOf(i, row);
+        }
+        return new LongSurrogateKey(index + 1);
+    }
+
+    @Override
+    public List<RowImpl> getRows(final TableImpl table) {
+        requireNonNull(table);
+        return new AbstractList<RowImpl>() {
+            @Override
+            public RowImpl get(final int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+                final Object[] values = new Object[columns.length];
+                long rest = index;
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = domains[i][(int) (rest / weights[i])];
+                    rest %= weights[i];
+                }
+                final RowImpl out = new RowImpl(table, values);
+                out.setKey(new LongSurrogateKey(index + 1));
+                return out;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int indexOf(final int i, final RowImpl row) {
+        final ColumnImpl<?> column = columns[i];
+        if (row.isNull(column)) {
+            if (!column.isNullable()) throw new IllegalArgumentException(column.getName() + " can't be null");
+            return domains[i].length - 1;
+        }
+        if (column.getType() == ColumnType.BOOLEAN) {
+            return row.getBoolean(column) ? 1 : 0;
+        }
+        // the names are interned, so this is usually settled by the first check in equals()
+        final Object value = row.getValue(column);
+        final Object[] domain = domains[i];
+        for (int j = 0; j < domain.length; j++) {
+            if (value.equals(domain[j])) return j;
+        }
+        throw new IllegalArgumentException(value + " is not a value of " + column.getName());
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.warehouse.KeyCacheStats;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+/**
+ * In-process map of a single table's row values to SurrogateKey.  Sits in front of the PersistenceProvider so that
+ * upserts of rows we've already seen don't have to go to the database.  Implementations must be thread-safe.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+interface KeyCache extends KeyCacheStats {
+
+    /**
+     * @return the key for a row with the same values as the given row, or null if we don't have it.  A row whose
+     * natural key we have, but with different values in its other columns, is a miss, so that the change gets written.
+     */
+    SurrogateKey get(RowImpl row);
+
+    /**
+     * Remembers the key for the row's natural key, along with the rest of the row's values, replacing whatever was
+     * remembered for that natural key.  Implementations are free to not remember it.
+     */
+    void put(RowImpl row, SurrogateKey key);
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.warehouse.LoadSummary;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class LoadSummaryImpl implements LoadSummary {
+
+    private final long records;
+    private final long rows;
+    private final long elapsedNanos;
+    private final long mapNanos;
+    private final long flushNanos;
+
+    LoadSummaryImpl(long records, long rows, long elapsedNanos, long mapNanos, long flushNanos) {
+        this.records = records;
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+        this.mapNanos = mapNanos;
+        this.flushNanos = flushNanos;
+    }
+
+    @Override
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return records - rows;
+    }
+
+    @Override
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public long getMapNanos() {
+        return mapNanos;
+    }
+
+    @Override
+    public long getFlushNanos() {
+        return flushNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records, %d rows, %d skipped in %dms (%dms mapping, %dms flushing)", records, rows,
+                getSkippedCount(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), TimeUnit.NANOSECONDS.toMillis(mapNanos),
+                TimeUnit.NANOSECONDS.toMillis(flushNanos));
+    }
+}
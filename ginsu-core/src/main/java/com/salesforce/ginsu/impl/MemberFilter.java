@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.google.common.util.concurrent.Striped;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bloom filter over the members of a dimension, i.e. their natural keys, encoded with a RowKeyEncoder.  If
+ * mightContain() says no, no row with that natural key is in the table yet, so it can be inserted without first
+ * looking for it.  That only holds if every row in the table has been added, so the filter has to start out either on
+ * an empty table or after a full scan of it.
+ *
+ * Checking the filter and then inserting isn't atomic, so callers hold getLock() for the row across the check, the
+ * update and the add().  Otherwise two threads could both find a new member absent and both insert it.
+ *
+ * Rows that can't be encoded (e.g., with foreign keys that aren't LongSurrogateKeys) are always reported as maybe
+ * present.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class MemberFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int LOCK_STRIPES = 1024;
+    private static final ThreadLocal<RowKeyEncoder.Buffer> buffers = ThreadLocal.withInitial(RowKeyEncoder.Buffer::new);
+
+    private final RowKeyEncoder encoder;
+    private final BloomFilter<RowKeyEncoder.Buffer> filter;
+    private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+    /**
+     * @param encoder         for the table's natural key columns.
+     * @param expectedMembers how many members the table is expected to reach.  Past that the filter still works, but
+     *                        gives more false positives.
+     */
+    MemberFilter(RowKeyEncoder encoder, long expectedMembers) {
+        if (expectedMembers <= 0) throw new IllegalArgumentException("invalid expected members " + expectedMembers);
+        this.encoder = requireNonNull(encoder);
+        this.filter = BloomFilter.create(BufferFunnel.INSTANCE, expectedMembers, FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @return false if the row has definitely never been added.
+     */
+    boolean mightContain(final RowImpl row) {
+        final RowKeyEncoder.Buffer buffer = buffers.get();
+        return encoder.encode(requireNonNull(row), buffer) < 0 || filter.mightContain(buffer);
+    }
+
+    void add(final RowImpl row) {
+        final RowKeyEncoder.Buffer buffer = buffers.get();
+        if (encoder.encode(requireNonNull(row), buffer) >= 0) {
+            filter.put(buffer);
+        }
+    }
+
+    /**
+     * @return the lock to hold while checking for and adding the given row.  Rows with the same natural key get the
+     * same lock.
+     */
+    Lock getLock(final RowImpl row) {
+        return locks.get(row.getNaturalKey());
+    }
+
+    /**
+     * @return the locks to hold while adding the given rows, in an order that every caller takes them in, so that two
+     * threads locking overlapping batches can't deadlock.  A lock shared by several rows appears once per row.
+     */
+    Iterable<Lock> getLocks(final List<RowImpl> rows) {
+        final List<Object> naturalKeys = new ArrayList<>(rows.size());
+        for (final RowImpl row : rows) {
+            naturalKeys.add(row.getNaturalKey());
+        }
+        return locks.bulkGet(naturalKeys);
+    }
+
+    private enum BufferFunnel implements Funnel<RowKeyEncoder.Buffer> {
+        INSTANCE;
+
+        @Override
+        public void funnel(final RowKeyEncoder.Buffer buffer, final PrimitiveSink into) {
+            into.putBytes(buffer.bytes, 0, buffer.length);
+        }
+    }
+}
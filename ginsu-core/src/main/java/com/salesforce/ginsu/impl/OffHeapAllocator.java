@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands out zeroed memory outside the Java heap for a warehouse's off-heap key indexes.  Buffers are allocated
+ * directly until the budget is used up.  After that they're memory-mapped from a spill file, so that the OS can page
+ * them out rather than the process running out of memory.
+ *
+ * Direct allocations count against the JVM's -XX:MaxDirectMemorySize, so the budget shouldn't be set above it.
+ * Released buffers go away when they're garbage collected.  Space in the spill file isn't reused; the file is deleted
+ * on close().
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class OffHeapAllocator implements Closeable {
+
+    /**
+     * The largest buffer that can be allocated.  Bigger structures have to be made out of several.
+     */
+    static final int MAX_BUFFER_SIZE = 1 << 26;
+
+    private final long budgetBytes;
+    private final Path spillDirectory;
+    private long directBytes = 0;
+    private long spilledBytes = 0;
+    /**
+     * Direct buffers are MappedByteBuffers too, so this is the only way to tell the spilled ones apart.  By identity,
+     * since ByteBuffer.equals() compares contents.
+     */
+    private final Set<ByteBuffer> mappedBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Path spillFile;
+    private FileChannel spillChannel;
+
+    OffHeapAllocator(long budgetBytes, Path spillDirectory) {
+        if (budgetBytes < 0) throw new IllegalArgumentException("invalid budget " + budgetBytes);
+        this.budgetBytes = budgetBytes;
+        this.spillDirectory = requireNonNull(spillDirectory);
+    }
+
+    /**
+     * @return a zeroed, native-ordered buffer of the given size.
+     */
+    synchronized ByteBuffer allocate(final int size) {
+        if (size <= 0 || size > MAX_BUFFER_SIZE) throw new IllegalArgumentException("invalid size " + size);
+        final ByteBuffer out;
+        if (directBytes + size <= budgetBytes) {
+            out = ByteBuffer.allocateDirect(size);
+            directBytes += size;
+        } else {
+            try {
+                if (spillChannel == null) {
+                    spillFile = Files.createTempFile(spillDirectory, "ginsu-keys", ".spill");
+                    spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                out = spillChannel.map(FileChannel.MapMode.READ_WRITE, spilledBytes, size);
+                mappedBuffers.add(out);
+                spilledBytes += size;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return out.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Gives a buffer's direct memory back to the budget.  The caller must not use the buffer afterwards, and must have
+     * gotten it from allocate().
+     */
+    synchronized void release(final ByteBuffer buffer) {
+        if (!mappedBuffers.remove(buffer)) {
+            directBytes -= buffer.capacity();
+        }
+    }
+
+    synchronized long getDirectBytes() {
+        return directBytes;
+    }
+
+    synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Deletes the spill file.  Buffers that were already mapped from it stay usable until they're collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (spillChannel != null) {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile);
+            spillChannel = null;
+        }
+        mappedBuffers.clear();
+    }
+}
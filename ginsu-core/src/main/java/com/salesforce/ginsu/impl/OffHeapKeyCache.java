@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * KeyCache for dimensions too big to keep on the heap.  Rows are encoded with a RowKeyEncoder and kept in an
+ * OffHeapKeyIndex, so the heap footprint doesn't grow with the dimension.  Nothing is ever evicted.
+ *
+ * Entries are keyed by the row's natural key.  If the table has other columns, they're encoded too, and a 64-bit hash
+ * of them is stored as the entry's stamp, so that a row with changed values is a miss.
+ *
+ * Only LongSurrogateKeys can be stored, since the index holds keys as longs.  Rows with other kinds of keys (or foreign
+ * keys) are just never found.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class OffHeapKeyCache implements KeyCache {
+
+    private static final ThreadLocal<RowKeyEncoder.Buffer> buffers = ThreadLocal.withInitial(RowKeyEncoder.Buffer::new);
+    private static final ThreadLocal<RowKeyEncoder.Buffer> attributeBuffers = ThreadLocal.withInitial(RowKeyEncoder.Buffer::new);
+    private static final HashFunction STAMP_HASH = Hashing.murmur3_128();
+
+    private final RowKeyEncoder encoder;
+    private final RowKeyEncoder attributeEncoderOrNull;
+    private final OffHeapKeyIndex index;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    OffHeapKeyCache(RowKeyEncoder encoder, OffHeapAllocator allocator) {
+        this(encoder, null, allocator);
+    }
+
+    /**
+     * @param encoder                for the table's natural key columns.
+     * @param attributeEncoderOrNull for the rest of its columns, if it has any.
+     */
+    OffHeapKeyCache(RowKeyEncoder encoder, RowKeyEncoder attributeEncoderOrNull, OffHeapAllocator allocator) {
+        this.encoder = requireNonNull(encoder);
+        this.attributeEncoderOrNull = attributeEncoderOrNull;
+        this.index = new OffHeapKeyIndex(allocator, attributeEncoderOrNull != null);
+    }
+
+    @Override
+    public SurrogateKey get(RowImpl row) {
+        final RowKeyEncoder.Buffer buffer = buffers.get();
+        final int length = encode(requireNonNull(row), buffer);
+        final long key = length < 0 ? OffHeapKeyIndex.NOT_FOUND : index.get(buffer.bytes, length, getStamp());
+        if (key == OffHeapKeyIndex.NOT_FOUND) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new LongSurrogateKey(key);
+    }
+
+    @Override
+    public void put(RowImpl row, SurrogateKey key) {
+        requireNonNull(key);
+        if (!(key instanceof LongSurrogateKey)) return;
+        final RowKeyEncoder.Buffer buffer = buffers.get();
+        final int length = encode(requireNonNull(row), buffer);
+        if (length >= 0) {
+            index.put(buffer.bytes, length, ((LongSurrogateKey) key).getKeyValue(), getStamp());
+        }
+    }
+
+    /**
+     * Encodes the row's natural key into the buffer and the rest of its values, if any, into this thread's attribute
+     * buffer.
+     *
+     * @return the length of the natural key encoding, or -1 if either can't be encoded.
+     */
+    private int encode(final RowImpl row, final RowKeyEncoder.Buffer buffer) {
+        final int length = encoder.encode(row, buffer);
+        if (length < 0 || attributeEncoderOrNull == null) return length;
+        return attributeEncoderOrNull.encode(row, attributeBuffers.get()) < 0 ? -1 : length;
+    }
+
+    /**
+     * @return a hash of the attributes that encode() last encoded on this thread, or zero if there aren't any.
+     */
+    private long getStamp() {
+        if (attributeEncoderOrNull == null) return 0;
+        final RowKeyEncoder.Buffer buffer = attributeBuffers.get();
+        return STAMP_HASH.hashBytes(buffer.bytes, 0, buffer.length).asLong();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return 0;
+    }
+
+    @Override
+    public long getSize() {
+        return index.size();
+    }
+
+    /**
+     * @return Long.MAX_VALUE; the index is limited only by memory and disk.
+     */
+    @Override
+    public long getMaximumSize() {
+        return Long.MAX_VALUE;
+    }
+}
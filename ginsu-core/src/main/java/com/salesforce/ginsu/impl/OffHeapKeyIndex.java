@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Open-addressing hash table from variable-length binary keys to longs, kept entirely in memory from an
+ * OffHeapAllocator.  The heap holds only a handful of buffer references, however many entries there are.
+ *
+ * Each slot is a 64-bit hash of the key (zero meaning empty), the offset of the key's bytes in an append-only
+ * arena, and the value, each in its own array.  Collisions are resolved by linear probing, and the table doubles when
+ * it's 70% full.  Nothing is ever removed.
+ *
+ * A stamped index also keeps a long alongside each value that a lookup has to match, e.g. a hash of whatever else was
+ * true when the value was stored.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+class OffHeapKeyIndex {
+
+    /**
+     * Returned by get() when the key isn't there.  Can't be stored as a value.
+     */
+    static final long NOT_FOUND = Long.MIN_VALUE;
+
+    /**
+     * Keys longer than this aren't stored.
+     */
+    static final int MAX_KEY_LENGTH = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int INITIAL_ARENA_BUFFER_SIZE = 1 << 16;
+
+    private final OffHeapAllocator allocator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongArray hashes;
+    private LongArray offsets;
+    private LongArray values;
+    private LongArray stampsOrNull;
+    private final boolean stamped;
+    private long capacity;
+    private long size;
+
+    /**
+     * Key bytes, each preceded by its length as an int.  An offset is the buffer's index in the upper 32 bits and the
+     * position in the buffer in the lower 32.  Buffers start small and double up to the allocator's maximum.
+     */
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private int arenaPosition;
+
+    OffHeapKeyIndex(OffHeapAllocator allocator) {
+        this(allocator, false);
+    }
+
+    OffHeapKeyIndex(OffHeapAllocator allocator, boolean stamped) {
+        this.allocator = requireNonNull(allocator);
+        this.stamped = stamped;
+        allocateSlots(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the value stored for the first length bytes of key, or NOT_FOUND.
+     */
+    long get(final byte[] key, final int length) {
+        return get(key, length, 0);
+    }
+
+    /**
+     * @return the value stored for the first length bytes of key, or NOT_FOUND if there isn't one or it was stored
+     * with a different stamp.  Stamps are ignored if the index isn't stamped.
+     */
+    long get(final byte[] key, final int length, final long stamp) {
+        final long hash = hash(key, length);
+        lock.readLock().lock();
+        try {
+            final long slot = findSlot(hash, key, length);
+            if (hashes.get(slot) == 0) return NOT_FOUND;
+            if (stampsOrNull != null && stampsOrNull.get(slot) != stamp) return NOT_FOUND;
+            return values.get(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean put(final byte[] key, final int length, final long value) {
+        return put(key, length, value, 0);
+    }
+
+    /**
+     * Stores the value and stamp for the first length bytes of key, replacing any already stored for it.
+     *
+     * @return false if the key is too long to be stored.
+     */
+    boolean put(final byte[] key, final int length, final long value, final long stamp) {
+        if (value == NOT_FOUND) throw new IllegalArgumentException("invalid value " + value);
+        if (length > MAX_KEY_LENGTH) return false;
+        final long hash = hash(key, length);
+        lock.writeLock().lock();
+        try {
+            long slot = findSlot(hash, key, length);
+            if (hashes.get(slot) == 0) {
+                if ((size + 1) * 10 > capacity * 7) {
+                    allocateSlots(capacity * 2);
+                    slot = findSlot(hash, key, length);
+                }
+                hashes.set(slot, hash);
+                offsets.set(slot, appendKey(key, length));
+                size++;
+            }
+            values.set(slot, value);
+            if (stampsOrNull != null) stampsOrNull.set(slot, stamp);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go.
+     */
+    private long findSlot(final long hash, final byte[] key, final int length) {
+        final long mask = capacity - 1;
+        long slot = hash & mask;
+        while (true) {
+            final long slotHash = hashes.get(slot);
+            if (slotHash == 0 || (slotHash == hash && keyEquals(offsets.get(slot), key, length))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(final long offset, final byte[] key, final int length) {
+        final ByteBuffer buffer = arena.get((int) (offset >>> 32));
+        int position = (int) offset;
+        if (buffer.getInt(position) != length) return false;
+        position += 4;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private long appendKey(final byte[] key, final int length) {
+        final int recordLength = 4 + length;
+        ByteBuffer buffer = arena.isEmpty() ? null : arena.get(arena.size() - 1);
+        if (buffer == null || buffer.capacity() - arenaPosition < recordLength) {
+            int bufferSize = buffer == null ? INITIAL_ARENA_BUFFER_SIZE : Math.min(buffer.capacity() * 2, OffHeapAllocator.MAX_BUFFER_SIZE);
+            while (bufferSize < recordLength) bufferSize *= 2;
+            buffer = allocator.allocate(bufferSize);
+            arena.add(buffer);
+            arenaPosition = 0;
+        }
+        final long offset = ((long) (arena.size() - 1) << 32) | arenaPosition;
+        buffer.putInt(arenaPosition, length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(arenaPosition + 4 + i, key[i]);
+        }
+        arenaPosition += recordLength;
+        return offset;
+    }
+
+    /**
+     * Replaces the slot arrays with empty ones of the given capacity and moves the existing entries into them.  Keys
+     * stay where they are in the arena.
+     */
+    private void allocateSlots(final long newCapacity) {
+        final LongArray oldHashes = this.hashes;
+        final LongArray oldOffsets = this.offsets;
+        final LongArray oldValues = this.values;
+        final LongArray oldStampsOrNull = this.stampsOrNull;
+        final long oldCapacity = this.capacity;
+        this.hashes = new LongArray(allocator, newCapacity);
+        this.offsets = new LongArray(allocator, newCapacity);
+        this.values = new LongArray(allocator, newCapacity);
+        this.stampsOrNull = stamped ? new LongArray(allocator, newCapacity) : null;
+        this.capacity = newCapacity;
+        final long mask = newCapacity - 1;
+        for (long i = 0; i < oldCapacity; i++) {
+            final long hash = oldHashes.get(i);
+            if (hash == 0) continue;
+            long slot = hash & mask;
+            while (hashes.get(slot) != 0) slot = (slot + 1) & mask;
+            hashes.set(slot, hash);
+            offsets.set(slot, oldOffsets.get(i));
+            values.set(slot, oldValues.get(i));
+            if (stampsOrNull != null) stampsOrNull.set(slot, oldStampsOrNull.get(i));
+        }
+        if (oldCapacity > 0) {
+            oldHashes.release(allocator);
+            oldOffsets.release(allocator);
+            oldValues.release(allocator);
+            if (oldStampsOrNull != null) oldStampsOrNull.release(allocator);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a, finished with the murmur3 mixer so that the low bits used for the slot are well distributed.
+     * Never returns zero, which marks an empty slot.
+     */
+    static long hash(final byte[] key, final int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            h ^= key[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * A fixed-length array of longs made of as many allocator buffers as it takes.
+     */
+    private static final class LongArray {
+
+        private static final int SHIFT = Integer.numberOfTrailingZeros(OffHeapAllocator.MAX_BUFFER_SIZE / 8);
+        private static final long MASK = (1L << SHIFT) - 1;
+
+        private final ByteBuffer[] buffers;
+
+        LongArray(final OffHeapAllocator allocator, final long length) {
+            this.buffers = new ByteBuffer[(int) ((length + MASK) >>> SHIFT)];
+            long remaining = length;
+            for (int i = 0; i < buffers.length; i++) {
+                final long longs = Math.min(remaining, MASK + 1);
+                buffers[i] = allocator.allocate((int) (longs * 8));
+                remaining -= longs;
+            }
+        }
+
+        void release(final OffHeapAllocator allocator) {
+            for (final ByteBuffer buffer : buffers) {
+                allocator.release(buffer);
+            }
+        }
+
+        long get(final long index) {
+            return buffers[(int) (index >>> SHIFT)].getLong((int) (index & MASK) << 3);
+        }
+
+        void set(final long index, final long value) {
+            buffers[(int) (index >>> SHIFT)].putLong((int) (index & MASK) << 3, value);
+        }
+    }
+}
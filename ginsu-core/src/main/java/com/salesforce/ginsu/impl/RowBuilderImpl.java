@@ -9,18 +9,21 @@ package com.salesforce.ginsu.impl;
 import com.salesforce.ginsu.persistence.ColumnDef;
 
 import com.salesforce.ginsu.persistence.PersistenceProvider;
-import com.salesforce.ginsu.persistence.PersistenceProvider.InsertMode;
+import com.salesforce.ginsu.persistence.PersistenceProvider.UpdateRequest;
+import com.salesforce.ginsu.persistence.PersistenceProvider.UpdateRequest.Mode;
 
-import static com.salesforce.ginsu.persistence.PersistenceProvider.InsertMode.*;
+import static com.salesforce.ginsu.persistence.PersistenceProvider.UpdateRequest.Mode.*;
 
-import com.salesforce.ginsu.persistence.Row;
 import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
 import com.salesforce.ginsu.schema.Table;
 import com.salesforce.ginsu.warehouse.SurrogateKey;
 import com.salesforce.ginsu.warehouse.RowBuilder;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
 
 import static java.util.Objects.requireNonNull;
 
@@ -31,44 +34,118 @@ import static java.util.Objects.requireNonNull;
 class RowBuilderImpl implements RowBuilder {
 
     private final PersistenceProvider pp;
+    private final AsyncWriter asyncWriter;
     private final TableImpl table;
-    private Map<ColumnImpl<?>, Object> values;
+    private final KeyCache keyCacheOrNull;
+    private final MemberFilter memberFilterOrNull;
+    private final InFlightUpserts inFlightOrNull;
+    private RowImpl row;
 
-    RowBuilderImpl(TableImpl tableDef, PersistenceProvider pp) {
+    /**
+     * @param row an empty row of the table to fill in.
+     */
+    RowBuilderImpl(TableImpl tableDef, RowImpl row, PersistenceProvider pp, AsyncWriter asyncWriter,
+                   KeyCache keyCacheOrNull, MemberFilter memberFilterOrNull, InFlightUpserts inFlightOrNull) {
         this.table = requireNonNull(tableDef);
+        this.row = requireNonNull(row);
         this.pp = requireNonNull(pp);
-        this.values = new HashMap();
+        this.asyncWriter = requireNonNull(asyncWriter);
+        this.keyCacheOrNull = keyCacheOrNull;
+        this.memberFilterOrNull = memberFilterOrNull;
+        this.inFlightOrNull = inFlightOrNull;
+    }
+
+    /**
+     * Starts the builder over on a new row, so that one builder can be used for every row of a load.
+     *
+     * @param row an empty row of the table to fill in.
+     */
+    void reset(RowImpl row) {
+        this.row = requireNonNull(row);
     }
 
     @Override
     public RowBuilder set(Column column, Object value) {
-        requireNonNull(column);
-        if (!table.contains(column)) {
-            throw new IllegalArgumentException(column.getName() + " does not belong to table " + table.getName());
-        }
-        checkState();
-        if (!(column instanceof ColumnImpl)) {
-            throw new IllegalArgumentException("invalid Column implementation " + column.getClass().getName());
-        }
-        final ColumnImpl columnImpl = (ColumnImpl) column;
+        final ColumnImpl columnImpl = checkColumn(column);
         if (value == null && !columnImpl.isNullable()) {
             throw new IllegalArgumentException(((ColumnImpl) column).getColumnName() + " is not nullable");
         }
-        value = columnImpl.prepareValue(value);
-        this.values.put(columnImpl, value);
+        this.row.set(columnImpl.getOrdinal(), columnImpl.prepareValue(value));
         return this;
     }
 
+    @Override
+    public RowBuilder setInt(Column<Integer> column, int value) {
+        final ColumnImpl<?> columnImpl = checkColumn(column, ColumnType.INTEGER);
+        if (columnImpl.hasValueConverter()) return set(column, value);
+        return setPrimitive(columnImpl, value);
+    }
+
+    @Override
+    public RowBuilder setLong(Column<Long> column, long value) {
+        final ColumnImpl<?> columnImpl = checkColumn(column, ColumnType.LONG);
+        if (columnImpl.hasValueConverter()) return set(column, value);
+        return setPrimitive(columnImpl, value);
+    }
+
+    @Override
+    public RowBuilder setDouble(Column<Double> column, double value) {
+        final ColumnImpl<?> columnImpl = checkColumn(column, ColumnType.DOUBLE);
+        if (columnImpl.hasValueConverter()) return set(column, value);
+        return setPrimitive(columnImpl, Double.doubleToLongBits(value));
+    }
+
+    @Override
+    public RowBuilder setBoolean(Column<Boolean> column, boolean value) {
+        final ColumnImpl<?> columnImpl = checkColumn(column, ColumnType.BOOLEAN);
+        if (columnImpl.hasValueConverter()) return set(column, value);
+        return setPrimitive(columnImpl, value ? 1 : 0);
+    }
+
+    @Override
+    public RowBuilder setEpochMillis(Column<? extends java.util.Date> column, long epochMillis) {
+        final ColumnImpl<?> columnImpl = checkColumn(column);
+        switch (columnImpl.getType()) {
+            case DATE:
+                if (columnImpl.hasValueConverter()) return set((Column) column, new java.sql.Date(epochMillis));
+                break;
+            case TIMESTAMP:
+                if (columnImpl.hasValueConverter()) return set((Column) column, new Timestamp(epochMillis));
+                break;
+            default:
+                throw new IllegalArgumentException(columnImpl.getName() + " is not a DATE or TIMESTAMP column");
+        }
+        return setPrimitive(columnImpl, epochMillis);
+    }
+
     @Override
     public SurrogateKey insert() {
         checkState();
-        return executeUpdate(this.table.hasSurrogateKey() ? INSERT : INSERT_ANONYMOUS);
+        return executeUpdate(INSERT, this.table.hasSurrogateKey());
     }
 
     @Override
     public SurrogateKey upsert() {
         checkState();
-        return executeUpdate(this.table.hasSurrogateKey() ? UPSERT : UPSERT_ANONYMOUS);
+        return executeUpdate(UPSERT, this.table.hasSurrogateKey());
+    }
+
+    @Override
+    public void blindUpsert() {
+        checkState();
+        executeUpdate(UPSERT, false);
+    }
+
+    @Override
+    public CompletableFuture<SurrogateKey> insertAsync() {
+        checkState();
+        return executeUpdateAsync(INSERT, this.table.hasSurrogateKey());
+    }
+
+    @Override
+    public CompletableFuture<SurrogateKey> upsertAsync() {
+        checkState();
+        return executeUpdateAsync(UPSERT, this.table.hasSurrogateKey());
     }
 
     @Override
@@ -76,41 +153,138 @@ class RowBuilderImpl implements RowBuilder {
         return this.table;
     }
 
-    private SurrogateKey executeUpdate(final InsertMode mode) {
+    private SurrogateKey executeUpdate(final Mode mode, final boolean isReturnValueRequired) {
+        final RowImpl row = takeRow();
+        if (table.getFixedMembers() != null) return getFixedKey(mode, row, isReturnValueRequired);
+        if (mode != INSERT && keyCacheOrNull != null) {
+            final SurrogateKey cachedKey = keyCacheOrNull.get(row);
+            if (cachedKey != null) return isReturnValueRequired ? cachedKey : null;
+        }
+        return update(mode, row, isReturnValueRequired);
+    }
+
+    /**
+     * Same as executeUpdate() but only the key cache is checked on the calling thread; the rest is left to the
+     * writer threads.  A bad row still fails here rather than in the future.
+     */
+    private CompletableFuture<SurrogateKey> executeUpdateAsync(final Mode mode, final boolean isReturnValueRequired) {
+        final RowImpl row = takeRow();
+        if (table.getFixedMembers() != null) {
+            return CompletableFuture.completedFuture(getFixedKey(mode, row, isReturnValueRequired));
+        }
+        if (mode != INSERT && keyCacheOrNull != null) {
+            final SurrogateKey cachedKey = keyCacheOrNull.get(row);
+            if (cachedKey != null) return CompletableFuture.completedFuture(isReturnValueRequired ? cachedKey : null);
+        }
+        return asyncWriter.submit(() -> update(mode, row, isReturnValueRequired));
+    }
+
+    /**
+     * Every member of a table with fixed members was written along with the table, so there's nothing to write.
+     */
+    private SurrogateKey getFixedKey(final Mode mode, final RowImpl row, final boolean isReturnValueRequired) {
+        if (mode == INSERT) {
+            throw new IllegalStateException("can't insert into " + table.getName() + "; its rows are fixed");
+        }
+        final SurrogateKey key = table.getFixedMembers().getKey(row);
+        return isReturnValueRequired ? key : null;
+    }
+
+    /**
+     * @return the row with its defaults filled in, for the caller to write.  The builder is done with it.
+     */
+    RowImpl takeRow() {
         checkState();
-        final Row row = new RowImpl(this.table, fillInDefaults(this.table, this.values));
-        final SurrogateKey key = pp.insert(mode, this.table, row);
-        switch (mode) {
-            case INSERT:
-            case UPSERT:
-                return key;
-            case INSERT_ANONYMOUS:
-            case UPSERT_ANONYMOUS:
-                if (key != null) {
-                    throw new IllegalStateException("unexpected non-null key on " + mode);
-                }
-                return key;
-            default:
-                throw new IllegalStateException("invalid mode " + mode);
+        final RowImpl row = fillInDefaults(this.table, this.row);
+        this.row = null; // it's on its own now
+        return row;
+    }
+
+    /**
+     * Upserts that need a key are coalesced with any other thread's upsert of the same row.  Blind upserts are left
+     * alone; the provider batches them anyway.
+     */
+    private SurrogateKey update(final Mode mode, final RowImpl row, final boolean isReturnValueRequired) {
+        if (inFlightOrNull != null && mode != INSERT && isReturnValueRequired) {
+            return inFlightOrNull.upsert(row, () -> doUpdate(mode, row, true));
         }
+        return doUpdate(mode, row, isReturnValueRequired);
     }
 
-    private Map<? extends ColumnDef, Object> fillInDefaults(final TableImpl table, final Map<ColumnImpl<?>, Object> values) {
-        for (final ColumnDef cd : table.getValueColumns()) {
-            if (!values.containsKey(cd) && !cd.isNullable()) {
-                final ColumnImpl column = CastUtils.cast(cd, ColumnImpl.class);
-                if (column.getDefaultValue() == null) {
-                    throw new IllegalStateException(column.getName() + " is not nullable and has not default value; a value must be provided.");
-                } else {
-                    values.put(column, column.getDefaultValue());
+    private SurrogateKey doUpdate(final Mode mode, final RowImpl row, final boolean isReturnValueRequired) {
+        final SurrogateKey key;
+        if (memberFilterOrNull == null) {
+            key = pp.update(UpdateRequest.create(mode, this.table, row, isReturnValueRequired));
+        } else {
+            final Lock lock = memberFilterOrNull.getLock(row);
+            lock.lock();
+            try {
+                // a member the filter has never seen can't be in the table, so there's nothing to look up
+                final Mode modeToUse = memberFilterOrNull.mightContain(row) ? mode : INSERT;
+                key = pp.update(UpdateRequest.create(modeToUse, this.table, row, isReturnValueRequired));
+                memberFilterOrNull.add(row);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (isReturnValueRequired && key == null) {
+            throw new IllegalStateException("no key returned for " + mode + " on " + table.getName());
+        }
+        if (keyCacheOrNull != null && key != null) {
+            keyCacheOrNull.put(row, key);
+        }
+        return isReturnValueRequired ? key : null;
+    }
+
+    /**
+     * Non-nullable columns can't be set to null, so a null in one of them means it was never set.  A row of a table
+     * with fixed members only needs its natural key, since its attributes are already in the table.
+     */
+    private RowImpl fillInDefaults(final TableImpl table, final RowImpl row) {
+        final List<ColumnDef> columns = table.getFixedMembers() == null ? table.getValueColumns() : table.getNaturalKeyColumns();
+        for (int j = 0; j < columns.size(); j++) {
+            final ColumnImpl column = (ColumnImpl) columns.get(j);
+            final int i = column.getOrdinal();
+            if (row.isNull(i)) {
+                if (!column.isNullable()) {
+                    if (column.getDefaultValue() == null) {
+                        throw new IllegalStateException(column.getName() + " is not nullable and has not default value; a value must be provided.");
+                    } else {
+                        row.set(i, column.getDefaultValue());
+                    }
                 }
             }
         }
-        return values;
+        return row;
+    }
+
+    private ColumnImpl<?> checkColumn(final Column<?> column) {
+        requireNonNull(column);
+        checkState();
+        if (!(column instanceof ColumnImpl)) {
+            throw new IllegalArgumentException("invalid Column implementation " + column.getClass().getName());
+        }
+        if (!table.contains(column)) {
+            throw new IllegalArgumentException(column.getName() + " does not belong to table " + table.getName());
+        }
+        return (ColumnImpl<?>) column;
+    }
+
+    private ColumnImpl<?> checkColumn(final Column<?> column, final ColumnType expectedType) {
+        final ColumnImpl<?> columnImpl = checkColumn(column);
+        if (columnImpl.getType() != expectedType) {
+            throw new IllegalArgumentException(columnImpl.getName() + " is " + columnImpl.getType() + ", not " + expectedType);
+        }
+        return columnImpl;
+    }
+
+    private RowBuilder setPrimitive(final ColumnImpl<?> column, final long value) {
+        this.row.setPrimitive(column.getOrdinal(), value);
+        return this;
     }
 
     private void checkState() {
-        if (this.values == null) {
+        if (this.row == null) {
             throw new IllegalStateException("RowBuilders can't be reused.");
         }
     }
@@ -0,0 +1,661 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a GeneratedRow subclass for a table, with a field per column instead of RowImpl's value arrays, and
+ * defines it in this package so that it can override RowImpl's package-private methods.
+ *
+ * The fields are named for the column's ordinal: vN holds the value, an int, long, double or boolean for numeric
+ * columns and an Object for the rest.  DATE and TIMESTAMP columns also get a long mN for values set as epoch millis.
+ * Whether each numeric column is null is kept in long presence fields pK, one bit per ordinal.
+ *
+ * The classes are never unloaded, so a process that builds many schemas with generated rows will accumulate them.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+final class RowClassGenerator {
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private static final String SUPER = Type.getInternalName(GeneratedRow.class);
+    private static final String ROW_IMPL = Type.getInternalName(RowImpl.class);
+    private static final String TABLE_IMPL = Type.getInternalName(TableImpl.class);
+    private static final String SLOT = Type.getInternalName(RowImpl.Slot.class);
+    private static final String OBJECTS = Type.getInternalName(Objects.class);
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String STATEMENT_DESC = Type.getDescriptor(PreparedStatement.class);
+
+    private final List<ColumnDef> columns;
+    private final String className;
+
+    private RowClassGenerator(final TableImpl table) {
+        this.columns = table.getValueColumns();
+        this.className = SUPER + "_" + table.getName().replaceAll("[^A-Za-z0-9_]", "_") + "_" + classCounter.incrementAndGet();
+    }
+
+    /**
+     * @return a factory for new, empty rows of the table, of a class generated for it.
+     */
+    static Supplier<RowImpl> generate(final TableImpl table) {
+        final RowClassGenerator generator = new RowClassGenerator(table);
+        final Class<?> rowClass = defineClass(generator.className, generator.generate());
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            final MethodHandle constructor = lookup.findConstructor(rowClass, MethodType.methodType(void.class, TableImpl.class));
+            final CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class, TableImpl.class), MethodType.methodType(Object.class),
+                    constructor, MethodType.methodType(rowClass));
+            @SuppressWarnings("unchecked") final Supplier<RowImpl> out = (Supplier<RowImpl>) site.getTarget().invoke(table);
+            return out;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("couldn't create a factory for " + rowClass.getName(), t);
+        }
+    }
+
+    /**
+     * Defines the class in this package: with Lookup.defineClass() where there is one (Java 9 and later), otherwise
+     * with ClassLoader.defineClass().
+     */
+    private static Class<?> defineClass(final String internalName, final byte[] bytes) {
+        try {
+            final Method lookupDefineClass;
+            try {
+                lookupDefineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            } catch (NoSuchMethodException java8) {
+                final Method loaderDefineClass = ClassLoader.class.getDeclaredMethod("defineClass",
+                        String.class, byte[].class, int.class, int.class);
+                loaderDefineClass.setAccessible(true);
+                return (Class<?>) loaderDefineClass.invoke(RowImpl.class.getClassLoader(),
+                        internalName.replace('/', '.'), bytes, 0, bytes.length);
+            }
+            return (Class<?>) lookupDefineClass.invoke(MethodHandles.lookup(), (Object) bytes);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("couldn't define " + internalName, e);
+        }
+    }
+
+    private byte[] generate() {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                // the class being generated can't be loaded to ask
+                if (type1.equals(className) || type2.equals(className)) return "java/lang/Object";
+                return super.getCommonSuperClass(type1, type2);
+            }
+        };
+        cw.visit(V1_8, ACC_FINAL | ACC_SUPER, className, null, SUPER, null);
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            cw.visitField(ACC_PRIVATE, valueField(i), kind.desc, null, null).visitEnd();
+            if (kind.isDate()) {
+                cw.visitField(ACC_PRIVATE, millisField(i), "J", null, null).visitEnd();
+            }
+        }
+        for (int k = 0; k <= (columns.size() - 1) / 64; k++) {
+            cw.visitField(ACC_PRIVATE, presenceField(k), "J", null, null).visitEnd();
+        }
+        generateConstructor(cw);
+        generateSet(cw);
+        generateSetPrimitive(cw);
+        generateIsNull(cw);
+        generateGetValue(cw);
+        generateGetPrimitive(cw);
+        generateValueEquals(cw);
+        generateValuesEqual(cw);
+        generateValueHash(cw);
+        generateComputeHashCode(cw);
+        generateBindValues(cw);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void generateConstructor(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "<init>", "(L" + TABLE_IMPL + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, SUPER, "<init>", "(L" + TABLE_IMPL + ";)V", false);
+        mv.visitInsn(RETURN);
+        endMethod(mv);
+    }
+
+    /**
+     * void set(int ordinal, Object value): numeric values are unboxed into their field and marked present.
+     */
+    private void generateSet(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "set", "(I" + OBJECT_DESC + ")V", null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> true);
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            mv.visitLabel(cases[i]);
+            if (kind.isNumeric()) {
+                setPresence(mv, i, () -> {
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitMethodInsn(INVOKESTATIC, OBJECTS, "nonNull", "(" + OBJECT_DESC + ")Z", false);
+                });
+                final Label isNull = new Label();
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitJumpInsn(IFNULL, isNull);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitTypeInsn(CHECKCAST, kind.boxInternalName);
+                mv.visitMethodInsn(INVOKEVIRTUAL, kind.boxInternalName, kind.unboxMethod, "()" + kind.desc, false);
+                mv.visitFieldInsn(PUTFIELD, className, valueField(i), kind.desc);
+                mv.visitLabel(isNull);
+            } else {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitFieldInsn(PUTFIELD, className, valueField(i), kind.desc);
+            }
+            mv.visitInsn(RETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * void setPrimitive(int ordinal, long value)
+     */
+    private void generateSetPrimitive(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "setPrimitive", "(IJ)V", null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> Kind.of(columns.get(i)).isPrimitive());
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            if (!kind.isPrimitive()) continue;
+            mv.visitLabel(cases[i]);
+            if (kind.isDate()) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETSTATIC, SLOT, "PRIMITIVE", "L" + SLOT + ";");
+                mv.visitFieldInsn(PUTFIELD, className, valueField(i), OBJECT_DESC);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(LLOAD, 2);
+                mv.visitFieldInsn(PUTFIELD, className, millisField(i), "J");
+            } else {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(LLOAD, 2);
+                switch (kind) {
+                    case INT:
+                    case BOOLEAN:
+                        mv.visitInsn(L2I); // booleans are passed as 0 or 1
+                        break;
+                    case DOUBLE:
+                        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+                        break;
+                    default:
+                }
+                mv.visitFieldInsn(PUTFIELD, className, valueField(i), kind.desc);
+                setPresence(mv, i, () -> mv.visitInsn(ICONST_1));
+            }
+            mv.visitInsn(RETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * boolean isNull(int ordinal)
+     */
+    private void generateIsNull(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "isNull", "(I)Z", null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> true);
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            mv.visitLabel(cases[i]);
+            if (kind.isNumeric()) {
+                loadPresence(mv, 0, i);
+                pushInt(mv, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "isAbsent", "(JI)Z", false);
+            } else {
+                loadValue(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, OBJECTS, "isNull", "(" + OBJECT_DESC + ")Z", false);
+            }
+            mv.visitInsn(IRETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * Object getValue(int ordinal): boxed.
+     */
+    private void generateGetValue(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "getValue", "(I)" + OBJECT_DESC, null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> true);
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            mv.visitLabel(cases[i]);
+            if (kind.isNumeric()) {
+                loadPresence(mv, 0, i);
+                pushInt(mv, i);
+                loadValue(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "box" + kind.helperSuffix, "(JI" + kind.desc + ")" + OBJECT_DESC, false);
+            } else if (kind.isDate()) {
+                loadValue(mv, 0, i);
+                loadMillis(mv, 0, i);
+                mv.visitInsn(kind == Kind.TIMESTAMP ? ICONST_1 : ICONST_0);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "date", "(" + OBJECT_DESC + "JZ)" + OBJECT_DESC, false);
+            } else {
+                loadValue(mv, 0, i);
+            }
+            mv.visitInsn(ARETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * long getPrimitive(int ordinal)
+     */
+    private void generateGetPrimitive(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "getPrimitive", "(I)J", null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> Kind.of(columns.get(i)).isPrimitive());
+        for (int i = 0; i < columns.size(); i++) {
+            final Kind kind = Kind.of(columns.get(i));
+            if (!kind.isPrimitive()) continue;
+            mv.visitLabel(cases[i]);
+            if (kind.isDate()) {
+                loadValue(mv, 0, i);
+                loadMillis(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "millis", "(" + OBJECT_DESC + "J)J", false);
+            } else {
+                loadValue(mv, 0, i);
+                switch (kind) {
+                    case INT:
+                    case BOOLEAN:
+                        mv.visitInsn(I2L);
+                        break;
+                    case DOUBLE:
+                        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+                        break;
+                    default:
+                }
+            }
+            mv.visitInsn(LRETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * boolean valueEquals(RowImpl that, int ordinal): that is of this class.
+     */
+    private void generateValueEquals(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "valueEquals", "(L" + ROW_IMPL + ";I)Z", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, className);
+        mv.visitVarInsn(ASTORE, 3);
+        final Label[] cases = switchOnOrdinal(mv, 2, i -> true);
+        for (int i = 0; i < columns.size(); i++) {
+            mv.visitLabel(cases[i]);
+            pushSameValue(mv, 3, i);
+            mv.visitInsn(IRETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 2);
+        endMethod(mv);
+    }
+
+    /**
+     * boolean valuesEqual(RowImpl that): that is of this class.  Compares the presence bits first, then each value.
+     */
+    private void generateValuesEqual(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "valuesEqual", "(L" + ROW_IMPL + ";)Z", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, className);
+        mv.visitVarInsn(ASTORE, 2);
+        final Label notEqual = new Label();
+        for (int k = 0; k <= (columns.size() - 1) / 64; k++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, className, presenceField(k), "J");
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitFieldInsn(GETFIELD, className, presenceField(k), "J");
+            mv.visitInsn(LCMP);
+            mv.visitJumpInsn(IFNE, notEqual);
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            pushSameValue(mv, 2, i);
+            mv.visitJumpInsn(IFEQ, notEqual);
+        }
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+        mv.visitLabel(notEqual);
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IRETURN);
+        endMethod(mv);
+    }
+
+    /**
+     * int valueHash(int ordinal)
+     */
+    private void generateValueHash(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "valueHash", "(I)I", null, null);
+        mv.visitCode();
+        final Label[] cases = switchOnOrdinal(mv, 1, i -> true);
+        for (int i = 0; i < columns.size(); i++) {
+            mv.visitLabel(cases[i]);
+            pushValueHash(mv, i);
+            mv.visitInsn(IRETURN);
+        }
+        throwInvalidOrdinal(mv, cases[columns.size()], 1);
+        endMethod(mv);
+    }
+
+    /**
+     * int computeHashCode(): the same as RowImpl's, unrolled.
+     */
+    private void generateComputeHashCode(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(0, "computeHashCode", "()I", null, null);
+        mv.visitCode();
+        mv.visitInsn(ICONST_1);
+        mv.visitVarInsn(ISTORE, 1);
+        for (int i = 0; i < columns.size(); i++) {
+            mv.visitVarInsn(ILOAD, 1);
+            pushInt(mv, 31);
+            mv.visitInsn(IMUL);
+            pushValueHash(mv, i);
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ISTORE, 1);
+        }
+        pushInt(mv, 31);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, className, "getTable", "()L" + TABLE_IMPL + ";", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, TABLE_IMPL, "hashCode", "()I", false);
+        mv.visitInsn(IMUL);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(IADD);
+        mv.visitInsn(IRETURN);
+        endMethod(mv);
+    }
+
+    /**
+     * public int bindValues(PreparedStatement stmt, int firstParameterIndex)
+     */
+    private void generateBindValues(final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "bindValues", "(" + STATEMENT_DESC + "I)I", null,
+                new String[]{Type.getInternalName(SQLException.class)});
+        mv.visitCode();
+        for (int i = 0; i < columns.size(); i++) {
+            final ColumnDef col = columns.get(i);
+            final Kind kind = Kind.of(col);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ILOAD, 2);
+            pushInt(mv, i);
+            mv.visitInsn(IADD);
+            if (kind.isNumeric()) {
+                loadPresence(mv, 0, i);
+                pushInt(mv, i);
+                loadValue(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "bind" + kind.helperSuffix, "(" + STATEMENT_DESC + "IJI" + kind.desc + ")V", false);
+            } else if (kind.isDate()) {
+                loadValue(mv, 0, i);
+                loadMillis(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, kind == Kind.TIMESTAMP ? "bindTimestamp" : "bindDate",
+                        "(" + STATEMENT_DESC + "I" + OBJECT_DESC + "J)V", false);
+            } else if (kind == Kind.STRING) {
+                loadValue(mv, 0, i);
+                pushInt(mv, col.getMaxLength());
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "bindString", "(" + STATEMENT_DESC + "I" + OBJECT_DESC + "I)V", false);
+            } else {
+                loadValue(mv, 0, i);
+                mv.visitMethodInsn(INVOKESTATIC, SUPER, "bindKey", "(" + STATEMENT_DESC + "I" + OBJECT_DESC + ")V", false);
+            }
+        }
+        mv.visitVarInsn(ILOAD, 2);
+        pushInt(mv, columns.size());
+        mv.visitInsn(IADD);
+        mv.visitInsn(IRETURN);
+        endMethod(mv);
+    }
+
+    /**
+     * Pushes whether this row's value for column i equals that of the row in the given local.
+     */
+    private void pushSameValue(final MethodVisitor mv, final int thatLocal, final int i) {
+        final Kind kind = Kind.of(columns.get(i));
+        if (kind.isNumeric()) {
+            loadPresence(mv, 0, i);
+            loadPresence(mv, thatLocal, i);
+            pushInt(mv, i);
+            loadValueAsLong(mv, 0, i);
+            loadValueAsLong(mv, thatLocal, i);
+            mv.visitMethodInsn(INVOKESTATIC, SUPER, "sameNumber", "(JJIJJ)Z", false);
+        } else if (kind.isDate()) {
+            loadValue(mv, 0, i);
+            loadMillis(mv, 0, i);
+            loadValue(mv, thatLocal, i);
+            loadMillis(mv, thatLocal, i);
+            mv.visitInsn(kind == Kind.TIMESTAMP ? ICONST_1 : ICONST_0);
+            mv.visitMethodInsn(INVOKESTATIC, SUPER, "sameDate", "(" + OBJECT_DESC + "J" + OBJECT_DESC + "JZ)Z", false);
+        } else {
+            loadValue(mv, 0, i);
+            loadValue(mv, thatLocal, i);
+            mv.visitMethodInsn(INVOKESTATIC, OBJECTS, "equals", "(" + OBJECT_DESC + OBJECT_DESC + ")Z", false);
+        }
+    }
+
+    /**
+     * Pushes the hash of column i the way RowImpl.valueHash() computes it.
+     */
+    private void pushValueHash(final MethodVisitor mv, final int i) {
+        final Kind kind = Kind.of(columns.get(i));
+        if (kind.isNumeric()) {
+            loadPresence(mv, 0, i);
+            pushInt(mv, i);
+            loadValue(mv, 0, i);
+            mv.visitMethodInsn(INVOKESTATIC, SUPER, "hash" + kind.helperSuffix, "(JI" + kind.desc + ")I", false);
+        } else if (kind.isDate()) {
+            loadValue(mv, 0, i);
+            loadMillis(mv, 0, i);
+            mv.visitMethodInsn(INVOKESTATIC, SUPER, "hashDate", "(" + OBJECT_DESC + "J)I", false);
+        } else {
+            loadValue(mv, 0, i);
+            mv.visitMethodInsn(INVOKESTATIC, OBJECTS, "hashCode", "(" + OBJECT_DESC + ")I", false);
+        }
+    }
+
+    /**
+     * Loads a numeric column's value as a long that's equal for two values iff they're equal boxed.
+     */
+    private void loadValueAsLong(final MethodVisitor mv, final int local, final int i) {
+        loadValue(mv, local, i);
+        switch (Kind.of(columns.get(i))) {
+            case INT:
+            case BOOLEAN:
+                mv.visitInsn(I2L);
+                break;
+            case DOUBLE:
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Sets or clears column i's presence bit, according to the boolean that isPresent pushes.
+     */
+    private void setPresence(final MethodVisitor mv, final int i, final Runnable isPresent) {
+        mv.visitVarInsn(ALOAD, 0);
+        loadPresence(mv, 0, i);
+        pushInt(mv, i);
+        isPresent.run();
+        mv.visitMethodInsn(INVOKESTATIC, SUPER, "setPresent", "(JIZ)J", false);
+        mv.visitFieldInsn(PUTFIELD, className, presenceField(i / 64), "J");
+    }
+
+    private void loadPresence(final MethodVisitor mv, final int local, final int i) {
+        mv.visitVarInsn(ALOAD, local);
+        mv.visitFieldInsn(GETFIELD, className, presenceField(i / 64), "J");
+    }
+
+    private void loadValue(final MethodVisitor mv, final int local, final int i) {
+        mv.visitVarInsn(ALOAD, local);
+        mv.visitFieldInsn(GETFIELD, className, valueField(i), Kind.of(columns.get(i)).desc);
+    }
+
+    private void loadMillis(final MethodVisitor mv, final int local, final int i) {
+        mv.visitVarInsn(ALOAD, local);
+        mv.visitFieldInsn(GETFIELD, className, millisField(i), "J");
+    }
+
+    /**
+     * Starts a tableswitch on the int in the given local.
+     *
+     * @return a label per column, and last the default label.  Columns that aren't included share the default.
+     */
+    private Label[] switchOnOrdinal(final MethodVisitor mv, final int local, final IntPredicate included) {
+        final Label[] out = new Label[columns.size() + 1];
+        out[columns.size()] = new Label();
+        for (int i = 0; i < columns.size(); i++) {
+            out[i] = included.test(i) ? new Label() : out[columns.size()];
+        }
+        if (columns.isEmpty()) {
+            mv.visitJumpInsn(GOTO, out[0]);
+        } else {
+            mv.visitVarInsn(ILOAD, local);
+            mv.visitTableSwitchInsn(0, columns.size() - 1, out[columns.size()], Arrays.copyOf(out, columns.size()));
+        }
+        return out;
+    }
+
+    private static void throwInvalidOrdinal(final MethodVisitor mv, final Label label, final int local) {
+        mv.visitLabel(label);
+        mv.visitVarInsn(ILOAD, local);
+        mv.visitMethodInsn(INVOKESTATIC, SUPER, "invalidOrdinal", "(I)Ljava/lang/IllegalArgumentException;", false);
+        mv.visitInsn(ATHROW);
+    }
+
+    private static void pushInt(final MethodVisitor mv, final int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static void endMethod(final MethodVisitor mv) {
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static String valueField(final int ordinal) {
+        return "v" + ordinal;
+    }
+
+    private static String millisField(final int ordinal) {
+        return "m" + ordinal;
+    }
+
+    private static String presenceField(final int index) {
+        return "p" + index;
+    }
+
+    /**
+     * How a column is stored in a generated row.
+     */
+    private enum Kind {
+        INT("I", "java/lang/Integer", "intValue", "Int"),
+        LONG("J", "java/lang/Long", "longValue", "Long"),
+        DOUBLE("D", "java/lang/Double", "doubleValue", "Double"),
+        BOOLEAN("Z", "java/lang/Boolean", "booleanValue", "Boolean"),
+        DATE(OBJECT_DESC),
+        TIMESTAMP(OBJECT_DESC),
+        STRING(OBJECT_DESC),
+        KEY(OBJECT_DESC);
+
+        final String desc;
+        final String boxInternalName;
+        final String unboxMethod;
+        final String helperSuffix;
+
+        Kind(String desc) {
+            this(desc, null, null, null);
+        }
+
+        Kind(String desc, String boxInternalName, String unboxMethod, String helperSuffix) {
+            this.desc = desc;
+            this.boxInternalName = boxInternalName;
+            this.unboxMethod = unboxMethod;
+            this.helperSuffix = helperSuffix;
+        }
+
+        boolean isNumeric() {
+            return boxInternalName != null;
+        }
+
+        boolean isDate() {
+            return this == DATE || this == TIMESTAMP;
+        }
+
+        /**
+         * @return true if setPrimitive() applies.
+         */
+        boolean isPrimitive() {
+            return isNumeric() || isDate();
+        }
+
+        static Kind of(final ColumnDef col) {
+            switch (col.getType()) {
+                case INTEGER:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case DOUBLE:
+                    return DOUBLE;
+                case BOOLEAN:
+                    return BOOLEAN;
+                case DATE:
+                    return DATE;
+                case TIMESTAMP:
+                    return TIMESTAMP;
+                case STRING:
+                    return STRING;
+                case FOREIGN_KEY:
+                case SURROGATE_KEY:
+                    return KEY;
+                default:
+                    throw new IllegalArgumentException("invalid type " + col.getType());
+            }
+        }
+    }
+}
@@ -6,35 +6,137 @@
  */
 package com.salesforce.ginsu.impl;
 
+import com.google.common.hash.HashCode;
 import com.salesforce.ginsu.persistence.ColumnDef;
 import com.salesforce.ginsu.persistence.Row;
 import com.salesforce.ginsu.warehouse.SurrogateKey;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.Map;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Objects;
 
 import static java.util.Objects.requireNonNull;
 
 
 /**
+ * Row values are stored in a flat array indexed by column ordinal.  Values set through the unboxed RowBuilder
+ * setters live in a parallel array of longs, with a PRIMITIVE placeholder in the values array.  A row compares
+ * and hashes the same regardless of which way its values were set.
+ *
+ * RowBuilders fill in a row through set() and setPrimitive() before handing it off; after that it doesn't change.
+ *
+ * Subclasses generated by RowClassGenerator keep their values in typed fields instead.  They override every method
+ * here that touches the arrays, and compare and hash the same as a RowImpl with the same values.
+ *
  * @author pcal
  * @since 0.0.1
  */
 class RowImpl implements Row {
 
-    private final Map<? extends ColumnDef, Object> values;
+    /**
+     * Placeholder in the values array for a column whose value is in the primitives array.
+     */
+    enum Slot {
+        PRIMITIVE
+    }
+
+    private static final Object PRIMITIVE = Slot.PRIMITIVE;
+
+    private final Object[] values;
+    private long[] primitivesOrNull;
     private final TableImpl table;
     private SurrogateKey key;
-    private transient Integer hashCode;
+    private transient int hashCode;
+    private transient boolean isHashCodeComputed;
+    private transient HashCode digest;
+    private transient boolean isDigestComputed;
+
+    RowImpl(TableImpl table, Object[] values) {
+        this(table, values, null);
+    }
 
-    RowImpl(TableImpl table, Map<? extends ColumnDef, Object> values) {
+    RowImpl(TableImpl table, Object[] values, long[] primitivesOrNull) {
         this.table = requireNonNull(table);
         this.values = requireNonNull(values);
+        this.primitivesOrNull = primitivesOrNull;
+        if (values.length != table.getColumnCount()) {
+            throw new IllegalArgumentException("expected " + table.getColumnCount() + " values, got " + values.length);
+        }
+    }
+
+    /**
+     * For generated subclasses, which keep their values in their own fields.
+     */
+    RowImpl(TableImpl table) {
+        this.table = requireNonNull(table);
+        this.values = null;
+    }
+
+    TableImpl getTable() {
+        return this.table;
+    }
+
+    /**
+     * Sets the value of a column.  The value must already have been checked against the column.
+     */
+    void set(final int ordinal, final Object value) {
+        this.values[ordinal] = value;
+    }
+
+    /**
+     * Sets the value of an INTEGER, LONG, DOUBLE, BOOLEAN, DATE or TIMESTAMP column without boxing it.  Doubles are
+     * passed as their raw bits, booleans as 0 or 1, and dates and timestamps as epoch millis.
+     */
+    void setPrimitive(final int ordinal, final long value) {
+        if (this.primitivesOrNull == null) {
+            this.primitivesOrNull = new long[this.values.length];
+        }
+        this.primitivesOrNull[ordinal] = value;
+        this.values[ordinal] = PRIMITIVE;
+    }
+
+    boolean isNull(final int ordinal) {
+        return values[ordinal] == null;
     }
 
     @Override
     public Object getValue(ColumnDef column) {
-        return values.get(column);
+        return getValue(((ColumnImpl) column).getOrdinal());
+    }
+
+    @Override
+    public boolean isNull(ColumnDef column) {
+        return isNull(((ColumnImpl) column).getOrdinal());
+    }
+
+    @Override
+    public int getInt(ColumnDef column) {
+        final int i = ((ColumnImpl) column).getOrdinal();
+        return values[i] == PRIMITIVE ? (int) primitivesOrNull[i] : (Integer) values[i];
+    }
+
+    @Override
+    public long getLong(ColumnDef column) {
+        final int i = ((ColumnImpl) column).getOrdinal();
+        return values[i] == PRIMITIVE ? primitivesOrNull[i] : (Long) values[i];
+    }
+
+    @Override
+    public double getDouble(ColumnDef column) {
+        final int i = ((ColumnImpl) column).getOrdinal();
+        return values[i] == PRIMITIVE ? Double.longBitsToDouble(primitivesOrNull[i]) : (Double) values[i];
+    }
+
+    @Override
+    public boolean getBoolean(ColumnDef column) {
+        final int i = ((ColumnImpl) column).getOrdinal();
+        return values[i] == PRIMITIVE ? primitivesOrNull[i] != 0 : (Boolean) values[i];
+    }
+
+    @Override
+    public long getEpochMillis(ColumnDef column) {
+        final int i = ((ColumnImpl) column).getOrdinal();
+        return values[i] == PRIMITIVE ? primitivesOrNull[i] : ((java.util.Date) values[i]).getTime();
     }
 
     @Override
@@ -57,28 +159,165 @@ class RowImpl implements Row {
         }
         final RowImpl that = (RowImpl) o;
         if (!this.table.equals(that.table)) return false;
-        for (final ColumnDef col : this.table.getValueColumns()) {
-            final Object ours = this.getValue(col);
-            final Object theirs = that.getValue(col);
-            if (!(ours == null ? theirs == null : ours.equals(theirs))) {
-                return false;
+        if (this.getClass() != that.getClass()) {
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                if (!boxedValueEquals(that, i)) return false;
             }
+            return true;
+        }
+        return valuesEqual(that);
+    }
+
+    /**
+     * @return true if every value in this row equals the one in the given row, which is of the same class.
+     */
+    boolean valuesEqual(final RowImpl that) {
+        if (this.primitivesOrNull == null && that.primitivesOrNull == null) {
+            return Arrays.equals(this.values, that.values);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!valueEquals(that, i)) return false;
         }
         return true;
     }
 
     @Override
     public int hashCode() {
-        if (this.hashCode != null) {
-            return this.hashCode;
+        if (!this.isHashCodeComputed) {
+            this.hashCode = computeHashCode();
+            this.isHashCodeComputed = true;
+        }
+        return this.hashCode;
+    }
+
+    /**
+     * Hashes each value the same way its boxed equivalent would, so that this agrees with equals().
+     */
+    int computeHashCode() {
+        int result = 1;
+        for (int i = 0; i < values.length; i++) {
+            result = 31 * result + valueHash(i);
+        }
+        return 31 * table.hashCode() + result;
+    }
+
+    /**
+     * @return an object that's equal to another row's natural key iff the two rows have the same values in their
+     * table's natural key columns: the digest, if the table has one; otherwise the row itself if the natural key is
+     * the whole row.
+     */
+    Object getNaturalKey() {
+        final HashCode digest = getDigest();
+        if (digest != null) return digest;
+        return table.getNaturalKeyOrdinals() == null ? this : new NaturalKey(this);
+    }
+
+    @Override
+    public byte[] getNaturalKeyDigest() {
+        final HashCode digest = getDigest();
+        return digest == null ? null : digest.asBytes();
+    }
+
+    private HashCode getDigest() {
+        if (!this.isDigestComputed) {
+            this.digest = table.digest(this);
+            this.isDigestComputed = true;
+        }
+        return this.digest;
+    }
+
+    /**
+     * @return true if this row's value for the given column equals the given row's, which is of the same class.
+     */
+    boolean valueEquals(final RowImpl that, final int i) {
+        final Object ours = this.values[i];
+        final Object theirs = that.values[i];
+        if (ours == PRIMITIVE && theirs == PRIMITIVE) {
+            return this.primitivesOrNull[i] == that.primitivesOrNull[i];
+        } else if (ours == PRIMITIVE || theirs == PRIMITIVE) {
+            return Objects.equals(this.getValue(i), that.getValue(i));
         } else {
-            final HashCodeBuilder hcb = new HashCodeBuilder();
-            hcb.append(table);
-            for (final ColumnDef col : this.table.getValueColumns()) {
-                final Object value = this.getValue(col);
-                hcb.append(value);
+            return Objects.equals(ours, theirs);
+        }
+    }
+
+    private boolean boxedValueEquals(final RowImpl that, final int i) {
+        return Objects.equals(this.getValue(i), that.getValue(i));
+    }
+
+    int valueHash(final int i) {
+        final Object value = values[i];
+        if (value != PRIMITIVE) return value == null ? 0 : value.hashCode();
+        final long p = primitivesOrNull[i];
+        switch (table.getColumnType(i)) {
+            case INTEGER:
+                return Integer.hashCode((int) p);
+            case BOOLEAN:
+                return Boolean.hashCode(p != 0);
+            case DATE:
+            case TIMESTAMP:
+                return (int) p ^ (int) (p >> 32);
+            default:
+                return Long.hashCode(p);
+        }
+    }
+
+    Object getValue(int ordinal) {
+        final Object value = values[ordinal];
+        if (value != PRIMITIVE) return value;
+        final long p = primitivesOrNull[ordinal];
+        switch (table.getColumnType(ordinal)) {
+            case INTEGER:
+                return (int) p;
+            case LONG:
+                return p;
+            case DOUBLE:
+                return Double.longBitsToDouble(p);
+            case BOOLEAN:
+                return p != 0;
+            case DATE:
+                return new java.sql.Date(p);
+            case TIMESTAMP:
+                return new Timestamp(p);
+            default:
+                throw new IllegalStateException("unexpected primitive value in " + table.getValueColumns().get(ordinal));
+        }
+    }
+
+    /**
+     * The natural key columns of a row, for tables whose natural key isn't the whole row.
+     */
+    private static final class NaturalKey {
+
+        private final RowImpl row;
+        private int hashCode;
+
+        NaturalKey(final RowImpl row) {
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof NaturalKey)) return false;
+            final RowImpl that = ((NaturalKey) o).row;
+            if (!row.table.equals(that.table)) return false;
+            final boolean sameClass = row.getClass() == that.getClass();
+            for (final int i : row.table.getNaturalKeyOrdinals()) {
+                if (!(sameClass ? row.valueEquals(that, i) : row.boxedValueEquals(that, i))) return false;
             }
-            return this.hashCode = hcb.toHashCode();
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            if (this.hashCode == 0) {
+                int result = 1;
+                for (final int i : row.table.getNaturalKeyOrdinals()) {
+                    result = 31 * result + row.valueHash(i);
+                }
+                this.hashCode = 31 * row.table.hashCode() + result;
+            }
+            return this.hashCode;
         }
     }
 }
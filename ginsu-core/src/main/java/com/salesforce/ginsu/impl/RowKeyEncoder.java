@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.persistence.Row;
+
+import javax.annotation.concurrent.Immutable;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes a row's values for some set of columns as a compact byte string, such that two rows encode the same iff
+ * their values for those columns are equal.  Each value is a presence byte followed by:
+ *
+ * INTEGER: 4 bytes.  LONG, DOUBLE (raw bits), DATE (epoch millis): 8 bytes.  BOOLEAN: 1 byte.  TIMESTAMP: epoch
+ * millis and nanos, 12 bytes.  STRING: each char as 1-3 bytes, the same as modified UTF-8 minus the special case for
+ * NUL, followed by 0xff, which can't occur in that encoding.  FOREIGN_KEY: the key's long value.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+class RowKeyEncoder {
+
+    private final List<ColumnDef> columns;
+
+    RowKeyEncoder(List<ColumnDef> columns) {
+        this.columns = ImmutableList.copyOf(columns);
+    }
+
+    /**
+     * Encodes the row into the buffer, growing it if need be.
+     *
+     * @return the length of the encoding, or -1 if the row has a value that can't be encoded (i.e., a key that isn't
+     * a LongSurrogateKey).
+     */
+    int encode(final Row row, final Buffer out) {
+        out.length = 0;
+        for (final ColumnDef col : columns) {
+            if (row.isNull(col)) {
+                out.put((byte) 0);
+                continue;
+            }
+            out.put((byte) 1);
+            switch (col.getType()) {
+                case INTEGER:
+                    out.putInt(row.getInt(col));
+                    break;
+                case LONG:
+                    out.putLong(row.getLong(col));
+                    break;
+                case DOUBLE:
+                    out.putLong(Double.doubleToLongBits(row.getDouble(col)));
+                    break;
+                case BOOLEAN:
+                    out.put((byte) (row.getBoolean(col) ? 1 : 0));
+                    break;
+                case DATE:
+                    out.putLong(row.getEpochMillis(col));
+                    break;
+                case TIMESTAMP: {
+                    final Object value = row.getValue(col);
+                    out.putLong(((java.util.Date) value).getTime());
+                    out.putInt(value instanceof Timestamp ? ((Timestamp) value).getNanos() : 0);
+                    break;
+                }
+                case STRING:
+                    out.putString((String) row.getValue(col));
+                    break;
+                case FOREIGN_KEY:
+                case SURROGATE_KEY: {
+                    final Object value = row.getValue(col);
+                    if (!(value instanceof LongSurrogateKey)) return -1;
+                    out.putLong(((LongSurrogateKey) value).getKeyValue());
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("invalid type " + col.getType());
+            }
+        }
+        return out.length;
+    }
+
+    /**
+     * A reusable, growable byte array to encode into.  Not thread-safe.
+     */
+    static final class Buffer {
+
+        byte[] bytes = new byte[256];
+        int length;
+
+        private void ensureCapacity(final int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        private void put(final byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        private void putInt(final int v) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void putLong(final long v) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void putString(final String s) {
+            ensureCapacity(s.length() * 3 + 1);
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xc0 | (c >> 6));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                } else {
+                    bytes[length++] = (byte) (0xe0 | (c >> 12));
+                    bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            bytes[length++] = (byte) 0xff;
+        }
+    }
+}
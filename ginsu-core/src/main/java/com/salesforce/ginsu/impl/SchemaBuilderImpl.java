@@ -7,6 +7,8 @@
 package com.salesforce.ginsu.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.salesforce.ginsu.schema.DateDimensionBuilder;
 import com.salesforce.ginsu.schema.Schema;
 import com.salesforce.ginsu.schema.SchemaBuilder;
 import com.salesforce.ginsu.schema.TableBuilder;
@@ -16,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import static java.util.Objects.requireNonNull;
@@ -29,6 +32,7 @@ public class SchemaBuilderImpl implements SchemaBuilder {
     private final Logger logger;
     private Function<String, String> idColumnNamer = IdColumnNamers.DEFAULT;
     private final List<TableBuilderImpl> tableBuilders = new ArrayList();
+    private boolean generatedRowClasses = false;
 
     public SchemaBuilderImpl() {
         this(Logger.getAnonymousLogger());
@@ -49,9 +53,12 @@ public class SchemaBuilderImpl implements SchemaBuilder {
 
     @Override
     public TableBuilder junkDimensionTableBuilder(String name) {
-        // currently there's no difference; we should add some constraints on value types.  in the meantime, it
-        // at least fosters clarity.
-        return dimensionTableBuilder(name);
+        return ((TableBuilderImpl) dimensionTableBuilder(name)).junkDimension(true);
+    }
+
+    @Override
+    public DateDimensionBuilder dateDimensionBuilder(String name) {
+        return new DateDimensionBuilderImpl((TableBuilderImpl) dimensionTableBuilder(name));
     }
 
     @Override
@@ -63,10 +70,17 @@ public class SchemaBuilderImpl implements SchemaBuilder {
         return out;
     }
 
+    @Override
+    public SchemaBuilder setGeneratedRowClasses(boolean generate) {
+        this.generatedRowClasses = generate;
+        return this;
+    }
+
     @Override
     public Schema build() {
         final Set<String> usedTableNames = new HashSet<String>();
         final List<TableImpl> tables = new ArrayList<TableImpl>();
+        final ImmutableMap.Builder<TableImpl, Supplier<RowImpl>> rowFactories = ImmutableMap.builder();
         for (final TableBuilderImpl tb : this.tableBuilders) {
             final TableImpl built = tb.getBuiltTable();
             if (built == null) {
@@ -84,9 +98,12 @@ public class SchemaBuilderImpl implements SchemaBuilder {
                 } else {
                     usedTableNames.add(viewName);
                 }
+                if (generatedRowClasses) {
+                    rowFactories.put(built, RowClassGenerator.generate(built));
+                }
             }
         }
-        return new SchemaImpl(ImmutableList.copyOf(tables));
+        return new SchemaImpl(ImmutableList.copyOf(tables), rowFactories.build());
     }
 
     private enum IdColumnNamers implements Function<String, String> {
@@ -7,11 +7,14 @@
 package com.salesforce.ginsu.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.salesforce.ginsu.schema.Schema;
 import com.salesforce.ginsu.schema.Table;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -23,9 +26,25 @@ import static java.util.Objects.requireNonNull;
 class SchemaImpl implements Schema {
 
     private final List<TableImpl> tables;
+    private final Map<TableImpl, Supplier<RowImpl>> rowFactories;
 
     public SchemaImpl(List<TableImpl> tables) {
+        this(tables, ImmutableMap.of());
+    }
+
+    /**
+     * @param rowFactories factories for the rows of tables that have generated row classes.
+     */
+    SchemaImpl(List<TableImpl> tables, Map<TableImpl, Supplier<RowImpl>> rowFactories) {
         this.tables = requireNonNull(tables);
+        this.rowFactories = ImmutableMap.copyOf(rowFactories);
+    }
+
+    /**
+     * @return the factory for the table's rows if it has a generated row class, otherwise null.
+     */
+    Supplier<RowImpl> getRowFactory(TableImpl table) {
+        return this.rowFactories.get(table);
     }
 
     @Override
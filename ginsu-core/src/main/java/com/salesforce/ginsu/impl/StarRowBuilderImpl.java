@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
+import com.salesforce.ginsu.schema.Table;
+import com.salesforce.ginsu.warehouse.RowBuilder;
+import com.salesforce.ginsu.warehouse.StarRowBuilder;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+class StarRowBuilderImpl implements StarRowBuilder {
+
+    private final RowBuilder fact;
+    private final Function<TableImpl, RowBuilder> dimensionBuilders;
+    private final Map<ColumnImpl<SurrogateKey>, RowBuilder> dimensions = new LinkedHashMap<>();
+    private final Set<Column<?>> explicitKeys = new HashSet<>();
+    private boolean isDone = false;
+
+    /**
+     * @param dimensionBuilders makes a RowBuilder for a dimension table.
+     */
+    StarRowBuilderImpl(RowBuilder fact, Function<TableImpl, RowBuilder> dimensionBuilders) {
+        this.fact = requireNonNull(fact);
+        this.dimensionBuilders = requireNonNull(dimensionBuilders);
+    }
+
+    @Override
+    public <V> StarRowBuilder set(Column<V> column, V value) {
+        checkState();
+        fact.set(column, value);
+        if (((ColumnImpl<?>) column).getType() == ColumnType.FOREIGN_KEY) explicitKeys.add(column); // fact.set() checked it
+        return this;
+    }
+
+    @Override
+    public StarRowBuilder setInt(Column<Integer> column, int value) {
+        checkState();
+        fact.setInt(column, value);
+        return this;
+    }
+
+    @Override
+    public StarRowBuilder setLong(Column<Long> column, long value) {
+        checkState();
+        fact.setLong(column, value);
+        return this;
+    }
+
+    @Override
+    public StarRowBuilder setDouble(Column<Double> column, double value) {
+        checkState();
+        fact.setDouble(column, value);
+        return this;
+    }
+
+    @Override
+    public StarRowBuilder setBoolean(Column<Boolean> column, boolean value) {
+        checkState();
+        fact.setBoolean(column, value);
+        return this;
+    }
+
+    @Override
+    public StarRowBuilder setEpochMillis(Column<? extends java.util.Date> column, long epochMillis) {
+        checkState();
+        fact.setEpochMillis(column, epochMillis);
+        return this;
+    }
+
+    @Override
+    public <V> StarRowBuilder setDimension(Column<SurrogateKey> foreignKey, Column<V> dimensionColumn, V value) {
+        checkState();
+        final ColumnImpl<SurrogateKey> fk = checkForeignKey(foreignKey);
+        RowBuilder dimension = dimensions.get(fk);
+        if (dimension == null) {
+            dimension = dimensionBuilders.apply(fk.getReferencedTable());
+            dimensions.put(fk, dimension);
+        }
+        dimension.set(dimensionColumn, value);
+        return this;
+    }
+
+    /**
+     * The last dimension is upserted on the calling thread, which would otherwise just be waiting for it.
+     */
+    @Override
+    public SurrogateKey insert() {
+        checkState();
+        isDone = true;
+        final List<ColumnImpl<SurrogateKey>> fks = getLookedUpKeys();
+        final List<CompletableFuture<SurrogateKey>> keys = new ArrayList<>(fks.size());
+        for (int i = 0; i < fks.size() - 1; i++) {
+            keys.add(dimensions.get(fks.get(i)).upsertAsync());
+        }
+        if (!fks.isEmpty()) {
+            keys.add(CompletableFuture.completedFuture(dimensions.get(fks.get(fks.size() - 1)).upsert()));
+        }
+        for (int i = 0; i < fks.size(); i++) {
+            fact.set(fks.get(i), join(keys.get(i)));
+        }
+        return fact.insert();
+    }
+
+    @Override
+    public CompletableFuture<SurrogateKey> insertAsync() {
+        checkState();
+        isDone = true;
+        final List<ColumnImpl<SurrogateKey>> fks = getLookedUpKeys();
+        final List<CompletableFuture<SurrogateKey>> keys = new ArrayList<>(fks.size());
+        for (final ColumnImpl<SurrogateKey> fk : fks) {
+            keys.add(dimensions.get(fk).upsertAsync());
+        }
+        return CompletableFuture.allOf(keys.toArray(new CompletableFuture<?>[0])).thenCompose(ignored -> {
+            for (int i = 0; i < fks.size(); i++) {
+                fact.set(fks.get(i), keys.get(i).join());
+            }
+            return fact.insertAsync();
+        });
+    }
+
+    @Override
+    public Table getTargetTable() {
+        return fact.getTargetTable();
+    }
+
+    /**
+     * @return the foreign keys whose dimension rows have to be upserted, which leaves out the ones set explicitly.
+     */
+    private List<ColumnImpl<SurrogateKey>> getLookedUpKeys() {
+        final List<ColumnImpl<SurrogateKey>> out = new ArrayList<>(dimensions.keySet());
+        out.removeAll(explicitKeys);
+        return out;
+    }
+
+    private ColumnImpl<SurrogateKey> checkForeignKey(final Column<SurrogateKey> column) {
+        requireNonNull(column);
+        if (!(column instanceof ColumnImpl)) {
+            throw new IllegalArgumentException("invalid Column implementation " + column.getClass().getName());
+        }
+        if (!((TableImpl) getTargetTable()).contains(column)) {
+            throw new IllegalArgumentException(column.getName() + " does not belong to table " + getTargetTable().getName());
+        }
+        final ColumnImpl<SurrogateKey> out = (ColumnImpl<SurrogateKey>) column;
+        if (out.getType() != ColumnType.FOREIGN_KEY) {
+            throw new IllegalArgumentException(column.getName() + " is not a foreign key");
+        }
+        return out;
+    }
+
+    /**
+     * Rethrows what the upsert threw, rather than a CompletionException around it.
+     */
+    private static SurrogateKey join(final CompletableFuture<SurrogateKey> key) {
+        try {
+            return key.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private void checkState() {
+        if (isDone) {
+            throw new IllegalStateException("StarRowBuilders can't be reused.");
+        }
+    }
+}
@@ -26,24 +26,34 @@ import static java.util.Objects.requireNonNull;
  */
 class TableBuilderImpl implements TableBuilder, Consumer<ColumnImpl> {
 
+    private static final long DEFAULT_MAX_ROWS_HINT = Integer.MAX_VALUE;
+    private static final long DEFAULT_KEY_CACHE_SIZE = 100000;
+    private static final String DIGEST_COLUMN_SUFFIX = "_Digest";
+
     private final Function<String, String> idColumnNamer;
     private final Set<String> usedColumnNames = new HashSet();
     private final String name;
-    private final List<ColumnImpl> valueColumns;
+    private final List<ColumnImpl<?>> valueColumns;
     private List<ColumnImpl> primaryKeyColumns;
     private boolean hasSurrogateKey = true;
     private boolean hasPrimaryKey = true;
     private boolean allowForeignKeys = true;
     private String skColumnName;
     private TableImpl builtTable;
-    private long maxRowsHint = Integer.MAX_VALUE;
+    private long maxRowsHint = DEFAULT_MAX_ROWS_HINT;
+    private Long keyCacheSize = null;
+    private boolean offHeapKeyIndex = false;
+    private long bloomFilterSize = 0;
+    private boolean naturalKeyDigest = false;
+    private boolean isJunkDimension = false;
+    private FixedMembers fixedMembersOrNull;
     private String tableName;
 
     TableBuilderImpl(final String name, final Function<String, String> idColumnNamer) {
         this.name = requireNonNull(name);
         this.tableName = this.name;
         this.idColumnNamer = requireNonNull(idColumnNamer);
-        this.valueColumns = new ArrayList<ColumnImpl>();
+        this.valueColumns = new ArrayList<>();
     }
 
     @Override
@@ -108,6 +118,50 @@ class TableBuilderImpl implements TableBuilder, Consumer<ColumnImpl> {
         return this;
     }
 
+    @Override
+    public TableBuilder setKeyCacheSize(long maxEntries) {
+        if (maxEntries < 0) throw new IllegalArgumentException("invalid key cache size " + maxEntries);
+        this.keyCacheSize = maxEntries;
+        return this;
+    }
+
+    @Override
+    public TableBuilder setOffHeapKeyIndex(boolean offHeap) {
+        this.offHeapKeyIndex = offHeap;
+        return this;
+    }
+
+    @Override
+    public TableBuilder setBloomFilterSize(long expectedMembers) {
+        if (expectedMembers < 0) throw new IllegalArgumentException("invalid bloom filter size " + expectedMembers);
+        this.bloomFilterSize = expectedMembers;
+        return this;
+    }
+
+    @Override
+    public TableBuilder setNaturalKeyDigest(boolean digest) {
+        this.naturalKeyDigest = digest;
+        return this;
+    }
+
+    /**
+     * Makes the table a junk dimension, whose members are every combination of its columns' values.
+     *
+     * @see JunkMembers
+     */
+    TableBuilderImpl junkDimension(boolean isJunkDimension) {
+        this.isJunkDimension = isJunkDimension;
+        return this;
+    }
+
+    /**
+     * Gives the table a fixed set of members, which are written along with it.
+     */
+    TableBuilderImpl fixedMembers(FixedMembers fixedMembers) {
+        this.fixedMembersOrNull = requireNonNull(fixedMembers);
+        return this;
+    }
+
     @Override
     public Table build() {
         assertNotBuilt();
@@ -119,15 +173,65 @@ class TableBuilderImpl implements TableBuilder, Consumer<ColumnImpl> {
         } else {
             skColumnName = null;
         }
-        return this.builtTable = new TableImpl(name, tableName, skColumnName, valueColumns);
+        final String digestColumnName;
+        if (this.hasSurrogateKey && this.naturalKeyDigest) {
+            digestColumnName = this.name + DIGEST_COLUMN_SUFFIX;
+            this.checkColumnName(digestColumnName);
+        } else {
+            digestColumnName = null;
+        }
+        final long keyCacheSizeToUse;
+        if (this.keyCacheSize != null) {
+            keyCacheSizeToUse = this.keyCacheSize;
+        } else if (this.maxRowsHint != DEFAULT_MAX_ROWS_HINT) {
+            keyCacheSizeToUse = this.maxRowsHint;
+        } else {
+            keyCacheSizeToUse = DEFAULT_KEY_CACHE_SIZE;
+        }
+        if (this.primaryKeyColumns != null) {
+            if (this.primaryKeyColumns.isEmpty()) {
+                throw new IllegalStateException("no primary key columns given for " + this.name);
+            }
+            if (new HashSet<>(this.primaryKeyColumns).size() != this.primaryKeyColumns.size()) {
+                throw new IllegalStateException("duplicate primary key columns given for " + this.name);
+            }
+            for (final ColumnImpl column : this.primaryKeyColumns) {
+                final int ordinal = column.getOrdinal();
+                if (ordinal >= this.valueColumns.size() || this.valueColumns.get(ordinal) != column) {
+                    throw new IllegalStateException(column.getName() + " is not a column of " + this.name);
+                }
+            }
+        }
+        FixedMembers fixedMembers = this.fixedMembersOrNull;
+        if (this.isJunkDimension) {
+            if (this.primaryKeyColumns != null) {
+                throw new IllegalStateException("junk dimension " + this.name + " can't have primary key columns; all of its columns are");
+            }
+            fixedMembers = JunkMembers.create(this.name, this.valueColumns);
+        }
+        if (fixedMembers != null && !this.hasSurrogateKey) {
+            throw new IllegalStateException(this.name + " needs a surrogate key for its fixed members");
+        }
+        return this.builtTable = new TableImpl(name, tableName, skColumnName, valueColumns, primaryKeyColumns,
+                digestColumnName, maxRowsHint, keyCacheSizeToUse, offHeapKeyIndex, bloomFilterSize, fixedMembers);
     }
 
     @Override
     public void accept(ColumnImpl column) {
+        if (column.getOrdinal() != getNextColumnOrdinal()) {
+            throw new IllegalStateException("unexpected ordinal " + column.getOrdinal() + " on " + column);
+        }
         checkColumnName(column.getColumnName());
         this.valueColumns.add(column);
     }
 
+    /**
+     * @return the ordinal that the next column accepted by this builder will have.
+     */
+    int getNextColumnOrdinal() {
+        return this.valueColumns.size();
+    }
+
     TableImpl getBuiltTable() {
         return this.builtTable;
     }
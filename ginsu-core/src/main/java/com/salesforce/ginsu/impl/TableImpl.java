@@ -7,13 +7,18 @@
 package com.salesforce.ginsu.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.salesforce.ginsu.persistence.ColumnDef;
 import com.salesforce.ginsu.persistence.TableDef;
 import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.ColumnType;
 import com.salesforce.ginsu.schema.Table;
 
 import javax.annotation.concurrent.Immutable;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 
@@ -24,16 +29,55 @@ import static java.util.Objects.requireNonNull;
 @Immutable
 final class TableImpl implements TableDef, Table {
 
+    private static final HashFunction DIGEST_HASH = Hashing.murmur3_128();
+    private static final ThreadLocal<RowKeyEncoder.Buffer> DIGEST_BUFFERS = ThreadLocal.withInitial(RowKeyEncoder.Buffer::new);
+
     private final String name;
     private final String tableName;
     private final String skColumnNameOrNull;
     private final List<ColumnDef> valueColumns;
+    private final List<ColumnDef> naturalKeyColumns;
+    private final int[] naturalKeyOrdinalsOrNull;
+    private final List<ColumnDef> attributeColumns;
+    private final String digestColumnNameOrNull;
+    private final RowKeyEncoder digestEncoderOrNull;
+    private final ColumnType[] columnTypes;
+    private final long maxRowsHint;
+    private final long keyCacheSize;
+    private final boolean offHeapKeyIndex;
+    private final long bloomFilterSize;
+    private final FixedMembers fixedMembersOrNull;
 
-    public TableImpl(final String name, final String tableName, final String skColumnNameOrNull, final List<ColumnImpl> valueColumns) {
+    public TableImpl(final String name, final String tableName, final String skColumnNameOrNull, final List<? extends ColumnImpl<?>> valueColumns,
+                     final List<ColumnImpl> naturalKeyColumnsOrNull, final String digestColumnNameOrNull, final long maxRowsHint, final long keyCacheSize, final boolean offHeapKeyIndex,
+                     final long bloomFilterSize, final FixedMembers fixedMembersOrNull) {
         this.name = requireNonNull(name);
         this.tableName = requireNonNull(tableName);
         this.skColumnNameOrNull = skColumnNameOrNull;
         this.valueColumns = ImmutableList.copyOf(requireNonNull(valueColumns));
+        if (naturalKeyColumnsOrNull == null || naturalKeyColumnsOrNull.equals(valueColumns)) {
+            this.naturalKeyColumns = this.valueColumns;
+            this.naturalKeyOrdinalsOrNull = null;
+        } else {
+            this.naturalKeyColumns = ImmutableList.copyOf(naturalKeyColumnsOrNull);
+            this.naturalKeyOrdinalsOrNull = new int[naturalKeyColumnsOrNull.size()];
+            for (int i = 0; i < naturalKeyOrdinalsOrNull.length; i++) {
+                naturalKeyOrdinalsOrNull[i] = naturalKeyColumnsOrNull.get(i).getOrdinal();
+            }
+        }
+        this.attributeColumns = ImmutableList.copyOf(this.valueColumns.stream().
+                filter(c -> !this.naturalKeyColumns.contains(c)).collect(Collectors.toList()));
+        this.digestColumnNameOrNull = digestColumnNameOrNull;
+        this.digestEncoderOrNull = digestColumnNameOrNull == null ? null : new RowKeyEncoder(this.naturalKeyColumns);
+        this.columnTypes = new ColumnType[valueColumns.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = valueColumns.get(i).getType();
+        }
+        this.maxRowsHint = maxRowsHint;
+        this.keyCacheSize = keyCacheSize;
+        this.offHeapKeyIndex = offHeapKeyIndex;
+        this.bloomFilterSize = bloomFilterSize;
+        this.fixedMembersOrNull = fixedMembersOrNull;
     }
 
     @Override
@@ -43,7 +87,20 @@ final class TableImpl implements TableDef, Table {
 
     @Override
     public boolean contains(Column column) {
-        return valueColumns.contains(column);
+        if (!(column instanceof ColumnImpl)) return false;
+        final int ordinal = ((ColumnImpl) column).getOrdinal();
+        return ordinal < valueColumns.size() && valueColumns.get(ordinal) == column;
+    }
+
+    /**
+     * @return the number of value columns, which is also the size of a row's value array.
+     */
+    int getColumnCount() {
+        return valueColumns.size();
+    }
+
+    ColumnType getColumnType(int ordinal) {
+        return columnTypes[ordinal];
     }
 
     @Override
@@ -51,6 +108,53 @@ final class TableImpl implements TableDef, Table {
         return this.valueColumns;
     }
 
+    @Override
+    public List<ColumnDef> getNaturalKeyColumns() {
+        return this.naturalKeyColumns;
+    }
+
+    @Override
+    public String getDigestColumnName() {
+        return this.digestColumnNameOrNull;
+    }
+
+    /**
+     * @return murmur3_128 of the row's natural key encoded with a RowKeyEncoder, or null if the table has no digest
+     * column or the row can't be encoded.
+     */
+    HashCode digest(final RowImpl row) {
+        if (digestEncoderOrNull == null) return null;
+        final RowKeyEncoder.Buffer buffer = DIGEST_BUFFERS.get();
+        final int length = digestEncoderOrNull.encode(row, buffer);
+        return length < 0 ? null : DIGEST_HASH.hashBytes(buffer.bytes, 0, length);
+    }
+
+    /**
+     * @return the value columns that aren't part of the natural key.
+     */
+    List<ColumnDef> getAttributeColumns() {
+        return this.attributeColumns;
+    }
+
+    /**
+     * @return the ordinals of the natural key columns, or null if the natural key is the whole row.
+     */
+    int[] getNaturalKeyOrdinals() {
+        return this.naturalKeyOrdinalsOrNull;
+    }
+
+    /**
+     * @return the table's members if they're all known up front, otherwise null.
+     */
+    FixedMembers getFixedMembers() {
+        return this.fixedMembersOrNull;
+    }
+
+    @Override
+    public List<RowImpl> getFixedRows() {
+        return fixedMembersOrNull == null ? Collections.emptyList() : fixedMembersOrNull.getRows(this);
+    }
+
     @Override
     public String getTableName() {
         return this.tableName;
@@ -66,6 +170,38 @@ final class TableImpl implements TableDef, Table {
         return skColumnNameOrNull;
     }
 
+    public long getMaxRowsHint() {
+        return maxRowsHint;
+    }
+
+    /**
+     * @return the maximum number of entries in this table's KeyCache, or zero if it shouldn't have one.
+     */
+    public long getKeyCacheSize() {
+        return hasLookedUpKeys() ? keyCacheSize : 0;
+    }
+
+    /**
+     * @return true if the table's keys should be kept in an OffHeapKeyCache rather than a bounded one.
+     */
+    public boolean isOffHeapKeyIndex() {
+        return hasLookedUpKeys() && offHeapKeyIndex;
+    }
+
+    /**
+     * @return the number of members to size the table's MemberFilter for, or zero if it shouldn't have one.
+     */
+    public long getBloomFilterSize() {
+        return hasLookedUpKeys() ? bloomFilterSize : 0;
+    }
+
+    /**
+     * Tables with fixed members compute their keys, so they have no use for caches or filters.
+     */
+    private boolean hasLookedUpKeys() {
+        return hasSurrogateKey() && fixedMembersOrNull == null;
+    }
+
     @Override
     public int hashCode() {
         return this.name.hashCode();
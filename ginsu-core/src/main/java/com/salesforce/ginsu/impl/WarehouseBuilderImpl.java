@@ -11,6 +11,9 @@ import com.salesforce.ginsu.persistence.PersistenceProvider;
 import com.salesforce.ginsu.schema.Schema;
 import com.salesforce.ginsu.warehouse.*;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -19,8 +22,19 @@ import static java.util.Objects.requireNonNull;
  */
 public class WarehouseBuilderImpl implements WarehouseBuilder {
 
+    private static final long DEFAULT_OFF_HEAP_BUDGET = 1L << 30;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 10000;
+
     private PersistenceProvider pp;
     private Schema schema;
+    private boolean openExisting = false;
+    private boolean warmKeyCaches = false;
+    private long offHeapBudget = DEFAULT_OFF_HEAP_BUDGET;
+    private Path spillDirectory = null;
+    private int asyncWriterThreads = Runtime.getRuntime().availableProcessors();
+    private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+    private AsyncBackPressure asyncBackPressure = AsyncBackPressure.BLOCK;
+    private int loadParallelism = Runtime.getRuntime().availableProcessors();
     private WarehouseImpl built = null;
 
     public WarehouseBuilderImpl() {
@@ -40,12 +54,77 @@ public class WarehouseBuilderImpl implements WarehouseBuilder {
         return this;
     }
 
+    @Override
+    public WarehouseBuilderImpl setOpenExisting(boolean openExisting) {
+        assertUsable();
+        this.openExisting = openExisting;
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setWarmKeyCaches(boolean warmKeyCaches) {
+        assertUsable();
+        this.warmKeyCaches = warmKeyCaches;
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setOffHeapBudget(long bytes) {
+        assertUsable();
+        if (bytes < 0) throw new IllegalArgumentException("invalid off-heap budget " + bytes);
+        this.offHeapBudget = bytes;
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setSpillDirectory(Path directory) {
+        assertUsable();
+        this.spillDirectory = requireNonNull(directory);
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setAsyncWriterThreads(int threads) {
+        assertUsable();
+        if (threads <= 0) throw new IllegalArgumentException("invalid thread count " + threads);
+        this.asyncWriterThreads = threads;
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setAsyncQueueCapacity(int capacity) {
+        assertUsable();
+        if (capacity <= 0) throw new IllegalArgumentException("invalid queue capacity " + capacity);
+        this.asyncQueueCapacity = capacity;
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setAsyncBackPressure(AsyncBackPressure backPressure) {
+        assertUsable();
+        this.asyncBackPressure = requireNonNull(backPressure);
+        return this;
+    }
+
+    @Override
+    public WarehouseBuilderImpl setLoadParallelism(int threads) {
+        assertUsable();
+        if (threads <= 0) throw new IllegalArgumentException("invalid thread count " + threads);
+        this.loadParallelism = threads;
+        return this;
+    }
+
     @Override
     public Warehouse build() throws PersistenceException {
         assertUsable();
         if (this.pp == null) throw new IllegalStateException(PersistenceProvider.class.getSimpleName() + " not set");
         if (this.schema == null) throw new IllegalStateException(Schema.class.getSimpleName() + " not set");
-        return built = new WarehouseImpl(this.schema, this.pp);
+        final Path spillDirectoryToUse = this.spillDirectory != null ? this.spillDirectory :
+                Paths.get(System.getProperty("java.io.tmpdir"));
+        return built = new WarehouseImpl(this.schema, this.pp, this.openExisting, this.warmKeyCaches,
+                new OffHeapAllocator(this.offHeapBudget, spillDirectoryToUse),
+                new AsyncWriter(this.asyncWriterThreads, this.asyncQueueCapacity, this.asyncBackPressure),
+                this.loadParallelism);
     }
 
     private void assertUsable() {
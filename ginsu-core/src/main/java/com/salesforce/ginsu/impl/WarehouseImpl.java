@@ -6,7 +6,9 @@
  */
 package com.salesforce.ginsu.impl;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
 import com.salesforce.ginsu.persistence.PersistenceProvider;
 
 import static com.salesforce.ginsu.persistence.PersistenceProvider.*;
@@ -18,11 +20,35 @@ import com.salesforce.ginsu.schema.Table;
 
 import static java.util.Objects.requireNonNull;
 
+import com.salesforce.ginsu.warehouse.KeyCacheStats;
+import com.salesforce.ginsu.warehouse.LoadSummary;
 import com.salesforce.ginsu.warehouse.RowBuilder;
+import com.salesforce.ginsu.warehouse.RowMapper;
+import com.salesforce.ginsu.warehouse.StarRowBuilder;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
 import com.salesforce.ginsu.warehouse.Warehouse;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 
 
 /**
@@ -31,39 +57,386 @@ import java.util.List;
  */
 class WarehouseImpl implements Warehouse {
 
+    private static final int WARM_KEY_CACHE_FETCH_SIZE = 10000;
+    private static final int LOAD_CHUNKS_PER_THREAD = 4;
+    private static final int LOAD_UNKNOWN_SIZE_CHUNK = 1024;
+
     private final Schema schema;
     private final PersistenceProvider pp;
+    private final Map<TableImpl, KeyCache> keyCaches;
+    private final Map<TableImpl, MemberFilter> memberFilters;
+    private final Map<TableImpl, InFlightUpserts> inFlightUpserts;
+    private final OffHeapAllocator offHeapAllocator;
+    private final AsyncWriter asyncWriter;
+    private final ForkJoinPool loadPool;
 
-    WarehouseImpl(final Schema schema, final PersistenceProvider persistence) throws PersistenceException {
+    WarehouseImpl(final Schema schema, final PersistenceProvider persistence, final boolean openExisting,
+                  final boolean warmKeyCaches, final OffHeapAllocator offHeapAllocator,
+                  final AsyncWriter asyncWriter, final int loadParallelism) throws PersistenceException {
         this.schema = requireNonNull(schema);
         this.pp = requireNonNull(persistence);
+        this.offHeapAllocator = requireNonNull(offHeapAllocator);
+        this.asyncWriter = requireNonNull(asyncWriter);
+        // the pool index isn't assigned until the thread starts, so it can't go in the name
+        final AtomicInteger loaderCounter = new AtomicInteger();
+        this.loadPool = new ForkJoinPool(loadParallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ginsu-loader-" + loaderCounter.getAndIncrement());
+            return thread;
+        }, null, false);
         final List<TableDef> tables = CastUtils.immutableCopyCast(schema.getTables(), TableDef.class);
+        {
+            final ImmutableMap.Builder<TableImpl, KeyCache> caches = ImmutableMap.builder();
+            for (final TableImpl table : CastUtils.immutableCopyCast(schema.getTables(), TableImpl.class)) {
+                if (table.isOffHeapKeyIndex()) {
+                    caches.put(table, new OffHeapKeyCache(new RowKeyEncoder(table.getNaturalKeyColumns()),
+                            table.getAttributeColumns().isEmpty() ? null : new RowKeyEncoder(table.getAttributeColumns()),
+                            offHeapAllocator));
+                } else if (table.getKeyCacheSize() > 0) {
+                    caches.put(table, new HeapKeyCache(table.getKeyCacheSize()));
+                }
+            }
+            this.keyCaches = caches.build();
+        }
+        {
+            final ImmutableMap.Builder<TableImpl, InFlightUpserts> inFlight = ImmutableMap.builder();
+            for (final TableImpl table : CastUtils.immutableCopyCast(schema.getTables(), TableImpl.class)) {
+                if (table.hasSurrogateKey() && table.getFixedMembers() == null) inFlight.put(table, new InFlightUpserts());
+            }
+            this.inFlightUpserts = inFlight.build();
+        }
         //FIXME need to do a topo sort here
         this.pp.validateSchema(new ValidateSchemaRequest() {
             @Override
             public List<TableDef> getTables() {
                 return tables;
             }
+
+            @Override
+            public boolean isOpenExisting() {
+                return openExisting;
+            }
         });
         this.pp.createSchema(new CreateSchemaRequest() {
             @Override
             public List<TableDef> getTables() {
                 return tables;
             }
+
+            @Override
+            public boolean isOpenExisting() {
+                return openExisting;
+            }
         });
+        // a filter is only good once it has every existing member in it
+        final boolean isScannable = this.pp.supportsScanKeys();
+        final ImmutableMap.Builder<TableImpl, MemberFilter> filters = ImmutableMap.builder();
+        if (isScannable || !openExisting) {
+            for (final TableImpl table : CastUtils.immutableCopyCast(schema.getTables(), TableImpl.class)) {
+                if (table.getBloomFilterSize() > 0) {
+                    filters.put(table, new MemberFilter(new RowKeyEncoder(table.getNaturalKeyColumns()), table.getBloomFilterSize()));
+                }
+            }
+        }
+        this.memberFilters = filters.build();
+        if (isScannable && (openExisting || warmKeyCaches)) {
+            scanExistingKeys(warmKeyCaches ? keyCaches : ImmutableMap.of(), openExisting ? memberFilters : ImmutableMap.of());
+        }
+    }
+
+    /**
+     * Fills key caches and member filters from the rows already in their tables, scanning the tables in parallel.  A
+     * table's scan stops once its cache is full, unless it also has a filter to fill.
+     */
+    private void scanExistingKeys(final Map<TableImpl, KeyCache> caches,
+                                  final Map<TableImpl, MemberFilter> filters) throws PersistenceException {
+        final Set<TableImpl> tables = Sets.union(caches.keySet(), filters.keySet());
+        if (tables.isEmpty()) return;
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(tables.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(tables.size());
+            for (final TableImpl table : tables) {
+                final KeyCache cacheOrNull = caches.get(table);
+                final MemberFilter filterOrNull = filters.get(table);
+                futures.add(executor.submit(() -> {
+                    pp.scanKeys(new ScanKeysRequest() {
+                        private long count = 0;
+
+                        @Override
+                        public TableDef getTableDef() {
+                            return table;
+                        }
+
+                        @Override
+                        public int getFetchSize() {
+                            return WARM_KEY_CACHE_FETCH_SIZE;
+                        }
+
+                        @Override
+                        public boolean accept(Object[] values, SurrogateKey key) {
+                            final RowImpl row = new RowImpl(table, values);
+                            if (filterOrNull != null) filterOrNull.add(row);
+                            if (cacheOrNull != null && count < cacheOrNull.getMaximumSize()) {
+                                cacheOrNull.put(row, key);
+                                count++;
+                            }
+                            return filterOrNull != null || count < cacheOrNull.getMaximumSize();
+                        }
+                    });
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), PersistenceException.class);
+                    throw new PersistenceException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PersistenceException(e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
     }
 
     @Override
     public RowBuilder buildRow(Table table) {
+        final TableImpl tableImpl = checkTable(table);
+        return new RowBuilderImpl(tableImpl, newRow(tableImpl), this.pp, this.asyncWriter, this.keyCaches.get(table), this.memberFilters.get(table),
+                this.inFlightUpserts.get(table));
+    }
+
+    @Override
+    public StarRowBuilder buildStarRow(Table factTable) {
+        return new StarRowBuilderImpl(buildRow(factTable), this::buildRow);
+    }
+
+    /**
+     * Rows can't be reused, since the key caches and the provider's batches hang on to them, but one builder does for
+     * the whole load.
+     */
+    @Override
+    public <T> LoadSummary load(Table table, Iterator<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException {
+        final TableImpl tableImpl = checkTable(table);
+        requireNonNull(source);
+        requireNonNull(mapper);
+        final long start = System.nanoTime();
+        final LoadCounts counts = loadChunk(tableImpl, source, mapper);
+        return finishLoad(start, counts);
+    }
+
+    /**
+     * Splits the source the way a parallel stream would: each task keeps splitting off and forking prefixes until
+     * what's left is small enough, then loads that itself.  A source of unknown size reports the same estimate after
+     * every split, so it just keeps getting split until trySplit gives up, which for one made from an iterator means
+     * the iterator has run out; the batches it splits off know their sizes and get split further.
+     */
+    @Override
+    public <T> LoadSummary loadParallel(Table table, Spliterator<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException {
+        final TableImpl tableImpl = checkTable(table);
+        requireNonNull(source);
+        requireNonNull(mapper);
+        final long start = System.nanoTime();
+        final long estimate = source.estimateSize();
+        final long chunkSize = estimate == Long.MAX_VALUE ? LOAD_UNKNOWN_SIZE_CHUNK :
+                Math.max(1, estimate / (loadPool.getParallelism() * LOAD_CHUNKS_PER_THREAD));
+        final LoadCounts counts;
+        try {
+            counts = loadPool.submit(new LoadTask<>(tableImpl, source, mapper, chunkSize)).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            Throwables.propagateIfPossible(cause, PersistenceException.class);
+            throw new PersistenceException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException(e);
+        }
+        return finishLoad(start, counts);
+    }
+
+    private LoadSummary finishLoad(final long start, final LoadCounts counts) throws PersistenceException {
+        final long flushStart = System.nanoTime();
+        pp.flush();
+        final long end = System.nanoTime();
+        return new LoadSummaryImpl(counts.records, counts.rows, end - start, counts.mapNanos, end - flushStart);
+    }
+
+    /**
+     * Maps and writes every record from the source on the calling thread.
+     */
+    private <T> LoadCounts loadChunk(final TableImpl table, final Iterator<? extends T> source,
+                                     final RowMapper<? super T> mapper) throws PersistenceException {
+        final RowBuilderImpl builder = (RowBuilderImpl) buildRow(table);
+        final boolean isDimension = table.hasSurrogateKey();
+        final LoadCounts out = new LoadCounts();
+        while (source.hasNext()) {
+            final T record = source.next();
+            out.records++;
+            final long mapStart = System.nanoTime();
+            final boolean isMapped = mapper.map(record, builder);
+            out.mapNanos += System.nanoTime() - mapStart;
+            if (isMapped) {
+                if (isDimension) {
+                    builder.blindUpsert();
+                } else {
+                    builder.insert();
+                }
+                out.rows++;
+            }
+            builder.reset(newRow(table));
+        }
+        return out;
+    }
+
+    /**
+     * The member filter isn't consulted, since the provider's batch upsert finds existing rows as cheaply as it
+     * inserts new ones; it just learns the new members afterwards.  The filter's locks for the rows are held across
+     * the batch and the add(), as for a single row, or a concurrent upsert could find one of them absent and insert
+     * it again.
+     *
+     * The batch doesn't go through InFlightUpserts, so a single-row upsert of one of the same members at the same
+     * time isn't coalesced with it.  Both reach the provider, which has to cope with that the same way it copes with
+     * two warehouses upserting the same member.
+     */
+    @Override
+    public <T> List<SurrogateKey> upsertBatch(Table dimension, List<? extends T> records, RowMapper<? super T> mapper) {
+        final TableImpl tableImpl = checkTable(dimension);
+        if (!tableImpl.hasSurrogateKey()) {
+            throw new IllegalArgumentException(tableImpl.getName() + " does not have a surrogate key");
+        }
+        requireNonNull(records);
+        requireNonNull(mapper);
+        final KeyCache keyCache = this.keyCaches.get(tableImpl);
+        final MemberFilter memberFilter = this.memberFilters.get(tableImpl);
+        final SurrogateKey[] out = new SurrogateKey[records.size()];
+        final List<RowImpl> misses = new ArrayList<>();
+        final List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < out.length; i++) {
+            final RowBuilderImpl builder = (RowBuilderImpl) buildRow(tableImpl);
+            if (!mapper.map(records.get(i), builder)) continue;
+            final RowImpl row = builder.takeRow();
+            if (tableImpl.getFixedMembers() != null) {
+                out[i] = tableImpl.getFixedMembers().getKey(row);
+                continue;
+            }
+            out[i] = keyCache == null ? null : keyCache.get(row);
+            if (out[i] == null) {
+                misses.add(row);
+                missIndexes.add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            final Iterable<Lock> locks = memberFilter == null ? Collections.emptyList() : memberFilter.getLocks(misses);
+            for (final Lock lock : locks) {
+                lock.lock();
+            }
+            try {
+                final List<SurrogateKey> keys = pp.upsertBatch(UpsertBatchRequest.create(tableImpl, misses));
+                if (keys.size() != misses.size()) {
+                    throw new IllegalStateException("expected " + misses.size() + " keys for " + tableImpl.getName() + ", got " + keys.size());
+                }
+                for (int i = 0; i < misses.size(); i++) {
+                    final SurrogateKey key = requireNonNull(keys.get(i), "no key returned for a row of " + tableImpl.getName());
+                    out[missIndexes.get(i)] = key;
+                    if (keyCache != null) keyCache.put(misses.get(i), key);
+                    if (memberFilter != null) memberFilter.add(misses.get(i));
+                }
+            } finally {
+                for (final Lock lock : locks) {
+                    lock.unlock();
+                }
+            }
+        }
+        return Arrays.asList(out);
+    }
+
+    private TableImpl checkTable(final Table table) {
         requireNonNull(table);
         if (!(table instanceof TableImpl)) {
             throw new IllegalArgumentException("invalid impl " + table.getClass());
         }
-        return new RowBuilderImpl(((TableImpl) table), this.pp);
+        return (TableImpl) table;
+    }
+
+    private RowImpl newRow(final TableImpl table) {
+        final Supplier<RowImpl> rowFactory = this.schema instanceof SchemaImpl ? ((SchemaImpl) this.schema).getRowFactory(table) : null;
+        return rowFactory == null ? new RowImpl(table, new Object[table.getColumnCount()]) : rowFactory.get();
+    }
+
+    @Override
+    public KeyCacheStats getKeyCacheStats(Table table) {
+        return this.keyCaches.get(requireNonNull(table));
     }
 
     @Override
     public void close() throws IOException {
-        pp.close();
+        loadPool.shutdown();
+        try {
+            asyncWriter.close(); // the provider has to see the queued rows before it closes
+            pp.close();
+        } finally {
+            offHeapAllocator.close();
+        }
+    }
+
+    private static final class LoadCounts {
+        long records;
+        long rows;
+        long mapNanos;
+
+        LoadCounts add(final LoadCounts other) {
+            records += other.records;
+            rows += other.rows;
+            mapNanos += other.mapNanos;
+            return this;
+        }
+    }
+
+    private final class LoadTask<T> extends RecursiveTask<LoadCounts> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TableImpl table;
+        private final Spliterator<? extends T> source;
+        private final RowMapper<? super T> mapper;
+        private final long chunkSize;
+
+        LoadTask(final TableImpl table, final Spliterator<? extends T> source, final RowMapper<? super T> mapper,
+                 final long chunkSize) {
+            this.table = table;
+            this.source = source;
+            this.mapper = mapper;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected LoadCounts compute() {
+            final List<LoadTask<T>> forked = new ArrayList<>();
+            try {
+                Spliterator<? extends T> prefix;
+                while (source.estimateSize() > chunkSize && (prefix = source.trySplit()) != null) {
+                    final LoadTask<T> task = new LoadTask<>(table, prefix, mapper, chunkSize);
+                    task.fork();
+                    forked.add(task);
+                }
+                final LoadCounts out = loadChunk(table, Spliterators.iterator(source), mapper);
+                for (int i = forked.size() - 1; i >= 0; i--) {
+                    out.add(forked.get(i).join());
+                }
+                return out;
+            } catch (PersistenceException | RuntimeException e) {
+                for (final LoadTask<T> task : forked) {
+                    task.cancel(false); // the ones that haven't started, anyway
+                }
+                throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+            }
+        }
     }
 }
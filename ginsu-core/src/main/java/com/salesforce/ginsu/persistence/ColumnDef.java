@@ -28,4 +28,12 @@ public interface ColumnDef {
     boolean isNullable();
 
     boolean needsIndex();
+
+    /**
+     * @return for a STRING column, the most characters its values can have.  Longer values are truncated when they're
+     * written.  Integer.MAX_VALUE means no limit.  Meaningless for other types.
+     */
+    default int getMaxLength() {
+        return Integer.MAX_VALUE;
+    }
 }
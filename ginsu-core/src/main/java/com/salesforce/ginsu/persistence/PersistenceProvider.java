@@ -10,8 +10,11 @@ package com.salesforce.ginsu.persistence;
 import com.salesforce.ginsu.warehouse.SurrogateKey;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * @author pcal
  * @since 0.0.1
@@ -20,12 +23,32 @@ public interface PersistenceProvider extends Closeable {
 
     interface ValidateSchemaRequest {
         List<TableDef> getTables();
+
+        /**
+         * @return true if tables that already exist are expected and should be checked against their definitions.  If
+         * false, it's an error for any of the tables to exist already.
+         */
+        default boolean isOpenExisting() {
+            return false;
+        }
     }
 
+    /**
+     * Checks that whatever is already in the database is consistent with the given table definitions, throwing if it
+     * isn't.  Tables that don't exist yet are fine; createSchema will create them.
+     */
     void validateSchema(ValidateSchemaRequest request) throws PersistenceException;
 
     interface CreateSchemaRequest {
         List<TableDef> getTables();
+
+        /**
+         * @return true if tables, indexes, etc. that already exist should be left alone so that new rows are appended
+         * to them, false if everything should be created from scratch.
+         */
+        default boolean isOpenExisting() {
+            return false;
+        }
     }
 
     void createSchema(CreateSchemaRequest request) throws PersistenceException;
@@ -37,16 +60,40 @@ public interface PersistenceProvider extends Closeable {
         UPSERT_ANONYMOUS
     }
 
-    SurrogateKey insert(InsertMode mode, TableDef table, Row values); // killme
-
-
-
+    /**
+     * @deprecated use update()
+     */
+    @Deprecated
+    default SurrogateKey insert(InsertMode mode, TableDef table, Row values) { // killme
+        switch (mode) {
+            case INSERT:
+                return update(UpdateRequest.create(UpdateRequest.Mode.INSERT, table, values, true));
+            case INSERT_ANONYMOUS:
+                return update(UpdateRequest.create(UpdateRequest.Mode.INSERT, table, values, false));
+            case UPSERT:
+                return update(UpdateRequest.create(UpdateRequest.Mode.UPSERT, table, values, true));
+            case UPSERT_ANONYMOUS:
+                return update(UpdateRequest.create(UpdateRequest.Mode.UPSERT, table, values, false));
+            default:
+                throw new IllegalStateException("unknown mode " + mode);
+        }
+    }
 
     interface UpdateRequest {
 
         enum Mode {
+            /**
+             * Add a new row.
+             */
             INSERT,
+            /**
+             * Add the row unless one with the same natural key (TableDef.getNaturalKeyColumns()) already exists, in
+             * which case update that row's other value columns in place.  Either way the row keeps one key.
+             */
             UPSERT,
+            /**
+             * Add the row, or update the existing row that matches it.
+             */
             MERGE,
         }
 
@@ -56,12 +103,131 @@ public interface PersistenceProvider extends Closeable {
 
         Row getRow();
 
+        /**
+         * @return false if the caller doesn't need the SurrogateKey of the row.  Providers can use this to skip
+         * reading the key back, and to batch the update.
+         */
         boolean isReturnValueRequired();
 
+        static UpdateRequest create(final Mode mode, final TableDef table, final Row row, final boolean isReturnValueRequired) {
+            requireNonNull(mode);
+            requireNonNull(table);
+            requireNonNull(row);
+            if (isReturnValueRequired && !table.hasSurrogateKey()) {
+                throw new IllegalArgumentException(table.getTableName() + " does not have a surrogate key");
+            }
+            return new UpdateRequest() {
+                @Override
+                public Mode getMode() {
+                    return mode;
+                }
+
+                @Override
+                public TableDef getTableDef() {
+                    return table;
+                }
+
+                @Override
+                public Row getRow() {
+                    return row;
+                }
+
+                @Override
+                public boolean isReturnValueRequired() {
+                    return isReturnValueRequired;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the key of the inserted or matching row if request.isReturnValueRequired(); otherwise null.
+     */
+    SurrogateKey update(UpdateRequest request);
+
+    interface UpsertBatchRequest {
+
+        TableDef getTableDef();
+
+        List<? extends Row> getRows();
+
+        static UpsertBatchRequest create(final TableDef table, final List<? extends Row> rows) {
+            requireNonNull(table);
+            requireNonNull(rows);
+            if (!table.hasSurrogateKey()) {
+                throw new IllegalArgumentException(table.getTableName() + " does not have a surrogate key");
+            }
+            return new UpsertBatchRequest() {
+                @Override
+                public TableDef getTableDef() {
+                    return table;
+                }
+
+                @Override
+                public List<? extends Row> getRows() {
+                    return rows;
+                }
+            };
+        }
+    }
+
+    /**
+     * Upserts every row of a surrogate-keyed table, as update() would with UPSERT, but as one call, so that providers
+     * can write the rows and read their keys back with a few set-based statements rather than a couple per row.  The
+     * default just calls update() for each row.
+     *
+     * @return the rows' keys, in the same order as the rows.
+     */
+    default List<SurrogateKey> upsertBatch(final UpsertBatchRequest request) {
+        final TableDef table = request.getTableDef();
+        final List<SurrogateKey> out = new ArrayList<>(request.getRows().size());
+        for (final Row row : request.getRows()) {
+            out.add(update(UpdateRequest.create(UpdateRequest.Mode.UPSERT, table, row, true)));
+        }
+        return out;
+    }
+
+    /**
+     * Writes out every update the provider has buffered, from any thread, so that they're in the database when this
+     * returns.  Providers that don't buffer needn't do anything.
+     */
+    default void flush() throws PersistenceException {
+    }
+
+    interface ScanKeysRequest {
+
+        TableDef getTableDef();
+
+        /**
+         * @return a hint for how many rows to fetch from the database at a time.
+         */
+        int getFetchSize();
+
+        /**
+         * Receives one existing row of the table.
+         *
+         * @param values the row's value column values, in the order of TableDef.getValueColumns(), as Java types
+         *               matching the columns' ColumnTypes.  The array belongs to the callee.
+         * @param key    the row's surrogate key.
+         * @return false to stop the scan.
+         */
+        boolean accept(Object[] values, SurrogateKey key);
+    }
+
+    /**
+     * @return true if scanKeys() really streams the existing rows.  A warehouse opened on top of existing data needs
+     * that to fill its member filters, so it doesn't use them with a provider that returns false.
+     */
+    default boolean supportsScanKeys() {
+        return false;
     }
 
-    default SurrogateKey update(UpdateRequest request) {
-        return null;
+    /**
+     * Streams the values and surrogate key of every row already in a surrogate-keyed table, e.g. so that a warehouse
+     * opened on top of existing data can warm its key caches.  Providers that can't do this may scan nothing, and
+     * return false from supportsScanKeys().
+     */
+    default void scanKeys(ScanKeysRequest request) throws PersistenceException {
     }
 
 }
@@ -20,4 +20,44 @@ public interface Row {
 
 
     void setKey(SurrogateKey key);
+
+    /**
+     * @return a 128-bit hash of the row's natural key values if its table has a digest column, otherwise null.
+     *
+     * @see TableDef#getDigestColumnName()
+     */
+    default byte[] getNaturalKeyDigest() {
+        return null;
+    }
+
+    // ========================================================================
+    // Unboxed accessors.  Implementations that store primitives should override these so that persistence
+    // providers can read numeric values without boxing them.  Callers must check isNull() first.
+
+    default boolean isNull(ColumnDef column) {
+        return getValue(column) == null;
+    }
+
+    default int getInt(ColumnDef column) {
+        return (Integer) getValue(column);
+    }
+
+    default long getLong(ColumnDef column) {
+        return (Long) getValue(column);
+    }
+
+    default double getDouble(ColumnDef column) {
+        return (Double) getValue(column);
+    }
+
+    default boolean getBoolean(ColumnDef column) {
+        return (Boolean) getValue(column);
+    }
+
+    /**
+     * @return the value of a DATE or TIMESTAMP column as milliseconds since the epoch.
+     */
+    default long getEpochMillis(ColumnDef column) {
+        return ((java.util.Date) getValue(column)).getTime();
+    }
 }
@@ -6,6 +6,7 @@
  */
 package com.salesforce.ginsu.persistence;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -25,4 +26,30 @@ public interface TableDef {
 
     List<ColumnDef> getValueColumns();
 
+    /**
+     * @return the value columns that identify a row, in the order they were given.  Rows with the same values in
+     * these columns are the same member, and the rest of their columns are attributes that get updated in place.
+     * All of the value columns, unless the table declared primary key columns.
+     */
+    default List<ColumnDef> getNaturalKeyColumns() {
+        return getValueColumns();
+    }
+
+    /**
+     * @return the name of a column holding Row.getNaturalKeyDigest() for each row, through which rows should be looked
+     * up instead of through the natural key columns; or null if the table doesn't have one.
+     */
+    default String getDigestColumnName() {
+        return null;
+    }
+
+    /**
+     * @return every row the table will ever have, with their keys set, if they're known up front (e.g., the
+     * combinations of a junk dimension's flags); otherwise an empty list.  createSchema should write them when it
+     * creates the table.  Nothing else is written to such a table; the warehouse works out the keys of its rows itself.
+     */
+    default List<? extends Row> getFixedRows() {
+        return Collections.emptyList();
+    }
+
 }
\ No newline at end of file
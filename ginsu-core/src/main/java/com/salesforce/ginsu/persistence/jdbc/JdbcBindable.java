@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persistence.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Implemented by Rows that can bind their own values, e.g. generated row classes.  A JdbcRowBinder for a table's
+ * value columns hands them the statement rather than binding them one column at a time.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see JdbcRowBinder#forValueColumns(com.salesforce.ginsu.persistence.TableDef)
+ */
+public interface JdbcBindable {
+
+    /**
+     * Binds the value of each of the row's table's value columns, in order, starting at the given parameter, the
+     * same way a JdbcRowBinder would.
+     *
+     * @return the index of the next parameter after the ones that were bound.
+     */
+    int bindValues(PreparedStatement stmt, int firstParameterIndex) throws SQLException;
+}
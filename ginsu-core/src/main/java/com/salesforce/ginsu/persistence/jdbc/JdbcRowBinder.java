@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persistence.jdbc;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.persistence.Row;
+import com.salesforce.ginsu.persistence.TableDef;
+
+import javax.annotation.concurrent.Immutable;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Binds a row's values for some list of columns to consecutive parameters of a PreparedStatement.  A setter is picked
+ * for each column once, from its type, so binding a row is just a call per column to the setter the driver would
+ * otherwise have had to work out from the value: numbers and booleans are read from the row unboxed, and
+ * LongSurrogateKeys are bound as longs.  Strings longer than the column's max length are truncated.
+ *
+ * Build one per table (or per list of columns) and keep it; it holds no per-row state, so any number of threads can
+ * share it.  A binder for a table's value columns lets rows that implement JdbcBindable bind themselves.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+public final class JdbcRowBinder {
+
+    private final ColumnBinder[] binders;
+    private final boolean isValueColumns;
+
+    public JdbcRowBinder(List<? extends ColumnDef> columns) {
+        this(columns, false);
+    }
+
+    private JdbcRowBinder(List<? extends ColumnDef> columns, boolean isValueColumns) {
+        this.binders = new ColumnBinder[columns.size()];
+        for (int i = 0; i < binders.length; i++) {
+            binders[i] = createBinder(columns.get(i));
+        }
+        this.isValueColumns = isValueColumns;
+    }
+
+    /**
+     * @return a binder for all of the table's value columns, in order.  Rows that implement JdbcBindable are left to
+     * bind themselves.
+     */
+    public static JdbcRowBinder forValueColumns(TableDef table) {
+        return new JdbcRowBinder(table.getValueColumns(), true);
+    }
+
+    /**
+     * Binds the row's value for each column, in order, starting at the given parameter.
+     *
+     * @return the index of the next parameter after the ones that were bound.
+     */
+    public int bind(final PreparedStatement stmt, final int firstParameterIndex, final Row row) throws SQLException {
+        if (isValueColumns && row instanceof JdbcBindable) {
+            return ((JdbcBindable) row).bindValues(stmt, firstParameterIndex);
+        }
+        int paramIndex = firstParameterIndex;
+        for (final ColumnBinder binder : binders) {
+            binder.bind(stmt, paramIndex++, row);
+        }
+        return paramIndex;
+    }
+
+    /**
+     * @return how many parameters bind() binds.
+     */
+    public int getParameterCount() {
+        return binders.length;
+    }
+
+    /**
+     * Binds a STRING column's value, truncated to maxLength.
+     */
+    public static void setString(final PreparedStatement stmt, final int paramIndex, final String value, final int maxLength) throws SQLException {
+        stmt.setString(paramIndex, value == null || value.length() <= maxLength ? value : value.substring(0, maxLength));
+    }
+
+    /**
+     * Binds a FOREIGN_KEY or SURROGATE_KEY column's value; as a long if it's a LongSurrogateKey.
+     */
+    public static void setKey(final PreparedStatement stmt, final int paramIndex, final Object value) throws SQLException {
+        if (value instanceof LongSurrogateKey) {
+            stmt.setLong(paramIndex, ((LongSurrogateKey) value).getKeyValue());
+        } else if (value == null) {
+            stmt.setNull(paramIndex, Types.BIGINT);
+        } else {
+            stmt.setObject(paramIndex, value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnBinder {
+        void bind(PreparedStatement stmt, int paramIndex, Row row) throws SQLException;
+    }
+
+    private static ColumnBinder createBinder(final ColumnDef col) {
+        switch (col.getType()) {
+            case INTEGER:
+                return (stmt, paramIndex, row) -> {
+                    if (row.isNull(col)) {
+                        stmt.setNull(paramIndex, Types.INTEGER);
+                    } else {
+                        stmt.setInt(paramIndex, row.getInt(col));
+                    }
+                };
+            case LONG:
+                return (stmt, paramIndex, row) -> {
+                    if (row.isNull(col)) {
+                        stmt.setNull(paramIndex, Types.BIGINT);
+                    } else {
+                        stmt.setLong(paramIndex, row.getLong(col));
+                    }
+                };
+            case DOUBLE:
+                return (stmt, paramIndex, row) -> {
+                    if (row.isNull(col)) {
+                        stmt.setNull(paramIndex, Types.DOUBLE);
+                    } else {
+                        stmt.setDouble(paramIndex, row.getDouble(col));
+                    }
+                };
+            case BOOLEAN:
+                return (stmt, paramIndex, row) -> {
+                    if (row.isNull(col)) {
+                        stmt.setNull(paramIndex, Types.BOOLEAN);
+                    } else {
+                        stmt.setBoolean(paramIndex, row.getBoolean(col));
+                    }
+                };
+            case DATE:
+                return (stmt, paramIndex, row) -> stmt.setDate(paramIndex, (Date) row.getValue(col));
+            case TIMESTAMP:
+                return (stmt, paramIndex, row) -> stmt.setTimestamp(paramIndex, (Timestamp) row.getValue(col));
+            case STRING: {
+                final int maxLength = col.getMaxLength();
+                return (stmt, paramIndex, row) -> setString(stmt, paramIndex, (String) row.getValue(col), maxLength);
+            }
+            case FOREIGN_KEY:
+            case SURROGATE_KEY:
+                return (stmt, paramIndex, row) -> setKey(stmt, paramIndex, row.getValue(col));
+            default:
+                throw new IllegalArgumentException("invalid type " + col.getType());
+        }
+    }
+}
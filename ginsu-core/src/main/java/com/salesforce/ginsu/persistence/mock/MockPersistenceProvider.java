@@ -26,21 +26,31 @@ public class MockPersistenceProvider implements PersistenceProvider {
     private final Map<TableDef, MockTable> mockTables = new HashMap();
 
     @Override
-    public SurrogateKey insert(final InsertMode mode, final TableDef table, final Row row) {
-        switch (mode) {
+    public SurrogateKey update(final UpdateRequest request) {
+        final MockTable table = findOrCreateTable(request.getTableDef());
+        final SurrogateKey key;
+        switch (request.getMode()) {
             case INSERT:
-                return findOrCreateTable(table).insert(row);
-            case INSERT_ANONYMOUS:
-                findOrCreateTable(table).insert(row);
-                return null;
+                key = table.insert(request.getRow());
+                break;
             case UPSERT:
-                return findOrCreateTable(table).upsert(row);
-            case UPSERT_ANONYMOUS:
-                findOrCreateTable(table).upsert(row);
-                return null;
+            case MERGE:
+                key = table.upsert(request.getRow());
+                break;
             default:
-                throw new IllegalStateException("unknown mode " + mode);
+                throw new IllegalStateException("unknown mode " + request.getMode());
         }
+        return request.isReturnValueRequired() ? key : null;
+    }
+
+    @Override
+    public boolean supportsScanKeys() {
+        return true;
+    }
+
+    @Override
+    public void scanKeys(ScanKeysRequest request) {
+        findOrCreateTable(request.getTableDef()).scanKeys(request);
     }
 
     @Override
@@ -49,6 +59,11 @@ public class MockPersistenceProvider implements PersistenceProvider {
 
     @Override
     public void createSchema(CreateSchemaRequest request) {
+        for (final TableDef table : request.getTables()) {
+            for (final Row row : table.getFixedRows()) {
+                findOrCreateTable(table).put(row);
+            }
+        }
     }
 
     @Override
@@ -7,6 +7,7 @@
 package com.salesforce.ginsu.persistence.mock;
 
 import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.PersistenceProvider.ScanKeysRequest;
 import com.salesforce.ginsu.persistence.Row;
 import com.salesforce.ginsu.warehouse.SurrogateKey;
 import com.salesforce.ginsu.persistence.TableDef;
@@ -24,7 +25,7 @@ class MockTable {
 
     private final TableDef tableDef;
     private long nextKey;
-    private Map<Row, Row> rows = new LinkedHashMap<Row, Row>();
+    private Map<List<Object>, Row> rows = new LinkedHashMap<>(); // by natural key
 
     MockTable(TableDef tableDef) {
         this.tableDef = requireNonNull(tableDef);
@@ -37,21 +38,42 @@ class MockTable {
         }
         final SurrogateKey key = new MockSurrogateKey(nextKey++);
         row.setKey(key);
-        rows.put(row, row);
+        rows.put(getNaturalKey(row), row);
         return key;
     }
 
+    /**
+     * Adds a row that already has its key.
+     */
+    synchronized void put(final Row row) {
+        if (row.getKey() == null) {
+            throw new IllegalArgumentException("Row has no key");
+        }
+        rows.put(getNaturalKey(row), row);
+    }
+
     synchronized SurrogateKey upsert(final Row row) {
         final SurrogateKey existingRowKey = selectByValues(row);
         if (existingRowKey != null) {
             row.setKey(existingRowKey);
-            rows.put(row, row);
+            rows.put(getNaturalKey(row), row);
             return existingRowKey;
         } else {
             return insert(row);
         }
     }
 
+    synchronized void scanKeys(final ScanKeysRequest request) {
+        final List<ColumnDef> columns = tableDef.getValueColumns();
+        for (final Row row : this.rows.values()) {
+            final Object[] values = new Object[columns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.getValue(columns.get(i));
+            }
+            if (!request.accept(values, row.getKey())) return;
+        }
+    }
+
     void dump(PrintWriter out) {
         if (tableDef.hasSurrogateKey()) {
             out.print(tableDef.getSurrogateKeyColumnName());
@@ -76,7 +98,7 @@ class MockTable {
     }
 
     private SurrogateKey selectByValues(final Row row) {
-        final Row existingRow = rows.get(row);
+        final Row existingRow = rows.get(getNaturalKey(row));
         if (existingRow == null) {
             return null;
         } else {
@@ -87,4 +109,13 @@ class MockTable {
             return out;
         }
     }
+
+    private List<Object> getNaturalKey(final Row row) {
+        final List<ColumnDef> columns = tableDef.getNaturalKeyColumns();
+        final List<Object> out = new ArrayList<>(columns.size());
+        for (final ColumnDef col : columns) {
+            out.add(row.getValue(col));
+        }
+        return out;
+    }
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.schema;
+
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import java.time.LocalDate;
+
+/**
+ * A dimension built by a DateDimensionBuilder.  Fact tables refer to it with foreign keys to getTable(), and set them
+ * with getKey(), which is a little arithmetic rather than a lookup.  Upserting a row with just getDateColumn() set
+ * gets the same key.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+public interface DateDimension {
+
+    Table getTable();
+
+    /**
+     * @return the column that identifies a row: a DATE for a DAY dimension and a TIMESTAMP for an HOUR one.
+     */
+    Column<? extends java.util.Date> getDateColumn();
+
+    /**
+     * @return the key of the day or hour that the instant falls in.
+     * @throws IllegalArgumentException if it's outside the dimension's range.
+     */
+    SurrogateKey getKey(long epochMillis);
+
+    /**
+     * @return the key of the day.
+     * @throws IllegalArgumentException if it's outside the dimension's range.
+     * @throws IllegalStateException    if the dimension has a row per hour.
+     */
+    SurrogateKey getKey(LocalDate date);
+}
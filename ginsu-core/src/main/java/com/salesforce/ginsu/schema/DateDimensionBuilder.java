@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.schema;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+
+/**
+ * Builds a date or date/time dimension with a row for every day, or hour, in a range.  The rows are written when the
+ * schema is created, with columns for the calendar and fiscal attributes of each one, and their keys are worked out
+ * from the date, so facts never have to upsert into it.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see SchemaBuilder#dateDimensionBuilder(String)
+ */
+public interface DateDimensionBuilder {
+
+    enum Grain {
+        /**
+         * A row per day, keyed by the date as a yyyymmdd number, e.g. 20200229.
+         */
+        DAY,
+        /**
+         * A row per hour, keyed by the number of hours since the epoch.
+         */
+        HOUR
+    }
+
+    /**
+     * Sets the first and last days of the dimension, inclusive.  Required.
+     */
+    DateDimensionBuilder setRange(LocalDate first, LocalDate last);
+
+    /**
+     * Defaults to DAY.
+     */
+    DateDimensionBuilder setGrain(Grain grain);
+
+    /**
+     * Sets the time zone that instants are placed in days with.  Defaults to the JVM's.
+     */
+    DateDimensionBuilder setTimeZone(ZoneId zone);
+
+    /**
+     * Sets the month that fiscal years start in.  A fiscal year is named for the calendar year it ends in.  Defaults
+     * to January, which makes fiscal years the same as calendar years.
+     */
+    DateDimensionBuilder setFiscalYearStart(Month month);
+
+    DateDimension build();
+}
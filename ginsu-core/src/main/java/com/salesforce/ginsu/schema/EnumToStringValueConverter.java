@@ -29,6 +29,13 @@ public final class EnumToStringValueConverter<T extends Enum> implements Functio
         this.clazz = requireNonNull(clazz);
     }
 
+    /**
+     * @return the enum whose names this converts values to.
+     */
+    public Class<T> getEnumClass() {
+        return this.clazz;
+    }
+
     @Override
     public Object apply(final Object o) {
         if (o == null) {
@@ -20,10 +20,32 @@ public interface SchemaBuilder {
 
     TableBuilder dimensionTableBuilder(String name);
 
+    /**
+     * Builds a dimension for a handful of low-cardinality flags, so that fact rows can refer to a combination of them
+     * with one foreign key.  Every column has to be a BOOLEAN, or a STRING with an EnumToStringValueConverter; nullable
+     * columns add null to their values.  Every combination of values is written when the schema is created, and the
+     * key of a combination is worked out from the positions of its values, so upserting a row of a junk dimension
+     * never goes to the database.  The keys depend on the order of the columns and of the enums' constants, so
+     * changing either renumbers the members.
+     */
     TableBuilder junkDimensionTableBuilder(String name);
 
+    /**
+     * Builds a dimension with a row for every day or hour in a range, whose columns are the calendar and fiscal
+     * attributes of each.  Like a junk dimension, its rows are written when the schema is created and its keys are
+     * worked out from the date rather than looked up; see DateDimension.getKey().
+     */
+    DateDimensionBuilder dateDimensionBuilder(String name);
+
     TableBuilder factTableBuilder(String name);
 
+    /**
+     * If true, build() generates a class for each table's rows, with a typed field per column, instead of using
+     * a generic row class.  They compare, hash and bind to statements without going through the column list or
+     * boxing values.  Off by default.
+     */
+    SchemaBuilder setGeneratedRowClasses(boolean generate);
+
     Schema build();
 
 }
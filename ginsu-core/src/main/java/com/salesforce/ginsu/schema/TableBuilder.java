@@ -28,9 +28,43 @@ public interface TableBuilder {
 
     ColumnBuilder<SurrogateKey> addForeignKey(Table referencedTable);
 
+    /**
+     * Sets the columns that identify a member of the table, i.e., its natural or business key.  Upserts look rows up
+     * by these columns alone and update the rest of the row's columns in place.  Defaults to all of the columns.
+     */
     TableBuilder setPrimaryKeyColumns(List<Column> columns);
 
     TableBuilder setMaxRowsHint(long maxRows);
 
+    /**
+     * Sets the maximum number of entries in the in-process cache of SurrogateKeys for this table.  Defaults to the
+     * max rows hint, if one was given.  Zero disables the cache.  Ignored on tables without a surrogate key.
+     */
+    TableBuilder setKeyCacheSize(long maxEntries);
+
+    /**
+     * Sets whether to keep every one of this table's SurrogateKeys in an index outside the Java heap, instead of the
+     * bounded key cache.  Meant for dimensions with tens of millions of members or more.  The index never evicts, and
+     * spills to disk past the warehouse's off-heap budget.  Ignored on tables without a surrogate key.
+     *
+     * @see com.salesforce.ginsu.warehouse.WarehouseBuilder#setOffHeapBudget(long)
+     */
+    TableBuilder setOffHeapKeyIndex(boolean offHeap);
+
+    /**
+     * Sets the number of members to size a Bloom filter for, or zero (the default) for no filter.  With a filter,
+     * upserts of members that are definitely new skip the lookup and go straight to an insert, which the persistence
+     * provider can batch.  When opening an existing warehouse, the filter is filled by scanning the table; if the
+     * provider can't scan, no filter is used.  Ignored on tables without a surrogate key.
+     */
+    TableBuilder setBloomFilterSize(long expectedMembers);
+
+    /**
+     * Sets whether to give the table an extra column holding a 128-bit hash of each row's natural key, with a unique
+     * index on it.  Upserts then find rows with a single fixed-width probe, however many columns are in the natural
+     * key, which pays off on wide dimensions.  Ignored on tables without a surrogate key.
+     */
+    TableBuilder setNaturalKeyDigest(boolean digest);
+
     Table build();
 }
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.warehouse;
+
+/**
+ * Counters for the in-process cache that maps a dimension's values to its SurrogateKey.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+public interface KeyCacheStats {
+
+    /**
+     * @return number of lookups that were answered without going to the PersistenceProvider.
+     */
+    long getHitCount();
+
+    /**
+     * @return number of lookups that had to go to the PersistenceProvider.
+     */
+    long getMissCount();
+
+    /**
+     * @return number of entries dropped to keep the cache within its maximum size.
+     */
+    long getEvictionCount();
+
+    /**
+     * @return approximate number of entries currently in the cache.
+     */
+    long getSize();
+
+    /**
+     * @return the maximum number of entries the cache will hold.
+     */
+    long getMaximumSize();
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.warehouse;
+
+/**
+ * What a Warehouse.load() did.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+public interface LoadSummary {
+
+    /**
+     * @return how many records were read from the source.
+     */
+    long getRecordCount();
+
+    /**
+     * @return how many rows were written, i.e. records that the mapper didn't skip.
+     */
+    long getRowCount();
+
+    /**
+     * @return how many records the mapper skipped.
+     */
+    long getSkippedCount();
+
+    /**
+     * @return wall-clock time for the whole load.
+     */
+    long getElapsedNanos();
+
+    /**
+     * @return the time spent in the mapper, including any key lookups it did.  For a parallel load this is summed
+     * over the worker threads, so it can be more than getElapsedNanos().
+     */
+    long getMapNanos();
+
+    /**
+     * @return the part of getElapsedNanos() spent waiting for the persistence provider to write out what was still
+     * buffered at the end of the load.
+     */
+    long getFlushNanos();
+}
@@ -9,6 +9,8 @@ package com.salesforce.ginsu.warehouse;
 import com.salesforce.ginsu.schema.Column;
 import com.salesforce.ginsu.schema.Table;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author pcal
  * @since 0.0.1
@@ -17,10 +19,45 @@ public interface RowBuilder {
 
     <V> RowBuilder set(Column<V> columnId, V value);
 
+    // ========================================================================
+    // Unboxed setters.  These store the value without allocating a wrapper object; prefer them for numeric measures.
+
+    RowBuilder setInt(Column<Integer> column, int value);
+
+    RowBuilder setLong(Column<Long> column, long value);
+
+    RowBuilder setDouble(Column<Double> column, double value);
+
+    RowBuilder setBoolean(Column<Boolean> column, boolean value);
+
+    /**
+     * Sets a DATE or TIMESTAMP column to the given number of milliseconds since the epoch.
+     */
+    RowBuilder setEpochMillis(Column<? extends java.util.Date> column, long epochMillis);
+
+    // ========================================================================
+
     SurrogateKey insert();
 
     SurrogateKey upsert();
 
+    /**
+     * Same as upsert() but doesn't return the key, which lets the PersistenceProvider skip reading it back and
+     * batch the write.  Use this when nothing is going to reference the row.
+     */
+    void blindUpsert();
+
+    // ========================================================================
+    // Async updates.  These queue the row to be written by the warehouse's writer threads and return right away,
+    // unless the queue is full; see WarehouseBuilder.setAsyncBackPressure().  An upsert that hits the key cache
+    // doesn't wait for anything.  A fact row that needs a pending dimension key can chain on the dimension's future,
+    // e.g. dimFuture.thenCompose(key -> warehouse.buildRow(fact).set(fk, key).insertAsync()).  The future completes
+    // exceptionally if the update fails.
+
+    CompletableFuture<SurrogateKey> insertAsync();
+
+    CompletableFuture<SurrogateKey> upsertAsync();
+
     /**
      * @return the table we're inserting to.
      */
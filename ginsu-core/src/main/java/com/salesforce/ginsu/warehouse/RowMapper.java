@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.warehouse;
+
+/**
+ * Maps one source record, e.g. a line of an input file, onto a row of the table being loaded.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see Warehouse#load(com.salesforce.ginsu.schema.Table, java.util.Iterator, RowMapper)
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Sets the row's columns from the record.  Foreign keys can be resolved with buildRow() and upsert() on the
+     * warehouse, which go through the dimensions' key caches.  The RowBuilder is only good until this returns; don't
+     * call insert() or upsert() on it.
+     *
+     * @return false to skip the record.
+     */
+    boolean map(T record, RowBuilder row);
+}
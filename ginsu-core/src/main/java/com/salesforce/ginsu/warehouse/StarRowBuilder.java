@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.warehouse;
+
+import com.salesforce.ginsu.schema.Column;
+import com.salesforce.ginsu.schema.Table;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds a fact row together with the dimension rows it references.  Instead of upserting each dimension row and
+ * setting the foreign key by hand, set the dimension's values with setDimension() and the fact's own values with
+ * set(); insert() then resolves every foreign key and writes the fact row.  Keys that are in the dimensions' caches are
+ * used right away.  The rest are upserted together on the warehouse's async writer threads, so a fact row waits about
+ * as long as its slowest dimension rather than the sum of them.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see Warehouse#buildStarRow(Table)
+ */
+public interface StarRowBuilder {
+
+    /**
+     * Sets one of the fact table's own columns.  Setting a foreign key here means that dimension isn't looked up, even
+     * if setDimension() is called for it too; the key given here is the one that's written.
+     */
+    <V> StarRowBuilder set(Column<V> column, V value);
+
+    StarRowBuilder setInt(Column<Integer> column, int value);
+
+    StarRowBuilder setLong(Column<Long> column, long value);
+
+    StarRowBuilder setDouble(Column<Double> column, double value);
+
+    StarRowBuilder setBoolean(Column<Boolean> column, boolean value);
+
+    StarRowBuilder setEpochMillis(Column<? extends java.util.Date> column, long epochMillis);
+
+    /**
+     * Sets a column of the dimension row that the given foreign key of the fact table refers to.
+     */
+    <V> StarRowBuilder setDimension(Column<SurrogateKey> foreignKey, Column<V> dimensionColumn, V value);
+
+    /**
+     * Upserts the dimension rows that were set and inserts the fact row with their keys.
+     *
+     * @return the fact row's key, which is null unless the fact table has one.
+     */
+    SurrogateKey insert();
+
+    /**
+     * Same as insert(), but the fact row is written once the dimension keys are in, without the calling thread waiting
+     * for either.
+     */
+    CompletableFuture<SurrogateKey> insertAsync();
+
+    /**
+     * @return the fact table.
+     */
+    Table getTargetTable();
+}
@@ -7,9 +7,15 @@
 package com.salesforce.ginsu.warehouse;
 
 
+import com.salesforce.ginsu.persistence.PersistenceException;
 import com.salesforce.ginsu.schema.Table;
 
 import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
 
 /**
  * @author pcal
@@ -19,4 +25,58 @@ public interface Warehouse extends Closeable {
 
     RowBuilder buildRow(Table table);
 
+    /**
+     * @return a builder for a row of the given fact table that resolves the row's dimension keys itself.
+     */
+    StarRowBuilder buildStarRow(Table factTable);
+
+    /**
+     * Writes a row to the table for each record from the source, as mapped by the mapper, on the calling thread.
+     * Fact rows are inserted and dimension rows are blind-upserted, so they all go through the persistence provider's
+     * batches; everything is flushed before this returns.
+     */
+    <T> LoadSummary load(Table table, Iterator<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException;
+
+    default <T> LoadSummary load(Table table, Spliterator<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException {
+        return load(table, Spliterators.iterator(source), mapper);
+    }
+
+    /**
+     * Same as load(Table, Iterator, RowMapper); the stream is consumed sequentially, even if it's parallel.
+     */
+    default <T> LoadSummary load(Table table, Stream<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException {
+        return load(table, source.iterator(), mapper);
+    }
+
+    /**
+     * Like load(), but splits the source and maps and writes the pieces on the warehouse's loader pool.  Each worker
+     * thread has its own RowBuilder and, with a provider that keeps them per thread, its own connection and batches.
+     * The mapper is called from several threads at once, so it has to be thread-safe; dimension keys that it looks up
+     * are shared between the workers through the key caches.  Rows are not written in source order.
+     *
+     * @see WarehouseBuilder#setLoadParallelism(int)
+     */
+    <T> LoadSummary loadParallel(Table table, Spliterator<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException;
+
+    /**
+     * Same as loadParallel(Table, Spliterator, RowMapper).  The stream is made parallel first, since the spliterator
+     * of a sequential pipeline won't split.
+     */
+    default <T> LoadSummary loadParallel(Table table, Stream<? extends T> source, RowMapper<? super T> mapper) throws PersistenceException {
+        return loadParallel(table, source.parallel().spliterator(), mapper);
+    }
+
+    /**
+     * Upserts a row of the given dimension for each record, as mapped by the mapper, and returns their keys in the
+     * same order, with null for each record that the mapper skipped.  Rows that aren't in the key cache go to the
+     * persistence provider together, e.g. all of the distinct members found in a chunk of an input file, so that it
+     * can resolve them with a few statements rather than a couple per row.
+     */
+    <T> List<SurrogateKey> upsertBatch(Table dimension, List<? extends T> records, RowMapper<? super T> mapper);
+
+    /**
+     * @return hit/miss/eviction counts for the given table's key cache, or null if the table doesn't have one.
+     */
+    KeyCacheStats getKeyCacheStats(Table table);
+
 }
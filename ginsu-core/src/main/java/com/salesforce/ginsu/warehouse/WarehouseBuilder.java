@@ -11,6 +11,8 @@ import com.salesforce.ginsu.impl.WarehouseBuilderImpl;
 import com.salesforce.ginsu.persistence.PersistenceException;
 import com.salesforce.ginsu.schema.Schema;
 
+import java.nio.file.Path;
+
 /**
  * @author pcal
  * @since 0.0.1
@@ -25,5 +27,73 @@ public interface WarehouseBuilder {
 
     WarehouseBuilder setSchema(Schema schema);
 
+    /**
+     * Sets whether the warehouse should be loaded on top of whatever the persistence provider already holds.  If
+     * true, the existing tables are validated against the schema, only what's missing is created, and new rows are
+     * appended.  Defaults to false, which expects to build the warehouse from scratch.
+     */
+    WarehouseBuilder setOpenExisting(boolean openExisting);
+
+    /**
+     * Sets whether build() should fill the dimension key caches from the rows the persistence provider already holds,
+     * so that a warehouse opened on existing data doesn't start with every upsert going to the database.  Tables are
+     * scanned in parallel.  Defaults to false.
+     */
+    WarehouseBuilder setWarmKeyCaches(boolean warmKeyCaches);
+
+    /**
+     * Sets how many bytes of direct memory the off-heap key indexes may use between them before they spill to
+     * memory-mapped files.  Should be no more than the JVM's -XX:MaxDirectMemorySize.  Defaults to 1GB.
+     *
+     * @see com.salesforce.ginsu.schema.TableBuilder#setOffHeapKeyIndex(boolean)
+     */
+    WarehouseBuilder setOffHeapBudget(long bytes);
+
+    /**
+     * Sets where off-heap key indexes spill to.  Defaults to java.io.tmpdir.
+     */
+    WarehouseBuilder setSpillDirectory(Path directory);
+
+    /**
+     * What RowBuilder.insertAsync() and upsertAsync() do when the warehouse's async queue is full.
+     */
+    enum AsyncBackPressure {
+        /**
+         * Wait for room in the queue.
+         */
+        BLOCK,
+        /**
+         * Do the update on the calling thread.
+         */
+        CALLER_RUNS,
+        /**
+         * Return a future that has failed with a RejectedExecutionException.
+         */
+        REJECT
+    }
+
+    /**
+     * Sets how many threads write the rows from RowBuilder.insertAsync() and upsertAsync().  The threads are started on
+     * the first async update.  Defaults to the number of available processors.
+     */
+    WarehouseBuilder setAsyncWriterThreads(int threads);
+
+    /**
+     * Sets how many async updates can be waiting for a writer thread before back pressure kicks in.  Defaults to
+     * 10000.
+     */
+    WarehouseBuilder setAsyncQueueCapacity(int capacity);
+
+    /**
+     * Sets what async updates do when the queue is full.  Defaults to BLOCK.
+     */
+    WarehouseBuilder setAsyncBackPressure(AsyncBackPressure backPressure);
+
+    /**
+     * Sets how many threads Warehouse.loadParallel() maps and writes rows on.  The threads are started on the first
+     * parallel load.  Defaults to the number of available processors.
+     */
+    WarehouseBuilder setLoadParallelism(int threads);
+
     Warehouse build() throws PersistenceException;
 }
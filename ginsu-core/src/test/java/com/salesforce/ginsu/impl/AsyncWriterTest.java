@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import com.salesforce.ginsu.warehouse.WarehouseBuilder.AsyncBackPressure;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class AsyncWriterTest extends TestCase {
+
+    public void testChainedUpserts() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("color");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table color = dim.build();
+        final TableBuilder fact = sb.factTableBuilder("paint");
+        final Column<SurrogateKey> colorKey = fact.addForeignKey(color).build();
+        final Column<Long> gallons = fact.addColumn("gallons", ColumnType.LONG).build();
+        final Table paint = fact.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).
+                setAsyncWriterThreads(2).setAsyncQueueCapacity(4).build();
+
+        final List<CompletableFuture<SurrogateKey>> colors = new ArrayList<>();
+        final List<CompletableFuture<SurrogateKey>> facts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final long n = i;
+            final CompletableFuture<SurrogateKey> key = w.buildRow(color).set(name, "color" + (i % 10)).upsertAsync();
+            colors.add(key);
+            facts.add(key.thenCompose(k -> w.buildRow(paint).set(colorKey, k).setLong(gallons, n).insertAsync()));
+        }
+        CompletableFuture.allOf(facts.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        final Set<SurrogateKey> distinct = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(colors.get(i % 10).get(), colors.get(i).get());
+            distinct.add(colors.get(i).get());
+        }
+        assertEquals(10, distinct.size());
+        assertNull(facts.get(0).get()); // facts don't have keys
+        w.close();
+        try {
+            w.buildRow(color).set(name, "late").upsertAsync().get();
+            fail("didn't get expected RejectedExecutionException after close");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    public void testBackPressure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AsyncWriter rejecting = new AsyncWriter(1, 1, AsyncBackPressure.REJECT);
+        final CompletableFuture<String> first = rejecting.submit(() -> {
+            started.countDown();
+            await(release);
+            return Thread.currentThread().getName();
+        });
+        started.await();
+        final CompletableFuture<String> queued = rejecting.submit(() -> "queued");
+        final CompletableFuture<String> rejected = rejecting.submit(() -> "rejected");
+        assertTrue(rejected.isCompletedExceptionally());
+        release.countDown();
+        assertTrue(first.get().startsWith("ginsu-async-writer-"));
+        assertEquals("queued", queued.get());
+        rejecting.close();
+
+        final CountDownLatch release2 = new CountDownLatch(1);
+        final CountDownLatch started2 = new CountDownLatch(1);
+        final AsyncWriter callerRuns = new AsyncWriter(1, 1, AsyncBackPressure.CALLER_RUNS);
+        callerRuns.submit(() -> {
+            started2.countDown();
+            await(release2);
+            return null;
+        });
+        started2.await();
+        callerRuns.submit(() -> null);
+        assertEquals(Thread.currentThread().getName(), callerRuns.submit(() -> Thread.currentThread().getName()).get());
+        release2.countDown();
+        callerRuns.close();
+    }
+
+    public void testFailedUpdate() throws Exception {
+        final AsyncWriter writer = new AsyncWriter(1, 10, AsyncBackPressure.BLOCK);
+        final CompletableFuture<Object> failed = writer.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            failed.get();
+            fail("didn't get expected exception");
+        } catch (ExecutionException expected) {
+            assertEquals("boom", expected.getCause().getMessage());
+        }
+        writer.close();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
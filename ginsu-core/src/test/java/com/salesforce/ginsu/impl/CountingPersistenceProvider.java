@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A MockPersistenceProvider that counts the updates that reach it, for tests of what the warehouse handles itself.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+class CountingPersistenceProvider extends MockPersistenceProvider {
+
+    final AtomicInteger inserts = new AtomicInteger();
+    final AtomicInteger upserts = new AtomicInteger();
+
+    @Override
+    public SurrogateKey update(UpdateRequest request) {
+        if (request.getMode() == UpdateRequest.Mode.INSERT) {
+            inserts.incrementAndGet();
+        } else {
+            upserts.incrementAndGet();
+        }
+        return super.update(request);
+    }
+
+    /**
+     * @return the inserts and upserts so far.
+     */
+    int getUpdates() {
+        return inserts.get() + upserts.get();
+    }
+}
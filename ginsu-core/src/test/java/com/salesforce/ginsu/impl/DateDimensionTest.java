@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.schema.DateDimensionBuilder.Grain;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class DateDimensionTest extends TestCase {
+
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    public void testDays() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final DateDimension day = sb.dateDimensionBuilder("day").setRange(LocalDate.of(2019, 12, 30), LocalDate.of(2021, 1, 3)).
+                setTimeZone(PACIFIC).setFiscalYearStart(Month.FEBRUARY).build();
+        final TableBuilder fact = sb.factTableBuilder("sale");
+        fact.addForeignKey(day.getTable()).build();
+        fact.addColumn("amount", ColumnType.LONG).build();
+        fact.build();
+        final CountingPersistenceProvider pp = new CountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final TableImpl table = (TableImpl) day.getTable();
+        assertEquals(366 + 5, table.getFixedRows().size());
+        final RowImpl leapDay = table.getFixedRows().get(61);
+        assertEquals(new LongSurrogateKey(20200229), leapDay.getKey());
+        assertEquals(new LongSurrogateKey(20200229), day.getKey(LocalDate.of(2020, 2, 29)));
+        assertEquals(6, get(table, leapDay, "dayOfWeek"));
+        assertEquals(true, get(table, leapDay, "isWeekend"));
+        assertEquals(9, get(table, leapDay, "weekOfYear"));
+        assertEquals(1, get(table, leapDay, "quarter"));
+        assertEquals(2021, get(table, leapDay, "fiscalYear"));
+        assertEquals(1, get(table, leapDay, "fiscalQuarter"));
+        assertEquals(1, get(table, leapDay, "fiscalPeriod"));
+        assertEquals(2020, get(table, table.getFixedRows().get(0), "weekYear")); // ISO week 1 of 2020
+
+        // the days that daylight saving time starts and ends on are 23 and 25 hours long
+        for (final LocalDateTime local : new LocalDateTime[]{
+                LocalDateTime.of(2020, 3, 8, 0, 0), LocalDateTime.of(2020, 3, 8, 23, 59),
+                LocalDateTime.of(2020, 11, 1, 0, 0), LocalDateTime.of(2020, 11, 1, 23, 59)}) {
+            final long millis = local.atZone(PACIFIC).toInstant().toEpochMilli();
+            final SurrogateKey expected = day.getKey(local.toLocalDate());
+            assertEquals(expected, day.getKey(millis));
+            assertEquals(expected, w.buildRow(day.getTable()).setEpochMillis(day.getDateColumn(), millis).upsert());
+        }
+        assertEquals(0, pp.getUpdates());
+        try {
+            day.getKey(LocalDate.of(2021, 1, 4));
+            fail("didn't get expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        w.close();
+    }
+
+    public void testHours() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final DateDimension hour = sb.dateDimensionBuilder("hour").setRange(LocalDate.of(2020, 3, 7), LocalDate.of(2020, 3, 8)).
+                setTimeZone(PACIFIC).setGrain(Grain.HOUR).build();
+        final TableImpl table = (TableImpl) hour.getTable();
+        assertEquals(24 + 23, table.getFixedRows().size());
+        final ZonedDateTime noon = ZonedDateTime.of(2020, 3, 8, 12, 30, 0, 0, PACIFIC);
+        final long epochHour = noon.toInstant().toEpochMilli() / 3600000;
+        assertEquals(new LongSurrogateKey(epochHour), hour.getKey(noon.toInstant().toEpochMilli()));
+        final RowImpl row = table.getFixedRows().get(24 + 11); // 2am was skipped
+        assertEquals(new LongSurrogateKey(epochHour), row.getKey());
+        assertEquals(12, get(table, row, "hour"));
+        assertEquals(8, get(table, row, "dayOfMonth"));
+        try {
+            hour.getKey(LocalDate.of(2020, 3, 8));
+            fail("didn't get expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static Object get(final TableImpl table, final RowImpl row, final String columnName) {
+        for (final Object column : table.getValueColumns()) {
+            if (((ColumnImpl) column).getName().equals(columnName)) return row.getValue((ColumnImpl) column);
+        }
+        throw new IllegalArgumentException(columnName);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.persistence.jdbc.JdbcRowBinder;
+import com.salesforce.ginsu.persistence.jdbc.JdbcRowBinderTest;
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class GeneratedRowTest extends TestCase {
+
+    public void testSameAsGenericRows() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("bar");
+        dim.addColumn("name", ColumnType.STRING).build();
+        final Table bar = dim.build();
+        final TableBuilder tb = sb.factTableBuilder("foo");
+        tb.addColumn("i", ColumnType.INTEGER).nullable(true).build();
+        tb.addColumn("l", ColumnType.LONG).nullable(true).build();
+        tb.addColumn("d", ColumnType.DOUBLE).nullable(true).build();
+        tb.addColumn("b", ColumnType.BOOLEAN).nullable(true).build();
+        tb.addColumn("date", ColumnType.DATE).nullable(true).build();
+        tb.addColumn("ts", ColumnType.TIMESTAMP).nullable(true).build();
+        tb.addColumn("s", ColumnType.STRING).setMaxLength(4).nullable(true).build();
+        tb.addForeignKey(bar).nullable(true).build();
+        final TableImpl table = (TableImpl) tb.build();
+        final Supplier<RowImpl> factory = RowClassGenerator.generate(table);
+
+        final Timestamp ts = new Timestamp(5000L);
+        ts.setNanos(123);
+        final Object[] boxed = {7, 8L, 0.5, true, new Date(86400000L), ts, "abcdefg", new LongSurrogateKey(9)};
+        final long[] primitives = {7, 8L, Double.doubleToLongBits(0.5), 1, 86400000L, 5000L};
+
+        final List<RowImpl> rows = new ArrayList<>();
+        for (final RowImpl row : Arrays.asList(new RowImpl(table, new Object[boxed.length]), factory.get())) {
+            assertEquals(row, factory.get());
+            for (int i = 0; i < boxed.length; i++) row.set(i, boxed[i]);
+            rows.add(row);
+        }
+        for (final RowImpl row : Arrays.asList(new RowImpl(table, new Object[boxed.length]), factory.get())) {
+            for (int i = 0; i < boxed.length; i++) row.set(i, boxed[i]);
+            for (int i = 0; i < primitives.length - 1; i++) row.setPrimitive(i, primitives[i]); // keep the nanos
+            rows.add(row);
+        }
+        for (final RowImpl row : Arrays.asList(new RowImpl(table, new Object[boxed.length]), factory.get())) {
+            rows.add(row); // all nulls
+        }
+        assertTrue(rows.get(1) instanceof GeneratedRow);
+
+        for (int a = 0; a < rows.size(); a++) {
+            for (int b = 0; b < rows.size(); b++) {
+                final boolean same = a / 2 != 2 && b / 2 != 2 || a / 2 == b / 2;
+                assertEquals(a + " vs " + b, same, rows.get(a).equals(rows.get(b)));
+                if (same) assertEquals(a + " vs " + b, rows.get(a).hashCode(), rows.get(b).hashCode());
+            }
+        }
+        final List<ColumnDef> columns = table.getValueColumns();
+        final RowImpl generic = rows.get(0);
+        for (final RowImpl row : rows.subList(1, 4)) {
+            for (int i = 0; i < columns.size(); i++) {
+                assertEquals(generic.getValue(columns.get(i)), row.getValue(columns.get(i)));
+                assertFalse(row.isNull(columns.get(i)));
+            }
+            assertEquals(7, row.getInt(columns.get(0)));
+            assertEquals(8L, row.getLong(columns.get(1)));
+            assertEquals(0.5, row.getDouble(columns.get(2)));
+            assertTrue(row.getBoolean(columns.get(3)));
+            assertEquals(86400000L, row.getEpochMillis(columns.get(4)));
+            assertEquals(5000L, row.getEpochMillis(columns.get(5)));
+        }
+        for (final ColumnDef col : columns) {
+            assertTrue(rows.get(5).isNull(col));
+            assertNull(rows.get(5).getValue(col));
+        }
+
+        final JdbcRowBinder columnBinder = new JdbcRowBinder(columns);
+        final JdbcRowBinder rowBinder = JdbcRowBinder.forValueColumns(table);
+        for (final RowImpl row : rows) {
+            final List<String> expected = new ArrayList<>();
+            final List<String> actual = new ArrayList<>();
+            assertEquals(11, columnBinder.bind(JdbcRowBinderTest.recorder(expected), 3, row));
+            assertEquals(11, rowBinder.bind(JdbcRowBinderTest.recorder(actual), 3, row));
+            assertEquals(expected, actual);
+            assertTrue(expected.contains("setString 9 abcd") || row.isNull(columns.get(6)));
+        }
+    }
+
+    public void testWideRows() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.factTableBuilder("wide");
+        for (int i = 0; i < 130; i++) {
+            tb.addColumn("c" + i, ColumnType.LONG).nullable(true).build();
+        }
+        final TableImpl table = (TableImpl) tb.build();
+        final Supplier<RowImpl> factory = RowClassGenerator.generate(table);
+        final RowImpl generated = factory.get();
+        final RowImpl generic = new RowImpl(table, new Object[130]);
+        for (int i = 0; i < 130; i += 3) {
+            generated.setPrimitive(i, i * 1000L);
+            generic.set(i, i * 1000L);
+        }
+        assertEquals(generic, generated);
+        assertEquals(generated, generic);
+        assertEquals(generic.hashCode(), generated.hashCode());
+        assertTrue(generated.isNull(128));
+        assertFalse(generated.isNull(129));
+        assertEquals(129000L, generated.getValue(129));
+
+        final RowImpl other = factory.get();
+        for (int i = 0; i < 130; i += 3) {
+            other.setPrimitive(i, i * 1000L);
+        }
+        other.set(129, null);
+        assertFalse(generated.equals(other));
+    }
+
+    public void testWarehouseWithGeneratedRows() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create().setGeneratedRowClasses(true);
+        final TableBuilder tb = sb.dimensionTableBuilder("color");
+        final Column<String> code = tb.addColumn("code", ColumnType.STRING).build();
+        final Column<Long> rgb = tb.addColumn("rgb", ColumnType.LONG).build();
+        tb.setPrimaryKeyColumns(Collections.singletonList(code));
+        final Table color = tb.build();
+        final MockPersistenceProvider pp = new MockPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final RowBuilder rb = w.buildRow(color);
+        rb.set(code, "red");
+        rb.setLong(rgb, 0xff0000L);
+        final SurrogateKey red = rb.upsert();
+        assertEquals(red, w.buildRow(color).set(code, "red").set(rgb, 0xff0000L).upsert());
+        assertEquals(red, w.buildRow(color).set(code, "red").setLong(rgb, 0xee0000L).upsert());
+        assertFalse(red.equals(w.buildRow(color).set(code, "blue").setLong(rgb, 0xffL).upsert()));
+        assertEquals(1, w.getKeyCacheStats(color).getHitCount());
+        try {
+            w.buildRow(color).set(code, "green").upsert();
+            fail("didn't get expected IllegalStateException for a missing value");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
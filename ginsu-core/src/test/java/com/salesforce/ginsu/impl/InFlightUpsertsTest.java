@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.PersistenceProvider.UpdateRequest;
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class InFlightUpsertsTest extends TestCase {
+
+    private static final int THREADS = 8;
+
+    public void testConcurrentUpsertsOfOneMember() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("campaign");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table campaign = dim.build();
+        final SlowPersistenceProvider pp = new SlowPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<SurrogateKey>> keys = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            keys.add(executor.submit(() -> {
+                start.await();
+                return w.buildRow(campaign).set(name, "spring sale").upsert();
+            }));
+        }
+        start.countDown();
+        final HashSet<SurrogateKey> distinct = new HashSet<>();
+        for (final Future<SurrogateKey> key : keys) {
+            distinct.add(key.get());
+        }
+        executor.shutdown();
+        assertEquals(1, distinct.size());
+        assertTrue("upserts: " + pp.upserts.get(), pp.upserts.get() < THREADS);
+        w.close();
+    }
+
+    public void testFailedLeader() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("campaign");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table campaign = dim.build();
+        final TableImpl table = (TableImpl) campaign;
+        final RowImpl row = new RowImpl(table, new Object[]{"spring sale"});
+        final InFlightUpserts inFlight = new InFlightUpserts();
+        final CountDownLatch leading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread leader = new Thread(() -> {
+            try {
+                inFlight.upsert(row, () -> {
+                    leading.countDown();
+                    await(release);
+                    throw new IllegalStateException("boom");
+                });
+            } catch (IllegalStateException expected) {
+            }
+        });
+        leader.start();
+        leading.await();
+        final SurrogateKey expected = new SurrogateKey() {
+        };
+        final AtomicReference<SurrogateKey> followerKey = new AtomicReference<>();
+        final Thread follower = new Thread(() -> followerKey.set(inFlight.upsert(row, () -> expected)));
+        follower.start();
+        while (follower.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join();
+        follower.join();
+        assertSame(expected, followerKey.get()); // it did its own upsert rather than failing too
+        assertEquals(0, inFlight.getCoalescedCount());
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class SlowPersistenceProvider extends MockPersistenceProvider {
+
+        final AtomicInteger upserts = new AtomicInteger();
+
+        @Override
+        public SurrogateKey update(UpdateRequest request) {
+            if (request.getMode() == UpdateRequest.Mode.UPSERT) {
+                upserts.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return super.update(request);
+        }
+    }
+}
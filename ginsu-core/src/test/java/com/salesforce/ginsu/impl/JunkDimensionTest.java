@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.PersistenceProvider.ScanKeysRequest;
+import com.salesforce.ginsu.persistence.TableDef;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class JunkDimensionTest extends TestCase {
+
+    private enum Channel {
+        WEB, PHONE, STORE
+    }
+
+    public void testComputedKeys() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder junk = sb.junkDimensionTableBuilder("flags");
+        final Column<Boolean> isGift = junk.addColumn("isGift", ColumnType.BOOLEAN).build();
+        final Column channel = junk.addColumn("channel", ColumnType.STRING).
+                valueConverter(EnumToStringValueConverter.create(Channel.class)).build();
+        final Column<Boolean> isReturn = junk.addColumn("isReturn", ColumnType.BOOLEAN).nullable(true).build();
+        final Table flags = junk.build();
+        final CountingPersistenceProvider pp = new CountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        // every combination was written with the schema
+        final Map<List<Object>, SurrogateKey> written = new HashMap<>();
+        pp.scanKeys(new ScanKeysRequest() {
+            @Override
+            public TableDef getTableDef() {
+                return (TableDef) flags;
+            }
+
+            @Override
+            public int getFetchSize() {
+                return 100;
+            }
+
+            @Override
+            public boolean accept(Object[] values, SurrogateKey key) {
+                written.put(Arrays.asList(values), key);
+                return true;
+            }
+        });
+        assertEquals(2 * 3 * 3, written.size());
+        assertEquals(written.size(), ((TableImpl) flags).getFixedRows().size());
+
+        for (final boolean gift : new boolean[]{false, true}) {
+            for (final Channel c : Channel.values()) {
+                for (final Boolean ret : new Boolean[]{false, true, null}) {
+                    final SurrogateKey key = w.buildRow(flags).setBoolean(isGift, gift).set(channel, c).set(isReturn, ret).upsert();
+                    assertEquals(written.get(Arrays.asList(gift, c.name(), ret)), key);
+                    assertEquals(key, w.buildRow(flags).set(isGift, gift).set(channel, c).set(isReturn, ret).upsertAsync().get());
+                }
+            }
+        }
+        assertEquals(0, pp.getUpdates());
+        assertNull(w.getKeyCacheStats(flags));
+        try {
+            w.buildRow(flags).setBoolean(isGift, true).set(channel, Channel.WEB).insert();
+            fail("didn't get expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        w.close();
+    }
+
+    public void testInvalidColumns() throws Exception {
+        final TableBuilder junk = SchemaBuilder.create().junkDimensionTableBuilder("flags");
+        junk.addColumn("isGift", ColumnType.BOOLEAN).build();
+        junk.addColumn("quantity", ColumnType.INTEGER).build();
+        try {
+            junk.build();
+            fail("didn't get expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class KeyCacheTest extends TestCase {
+
+    public void testUpsertHitsCache() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setMaxRowsHint(10);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+
+        final SurrogateKey first = w.buildRow(table).set(col, "hello").upsert();
+        final SurrogateKey second = w.buildRow(table).set(col, "hello").upsert();
+        final SurrogateKey other = w.buildRow(table).set(col, "goodbye").upsert();
+        assertEquals(first, second);
+        assertFalse(first.equals(other));
+
+        final KeyCacheStats stats = w.getKeyCacheStats(table);
+        assertEquals(10, stats.getMaximumSize());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getSize());
+    }
+
+    public void testEviction() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setMaxRowsHint(1000).setKeyCacheSize(1);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+
+        final SurrogateKey first = w.buildRow(table).set(col, "hello").upsert();
+        w.buildRow(table).set(col, "goodbye").upsert();
+        assertEquals(first, w.buildRow(table).set(col, "hello").upsert());
+
+        final KeyCacheStats stats = w.getKeyCacheStats(table);
+        assertEquals(1, stats.getMaximumSize());
+        assertEquals(0, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(2, stats.getEvictionCount());
+    }
+
+    public void testNoCacheOnFactsOrWhenDisabled() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("foo").setKeyCacheSize(0);
+        dim.addColumn("bar", ColumnType.STRING).build();
+        final Table dimTable = dim.build();
+        final TableBuilder fact = sb.factTableBuilder("baz");
+        fact.addColumn("bar", ColumnType.STRING).build();
+        final Table factTable = fact.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+        assertNull(w.getKeyCacheStats(dimTable));
+        assertNull(w.getKeyCacheStats(factTable));
+    }
+
+    public void testWarmKeyCaches() throws Exception {
+        final MockPersistenceProvider pp = new MockPersistenceProvider();
+        final SurrogateKey hello;
+        {
+            final SchemaBuilder sb = SchemaBuilder.create();
+            final TableBuilder tb = sb.dimensionTableBuilder("foo");
+            final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+            final Table table = tb.build();
+            final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+            hello = w.buildRow(table).set(col, "hello").upsert();
+            w.buildRow(table).set(col, "goodbye").upsert();
+            w.buildRow(table).set(col, "again").upsert();
+            w.close();
+        }
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setKeyCacheSize(2);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).
+                setOpenExisting(true).setWarmKeyCaches(true).build();
+
+        final KeyCacheStats stats = w.getKeyCacheStats(table);
+        assertEquals(2, stats.getSize()); // the scan stops once the cache is full
+        assertEquals(hello, w.buildRow(table).set(col, "hello").upsert());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(0, stats.getMissCount());
+    }
+
+    public void testBlindUpsert() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+
+        w.buildRow(table).set(col, "hello").blindUpsert();
+        final SurrogateKey key = w.buildRow(table).set(col, "hello").upsert();
+        assertNotNull(key);
+        w.buildRow(table).set(col, "hello").blindUpsert();
+        assertEquals(key, w.buildRow(table).set(col, "hello").upsert());
+
+        final KeyCacheStats stats = w.getKeyCacheStats(table);
+        assertEquals(2, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+    }
+
+    public void testBloomFilterSkipsLookups() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setKeyCacheSize(0).setBloomFilterSize(100);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final CountingPersistenceProvider pp = new CountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final SurrogateKey hello = w.buildRow(table).set(col, "hello").upsert();
+        w.buildRow(table).set(col, "goodbye").blindUpsert();
+        assertEquals(2, pp.inserts.get());
+        assertEquals(0, pp.upserts.get());
+        assertEquals(hello, w.buildRow(table).set(col, "hello").upsert());
+        assertEquals(2, pp.inserts.get());
+        assertEquals(1, pp.upserts.get());
+    }
+
+    public void testBloomFilterOnReopen() throws Exception {
+        final CountingPersistenceProvider pp = new CountingPersistenceProvider();
+        final SurrogateKey hello;
+        {
+            final SchemaBuilder sb = SchemaBuilder.create();
+            final TableBuilder tb = sb.dimensionTableBuilder("foo");
+            final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+            final Table table = tb.build();
+            final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+            hello = w.buildRow(table).set(col, "hello").upsert();
+            w.close();
+        }
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setKeyCacheSize(0).setBloomFilterSize(100);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).
+                setOpenExisting(true).build();
+
+        pp.upserts.set(0);
+        pp.inserts.set(0);
+        assertEquals(hello, w.buildRow(table).set(col, "hello").upsert());
+        w.buildRow(table).set(col, "goodbye").upsert();
+        assertEquals(1, pp.upserts.get());
+        assertEquals(1, pp.inserts.get());
+    }
+
+    public void testNoBloomFilterOnReopenWithoutScanKeys() throws Exception {
+        final CountingPersistenceProvider pp = new CountingPersistenceProvider() {
+            @Override
+            public boolean supportsScanKeys() {
+                return false;
+            }
+        };
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo").setKeyCacheSize(0).setBloomFilterSize(100);
+        final Column<String> col = tb.addColumn("bar", ColumnType.STRING).build();
+        final Table table = tb.build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).
+                setOpenExisting(true).setWarmKeyCaches(true).build();
+
+        w.buildRow(table).set(col, "hello").upsert();
+        assertEquals(1, pp.upserts.get()); // the filter couldn't have been filled, so there isn't one
+        assertEquals(0, pp.inserts.get());
+    }
+
+    public void testNaturalKey() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<String> code = tb.addColumn("code", ColumnType.STRING).build();
+        final Column<String> name = tb.addColumn("name", ColumnType.STRING).build();
+        tb.setPrimaryKeyColumns(Collections.singletonList(code));
+        final Table table = tb.build();
+        final MockPersistenceProvider pp = new MockPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final SurrogateKey key = w.buildRow(table).set(code, "a").set(name, "x").upsert();
+        assertEquals(key, w.buildRow(table).set(code, "a").set(name, "y").upsert());
+        assertEquals(key, w.buildRow(table).set(code, "a").set(name, "y").upsert());
+        assertEquals(key, w.buildRow(table).set(code, "a").set(name, "x").upsert());
+        assertFalse(key.equals(w.buildRow(table).set(code, "b").set(name, "x").upsert()));
+
+        final KeyCacheStats stats = w.getKeyCacheStats(table);
+        assertEquals(1, stats.getHitCount()); // changed names miss, so that they get written
+        assertEquals(4, stats.getMissCount());
+        assertEquals(2, stats.getSize());
+
+        final StringWriter out = new StringWriter();
+        pp.dumpAll(new PrintWriter(out));
+        assertTrue(out.toString().contains("a, x,"));
+        assertFalse(out.toString().contains("a, y,"));
+    }
+
+    public void testNaturalKeyDigest() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<String> code = tb.addColumn("code", ColumnType.STRING).nullable(true).build();
+        tb.addColumn("name", ColumnType.STRING).build();
+        tb.setPrimaryKeyColumns(Collections.singletonList(code));
+        tb.setNaturalKeyDigest(true);
+        final TableImpl table = (TableImpl) tb.build();
+        assertEquals("foo_Digest", table.getDigestColumnName());
+
+        final RowImpl ax = new RowImpl(table, new Object[]{"a", "x"});
+        final RowImpl ay = new RowImpl(table, new Object[]{"a", "y"});
+        final RowImpl bx = new RowImpl(table, new Object[]{"b", "x"});
+        final RowImpl nullCode = new RowImpl(table, new Object[]{null, "x"});
+        assertEquals(16, ax.getNaturalKeyDigest().length);
+        assertEquals(ax.getNaturalKey(), ay.getNaturalKey());
+        assertTrue(Arrays.equals(ax.getNaturalKeyDigest(), ay.getNaturalKeyDigest()));
+        assertFalse(ax.getNaturalKey().equals(bx.getNaturalKey()));
+        assertFalse(ax.getNaturalKey().equals(nullCode.getNaturalKey()));
+        assertNotNull(nullCode.getNaturalKeyDigest());
+
+        final TableBuilder plain = sb.dimensionTableBuilder("bar");
+        plain.addColumn("code", ColumnType.STRING).build();
+        final TableImpl plainTable = (TableImpl) plain.build();
+        assertNull(plainTable.getDigestColumnName());
+        assertNull(new RowImpl(plainTable, new Object[]{"a"}).getNaturalKeyDigest());
+    }
+
+    public void testPrimaryKeyColumnsMustBelongToTable() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder other = sb.dimensionTableBuilder("other");
+        final Column<String> otherCode = other.addColumn("code", ColumnType.STRING).build();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        tb.addColumn("code", ColumnType.STRING).build();
+        tb.setPrimaryKeyColumns(Collections.singletonList(otherCode));
+        try {
+            tb.build();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.schema.*;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Collections;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class OffHeapKeyIndexTest extends TestCase {
+
+    public void testPutGetAndGrow() throws Exception {
+        try (final OffHeapAllocator allocator = new OffHeapAllocator(1L << 30, tempDir())) {
+            final OffHeapKeyIndex index = new OffHeapKeyIndex(allocator);
+            final int count = 50000;
+            for (int i = 0; i < count; i++) {
+                final byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                assertTrue(index.put(key, key.length, i * 3L));
+            }
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i++) {
+                final byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                assertEquals(i * 3L, index.get(key, key.length));
+            }
+            final byte[] missing = "nope".getBytes(StandardCharsets.UTF_8);
+            assertEquals(OffHeapKeyIndex.NOT_FOUND, index.get(missing, missing.length));
+
+            // only the given length of the array is the key
+            final byte[] padded = "key7xxxx".getBytes(StandardCharsets.UTF_8);
+            assertEquals(21L, index.get(padded, 4));
+
+            final byte[] key = "key7".getBytes(StandardCharsets.UTF_8);
+            index.put(key, key.length, 42);
+            assertEquals(42L, index.get(key, key.length));
+            assertEquals(count, index.size());
+        }
+    }
+
+    public void testSpill() throws Exception {
+        final Path dir = tempDir();
+        try (final OffHeapAllocator allocator = new OffHeapAllocator(0, dir)) {
+            final OffHeapKeyIndex index = new OffHeapKeyIndex(allocator);
+            for (int i = 0; i < 5000; i++) {
+                final byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                index.put(key, key.length, i);
+            }
+            final byte[] key = "key4999".getBytes(StandardCharsets.UTF_8);
+            assertEquals(4999L, index.get(key, key.length));
+            assertEquals(0, allocator.getDirectBytes());
+            assertTrue(allocator.getSpilledBytes() > 0);
+        }
+        assertFalse(Files.list(dir).findAny().isPresent());
+    }
+
+    public void testReleaseOnGrow() throws Exception {
+        // 5000 keys double the table from 1024 slots up to 8192, three arrays of longs each, and the keys fit in the
+        // first 64K arena buffer.  The budget covers the last doubling, when the old and new arrays are both live, but
+        // not every table there's been.
+        final long finalTable = 3 * 8192 * 8;
+        final long arena = 1 << 16;
+        try (final OffHeapAllocator allocator = new OffHeapAllocator(arena + finalTable + finalTable / 2, tempDir())) {
+            final OffHeapKeyIndex index = new OffHeapKeyIndex(allocator);
+            for (int i = 0; i < 5000; i++) {
+                final byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+                index.put(key, key.length, i);
+            }
+            assertEquals(0, allocator.getSpilledBytes());
+            assertEquals(arena + finalTable, allocator.getDirectBytes());
+        }
+    }
+
+    public void testEncodingMatchesRowEquality() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<String> s = tb.addColumn("s", ColumnType.STRING).nullable(true).build();
+        final Column<Long> l = tb.addColumn("l", ColumnType.LONG).build();
+        final Column<Double> d = tb.addColumn("d", ColumnType.DOUBLE).build();
+        final Column<Timestamp> t = tb.addColumn("t", ColumnType.TIMESTAMP).build();
+        final TableImpl table = (TableImpl) tb.build();
+        final RowKeyEncoder encoder = new RowKeyEncoder(table.getValueColumns());
+
+        final Timestamp ts = new Timestamp(1234567L);
+        final RowImpl boxed = new RowImpl(table, new Object[]{"h\u00e9llo \u4e16", 7L, 0.5, ts});
+        final RowImpl unboxed = new RowImpl(table,
+                new Object[]{"h\u00e9llo \u4e16", RowImpl.Slot.PRIMITIVE, RowImpl.Slot.PRIMITIVE, RowImpl.Slot.PRIMITIVE},
+                new long[]{0, 7L, Double.doubleToLongBits(0.5), 1234567L});
+        assertEquals(boxed, unboxed);
+        assertEquals(encode(encoder, boxed), encode(encoder, unboxed));
+
+        final RowImpl nullString = new RowImpl(table, new Object[]{null, 7L, 0.5, ts});
+        final RowImpl emptyString = new RowImpl(table, new Object[]{"", 7L, 0.5, ts});
+        assertFalse(encode(encoder, nullString).equals(encode(encoder, emptyString)));
+
+        final Timestamp moreNanos = new Timestamp(1234567L);
+        moreNanos.setNanos(ts.getNanos() + 1);
+        final RowImpl otherTime = new RowImpl(table, new Object[]{"", 7L, 0.5, moreNanos});
+        assertFalse(encode(encoder, emptyString).equals(encode(encoder, otherTime)));
+    }
+
+    public void testOffHeapKeyCache() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        tb.addColumn("s", ColumnType.STRING).build();
+        final TableImpl table = (TableImpl) tb.build();
+        try (final OffHeapAllocator allocator = new OffHeapAllocator(1L << 20, tempDir())) {
+            final KeyCache cache = new OffHeapKeyCache(new RowKeyEncoder(table.getValueColumns()), allocator);
+            cache.put(new RowImpl(table, new Object[]{"hello"}), new LongSurrogateKey(99));
+            assertEquals(new LongSurrogateKey(99), cache.get(new RowImpl(table, new Object[]{"hello"})));
+            assertNull(cache.get(new RowImpl(table, new Object[]{"goodbye"})));
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getSize());
+        }
+    }
+
+    public void testOffHeapKeyCacheWithAttributes() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<String> code = tb.addColumn("code", ColumnType.STRING).build();
+        tb.addColumn("name", ColumnType.STRING).build();
+        tb.setPrimaryKeyColumns(Collections.singletonList(code));
+        final TableImpl table = (TableImpl) tb.build();
+        try (final OffHeapAllocator allocator = new OffHeapAllocator(1L << 20, tempDir())) {
+            final KeyCache cache = new OffHeapKeyCache(new RowKeyEncoder(table.getNaturalKeyColumns()),
+                    new RowKeyEncoder(table.getAttributeColumns()), allocator);
+            cache.put(new RowImpl(table, new Object[]{"a", "x"}), new LongSurrogateKey(7));
+            assertEquals(new LongSurrogateKey(7), cache.get(new RowImpl(table, new Object[]{"a", "x"})));
+            assertNull(cache.get(new RowImpl(table, new Object[]{"a", "y"})));
+            cache.put(new RowImpl(table, new Object[]{"a", "y"}), new LongSurrogateKey(7));
+            assertNull(cache.get(new RowImpl(table, new Object[]{"a", "x"})));
+            assertEquals(new LongSurrogateKey(7), cache.get(new RowImpl(table, new Object[]{"a", "y"})));
+            assertEquals(1, cache.getSize());
+        }
+    }
+
+    private static String encode(final RowKeyEncoder encoder, final RowImpl row) {
+        final RowKeyEncoder.Buffer buffer = new RowKeyEncoder.Buffer();
+        final int length = encoder.encode(row, buffer);
+        final StringBuilder out = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            out.append(String.format("%02x", buffer.bytes[i]));
+        }
+        return out.toString();
+    }
+
+    private static Path tempDir() throws Exception {
+        final Path out = Files.createTempDirectory("offheap");
+        out.toFile().deleteOnExit();
+        return out;
+    }
+}
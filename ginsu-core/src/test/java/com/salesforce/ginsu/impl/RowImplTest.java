@@ -6,15 +6,11 @@
  */
 package com.salesforce.ginsu.impl;
 
-import com.salesforce.ginsu.persistence.ColumnDef;
 import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
 import com.salesforce.ginsu.schema.*;
 import com.salesforce.ginsu.warehouse.*;
 import junit.framework.TestCase;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import static org.junit.Assert.assertNotEquals;
 
 /**
@@ -61,16 +57,11 @@ public class RowImplTest extends TestCase {
         final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
 
 
-        final Map<ColumnDef, Object> valuesA = new HashMap();
-        valuesA.put((ColumnDef) col, "hello!");
+        final Object[] valuesA = new Object[]{"hello!"};
         final RowImpl rowA1 = new RowImpl(ti, valuesA);
         final RowImpl rowA2 = new RowImpl(ti, valuesA);
-        final Map<ColumnDef, Object> valuesB1 = new HashMap();
-        valuesB1.put((ColumnDef) col, "goodbye!");
-        final RowImpl rowB1 = new RowImpl(ti, valuesB1);
-        final Map<ColumnDef, Object> valuesB2 = new HashMap();
-        valuesB2.put((ColumnDef) col, "goodbye!");
-        final RowImpl rowB2 = new RowImpl(ti, valuesB2);
+        final RowImpl rowB1 = new RowImpl(ti, new Object[]{"goodbye!"});
+        final RowImpl rowB2 = new RowImpl(ti, new Object[]{"goodbye!"});
 
         assertEquals(rowA1, rowA2);
         assertEquals(rowA1.hashCode(), rowA2.hashCode());
@@ -79,4 +70,61 @@ public class RowImplTest extends TestCase {
         assertNotEquals(rowA1, rowB1);
         assertNotEquals(rowA2, rowB2);
     }
-}
\ No newline at end of file
+
+    public void testColumnMembership() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder fooBuilder = sb.factTableBuilder("foo");
+        final Column<String> fooBar = fooBuilder.addColumn("bar", ColumnType.STRING).build();
+        final Table foo = fooBuilder.build();
+        final TableBuilder bazBuilder = sb.factTableBuilder("baz");
+        final Column<String> bazBar = bazBuilder.addColumn("bar", ColumnType.STRING).build();
+        final Table baz = bazBuilder.build();
+        assertTrue(foo.contains(fooBar));
+        assertFalse(foo.contains(bazBar));
+
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+        try {
+            w.buildRow(foo).set(bazBar, "hello");
+            fail("didn't get expected IllegalArgumentException when setting a column from another table");
+        } catch (IllegalArgumentException expected) {
+        }
+        final RowBuilder rb = w.buildRow(baz).set(bazBar, "hello");
+        rb.insert();
+        try {
+            rb.insert();
+            fail("didn't get expected IllegalStateException when reusing RowBuilder");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testUnboxedSettersMatchBoxed() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("foo");
+        final Column<Integer> intCol = tb.addColumn("i", ColumnType.INTEGER).build();
+        final Column<Long> longCol = tb.addColumn("l", ColumnType.LONG).build();
+        final Column<Double> doubleCol = tb.addColumn("d", ColumnType.DOUBLE).build();
+        final Column<Boolean> booleanCol = tb.addColumn("b", ColumnType.BOOLEAN).build();
+        final Column<java.sql.Timestamp> tsCol = tb.addColumn("t", ColumnType.TIMESTAMP).build();
+        final Table table = tb.setKeyCacheSize(0).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(new MockPersistenceProvider()).build();
+
+        final long now = 1577836800123L;
+        final SurrogateKey boxed = w.buildRow(table).set(intCol, 7).set(longCol, 123456789L).set(doubleCol, 1.5).
+                set(booleanCol, true).set(tsCol, new java.sql.Timestamp(now)).upsert();
+        final SurrogateKey unboxed = w.buildRow(table).setInt(intCol, 7).setLong(longCol, 123456789L).setDouble(doubleCol, 1.5).
+                setBoolean(booleanCol, true).setEpochMillis(tsCol, now).upsert();
+        final SurrogateKey mixed = w.buildRow(table).setInt(intCol, 7).set(longCol, 123456789L).setDouble(doubleCol, 1.5).
+                set(booleanCol, true).setEpochMillis(tsCol, now).upsert();
+        final SurrogateKey different = w.buildRow(table).setInt(intCol, 7).setLong(longCol, 123456789L).setDouble(doubleCol, 1.5).
+                setBoolean(booleanCol, false).setEpochMillis(tsCol, now).upsert();
+        assertEquals(boxed, unboxed);
+        assertEquals(boxed, mixed);
+        assertNotEquals(boxed, different);
+
+        try {
+            w.buildRow(table).setLong((Column) intCol, 7L);
+            fail("didn't get expected IllegalArgumentException when setting a long on an INTEGER column");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
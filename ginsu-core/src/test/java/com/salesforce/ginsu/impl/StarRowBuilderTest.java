@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.PersistenceProvider.UpdateRequest;
+import com.salesforce.ginsu.persistence.Row;
+import com.salesforce.ginsu.persistence.mock.MockPersistenceProvider;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class StarRowBuilderTest extends TestCase {
+
+    public void testInsert() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder colorBuilder = sb.dimensionTableBuilder("color");
+        final Column<String> colorName = colorBuilder.addColumn("name", ColumnType.STRING).build();
+        final Table color = colorBuilder.build();
+        final TableBuilder storeBuilder = sb.dimensionTableBuilder("store");
+        final Column<String> city = storeBuilder.addColumn("city", ColumnType.STRING).build();
+        final Column<Integer> number = storeBuilder.addColumn("number", ColumnType.INTEGER).build();
+        final Table store = storeBuilder.build();
+        final TableBuilder fact = sb.factTableBuilder("sale");
+        final Column<SurrogateKey> colorKey = fact.addForeignKey(color).build();
+        final Column<SurrogateKey> storeKey = fact.addForeignKey(store).build();
+        final Column<Long> gallons = fact.addColumn("gallons", ColumnType.LONG).build();
+        final Table sale = fact.build();
+        final FactCapturingPersistenceProvider pp = new FactCapturingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).
+                setAsyncWriterThreads(2).build();
+
+        final List<CompletableFuture<SurrogateKey>> pending = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final StarRowBuilder row = w.buildStarRow(sale).
+                    setDimension(colorKey, colorName, "color" + (i % 5)).
+                    setDimension(storeKey, city, "city" + (i % 3)).
+                    setDimension(storeKey, number, i % 2).
+                    setLong(gallons, i);
+            if (i % 2 == 0) {
+                assertNull(row.insert());
+            } else {
+                pending.add(row.insertAsync());
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        assertEquals(100, pp.facts.size());
+        assertEquals(5, w.getKeyCacheStats(color).getSize());
+        assertEquals(6, w.getKeyCacheStats(store).getSize());
+        for (final Row row : pp.facts) {
+            final long i = row.getLong((ColumnDef) gallons);
+            assertEquals(w.buildRow(color).set(colorName, "color" + (i % 5)).upsert(), row.getValue((ColumnDef) colorKey));
+            assertEquals(w.buildRow(store).set(city, "city" + (i % 3)).set(number, (int) (i % 2)).upsert(),
+                    row.getValue((ColumnDef) storeKey));
+        }
+
+        final StarRowBuilder used = w.buildStarRow(sale).setDimension(colorKey, colorName, "red").
+                setDimension(storeKey, city, "here").setDimension(storeKey, number, 1).setLong(gallons, 1L);
+        used.insert();
+        try {
+            used.setLong(gallons, 2L);
+            fail("didn't get expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            w.buildStarRow(sale).setDimension(colorKey, city, "wrong table");
+            fail("didn't get expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        w.close();
+    }
+
+    public void testExplicitForeignKeyWins() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder colorBuilder = sb.dimensionTableBuilder("color");
+        final Column<String> colorName = colorBuilder.addColumn("name", ColumnType.STRING).build();
+        final Table color = colorBuilder.build();
+        final TableBuilder fact = sb.factTableBuilder("sale");
+        final Column<SurrogateKey> colorKey = fact.addForeignKey(color).build();
+        final Column<Long> gallons = fact.addColumn("gallons", ColumnType.LONG).build();
+        final Table sale = fact.build();
+        final FactCapturingPersistenceProvider pp = new FactCapturingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final SurrogateKey red = w.buildRow(color).set(colorName, "red").upsert();
+        w.buildStarRow(sale).setDimension(colorKey, colorName, "blue").set(colorKey, red).setLong(gallons, 1L).insert();
+        w.buildStarRow(sale).set(colorKey, red).setDimension(colorKey, colorName, "blue").setLong(gallons, 2L).
+                insertAsync().get(30, TimeUnit.SECONDS);
+        assertEquals(2, pp.facts.size());
+        for (final Row row : pp.facts) {
+            assertEquals(red, row.getValue((ColumnDef) colorKey));
+        }
+        assertEquals(1, w.getKeyCacheStats(color).getSize()); // blue was never upserted
+        w.close();
+    }
+
+    private static class FactCapturingPersistenceProvider extends MockPersistenceProvider {
+
+        final List<Row> facts = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public SurrogateKey update(UpdateRequest request) {
+            if (!request.getTableDef().hasSurrogateKey()) facts.add(request.getRow());
+            return super.update(request);
+        }
+    }
+}
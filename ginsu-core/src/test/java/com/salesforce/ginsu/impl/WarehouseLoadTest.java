@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.impl;
+
+import com.google.common.base.Throwables;
+import com.salesforce.ginsu.persistence.PersistenceProvider.UpsertBatchRequest;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class WarehouseLoadTest extends TestCase {
+
+    public void testLoad() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("color");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table color = dim.build();
+        final TableBuilder fact = sb.factTableBuilder("paint");
+        final Column<SurrogateKey> colorKey = fact.addForeignKey(color).build();
+        final Column<Long> gallons = fact.addColumn("gallons", ColumnType.LONG).build();
+        final Table paint = fact.build();
+        final FlushCountingPersistenceProvider pp = new FlushCountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final LoadSummary colors = w.load(color, Arrays.asList("red", "green", "red").iterator(), (line, row) -> {
+            row.set(name, line);
+            return true;
+        });
+        assertEquals(3, colors.getRecordCount());
+        assertEquals(3, colors.getRowCount());
+        assertEquals(1, pp.flushes.get());
+
+        final LoadSummary paints = w.load(paint, Stream.of("# color,gallons", "red,5", "blue,7", "green,11"), (line, row) -> {
+            if (line.startsWith("#")) return false;
+            final String[] fields = line.split(",");
+            row.set(colorKey, w.buildRow(color).set(name, fields[0]).upsert());
+            row.setLong(gallons, Long.parseLong(fields[1]));
+            return true;
+        });
+        assertEquals(4, paints.getRecordCount());
+        assertEquals(3, paints.getRowCount());
+        assertEquals(1, paints.getSkippedCount());
+        assertEquals(2, pp.flushes.get());
+        assertTrue(paints.getElapsedNanos() >= paints.getMapNanos() + paints.getFlushNanos());
+        assertEquals(3, pp.inserts.get());
+
+        final StringWriter out = new StringWriter();
+        pp.dumpAll(new PrintWriter(out));
+        assertTrue(out.toString(), out.toString().contains(", 5, "));
+        assertTrue(out.toString(), out.toString().contains(", 7, "));
+        assertTrue(out.toString(), out.toString().contains(", 11, "));
+    }
+
+    public void testLoadParallel() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("color");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table color = dim.build();
+        final TableBuilder fact = sb.factTableBuilder("paint");
+        final Column<SurrogateKey> colorKey = fact.addForeignKey(color).build();
+        final Column<Long> gallons = fact.addColumn("gallons", ColumnType.LONG).build();
+        final Table paint = fact.build();
+        final FlushCountingPersistenceProvider pp = new FlushCountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).setLoadParallelism(4).build();
+
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final RowMapper<Long> mapper = (n, row) -> {
+            threads.add(Thread.currentThread().getName());
+            if (threads.size() == 1) LockSupport.parkNanos(1000000); // give the other workers a chance to steal something
+            if (n % 7 == 0) return false;
+            row.set(colorKey, w.buildRow(color).set(name, "color" + (n % 10)).upsert());
+            row.setLong(gallons, n);
+            return true;
+        };
+        final LoadSummary paints = w.loadParallel(paint, LongStream.range(0, 10000).boxed(), mapper);
+        assertEquals(10000, paints.getRecordCount());
+        assertEquals(10000 - 1429, paints.getRowCount());
+        assertEquals(1429, paints.getSkippedCount());
+        assertEquals(10000 - 1429, pp.inserts.get());
+        assertEquals(1, pp.flushes.get());
+        assertTrue(threads.toString(), threads.size() > 1);
+        for (final String thread : threads) {
+            assertTrue(thread, thread.startsWith("ginsu-loader-"));
+        }
+
+        // a source that doesn't know its size gets split too
+        threads.clear();
+        final LoadSummary unsized = w.loadParallel(paint,
+                Spliterators.spliteratorUnknownSize(LongStream.range(0, 10000).boxed().iterator(), 0), mapper);
+        assertEquals(10000, unsized.getRecordCount());
+        assertEquals(10000 - 1429, unsized.getRowCount());
+        assertEquals(2 * (10000 - 1429), pp.inserts.get());
+        assertEquals(2, pp.flushes.get());
+        assertTrue(threads.toString(), threads.size() > 1);
+        assertEquals(10, w.getKeyCacheStats(color).getSize());
+
+        try {
+            w.loadParallel(paint, LongStream.range(0, 10000).boxed(), (n, row) -> {
+                if (n == 5000) throw new IllegalStateException("boom");
+                return false;
+            });
+            fail("didn't get expected exception");
+        } catch (IllegalStateException expected) {
+            assertEquals("boom", Throwables.getRootCause(expected).getMessage());
+        }
+        assertEquals(2, pp.flushes.get());
+        w.close();
+    }
+
+    public void testUpsertBatch() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("color");
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table color = dim.build();
+        final FlushCountingPersistenceProvider pp = new FlushCountingPersistenceProvider();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final SurrogateKey red = w.buildRow(color).set(name, "red").upsert();
+        final List<SurrogateKey> keys = w.upsertBatch(color, Arrays.asList("green", "red", "# blue", "green", "blue"), (line, row) -> {
+            if (line.startsWith("#")) return false;
+            row.set(name, line);
+            return true;
+        });
+        assertEquals(5, keys.size());
+        assertEquals(red, keys.get(1));
+        assertNull(keys.get(2));
+        assertEquals(keys.get(0), keys.get(3));
+        assertEquals(3, new HashSet<>(Arrays.asList(red, keys.get(0), keys.get(4))).size());
+        assertEquals(Collections.singletonList(3), pp.batchSizes); // red came from the cache
+        assertEquals(keys.get(4), w.buildRow(color).set(name, "blue").upsert());
+        assertEquals(Collections.singletonList(3), pp.batchSizes);
+        w.close();
+    }
+
+    public void testUpsertBatchWithBloomFilter() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("color").setKeyCacheSize(0).setBloomFilterSize(100);
+        final Column<String> name = dim.addColumn("name", ColumnType.STRING).build();
+        final Table color = dim.build();
+        final CountDownLatch batchWritten = new CountDownLatch(1);
+        final CountDownLatch rowWritten = new CountDownLatch(1);
+        final FlushCountingPersistenceProvider pp = new FlushCountingPersistenceProvider() {
+            @Override
+            public List<SurrogateKey> upsertBatch(UpsertBatchRequest request) {
+                final List<SurrogateKey> out = super.upsertBatch(request);
+                batchWritten.countDown();
+                try {
+                    // gives an upsert that isn't held off by the filter's lock time to insert red a second time
+                    rowWritten.await(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return out;
+            }
+        };
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+
+        final CompletableFuture<SurrogateKey> single = CompletableFuture.supplyAsync(() -> {
+            try {
+                batchWritten.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            final SurrogateKey out = w.buildRow(color).set(name, "red").upsert();
+            rowWritten.countDown();
+            return out;
+        });
+        final List<SurrogateKey> keys = w.upsertBatch(color, Collections.singletonList("red"), (line, row) -> {
+            row.set(name, line);
+            return true;
+        });
+        assertEquals(keys.get(0), single.get(30, TimeUnit.SECONDS));
+        assertEquals(0, pp.inserts.get());
+        w.close();
+    }
+
+    private static class FlushCountingPersistenceProvider extends CountingPersistenceProvider {
+
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public List<SurrogateKey> upsertBatch(UpsertBatchRequest request) {
+            batchSizes.add(request.getRows().size());
+            return super.upsertBatch(request);
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persistence.jdbc;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.persistence.Row;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.SurrogateKey;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author pcal
+ * @since 0.0.1
+ */
+public class JdbcRowBinderTest extends TestCase {
+
+    public void testTypedSetters() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder dim = sb.dimensionTableBuilder("bar");
+        dim.addColumn("name", ColumnType.STRING).build();
+        final Table bar = dim.build();
+        final TableBuilder tb = sb.factTableBuilder("foo");
+        final Column<Integer> i = tb.addColumn("i", ColumnType.INTEGER).build();
+        final Column<Long> l = tb.addColumn("l", ColumnType.LONG).nullable(true).build();
+        final Column<String> s = tb.addColumn("s", ColumnType.STRING).setMaxLength(3).build();
+        final Column<Timestamp> t = tb.addColumn("t", ColumnType.TIMESTAMP).build();
+        final Column<SurrogateKey> fk = tb.addForeignKey(bar).build();
+        final List<ColumnDef> columns = Arrays.asList((ColumnDef) i, (ColumnDef) l, (ColumnDef) s, (ColumnDef) t, (ColumnDef) fk);
+        assertEquals(3, ((ColumnDef) s).getMaxLength());
+
+        final Timestamp ts = new Timestamp(1234L);
+        final Map<ColumnDef, Object> values = new HashMap<>();
+        values.put((ColumnDef) i, 7);
+        values.put((ColumnDef) s, "abcdef");
+        values.put((ColumnDef) t, ts);
+        values.put((ColumnDef) fk, new LongSurrogateKey(42));
+
+        final List<String> calls = new ArrayList<>();
+        final JdbcRowBinder binder = new JdbcRowBinder(columns);
+        assertEquals(5, binder.getParameterCount());
+        assertEquals(7, binder.bind(recorder(calls), 2, new MapRow(values)));
+        assertEquals(Arrays.asList(
+                "setInt 2 7",
+                "setNull 3 " + Types.BIGINT,
+                "setString 4 abc",
+                "setTimestamp 5 " + ts,
+                "setLong 6 42"), calls);
+    }
+
+    /**
+     * @return a PreparedStatement that records each setter call as "name index value".  The binders generated for
+     * row classes are checked against it too.
+     */
+    public static PreparedStatement recorder(final List<String> calls) {
+        return (PreparedStatement) Proxy.newProxyInstance(JdbcRowBinderTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    calls.add(method.getName() + " " + args[0] + " " + args[1]);
+                    return null;
+                });
+    }
+
+    private static class MapRow implements Row {
+
+        private final Map<ColumnDef, Object> values;
+
+        MapRow(Map<ColumnDef, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object getValue(ColumnDef column) {
+            return values.get(column);
+        }
+
+        @Override
+        public SurrogateKey getKey() {
+            return null;
+        }
+
+        @Override
+        public void setKey(SurrogateKey key) {
+        }
+    }
+}
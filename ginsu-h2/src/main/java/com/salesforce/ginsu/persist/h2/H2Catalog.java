@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.concurrent.Immutable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A snapshot of what's in the current schema of an H2 database, read from INFORMATION_SCHEMA.  Names are compared
+ * case-insensitively, the way H2 treats unquoted identifiers.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class H2Catalog {
+
+    private final Set<String> tables;
+    private final Set<String> views;
+    private final Set<String> sequences;
+    private final Set<String> indexes;
+    private final Map<String, Map<String, ColumnInfo>> columns;
+
+    private H2Catalog(Set<String> tables, Set<String> views, Set<String> sequences, Set<String> indexes,
+                      Map<String, Map<String, ColumnInfo>> columns) {
+        this.tables = requireNonNull(tables);
+        this.views = requireNonNull(views);
+        this.sequences = requireNonNull(sequences);
+        this.indexes = requireNonNull(indexes);
+        this.columns = requireNonNull(columns);
+    }
+
+    static H2Catalog read(final Connection conn) throws SQLException {
+        final ImmutableSet.Builder<String> tables = ImmutableSet.builder();
+        final ImmutableSet.Builder<String> views = ImmutableSet.builder();
+        try (final PreparedStatement stmt = conn.prepareStatement(
+                "SELECT TABLE_NAME, TABLE_TYPE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA()");
+             final ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                if ("VIEW".equalsIgnoreCase(rs.getString(2))) {
+                    views.add(normalize(rs.getString(1)));
+                } else {
+                    tables.add(normalize(rs.getString(1)));
+                }
+            }
+        }
+        final Set<String> sequences = readNames(conn,
+                "SELECT SEQUENCE_NAME FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_SCHEMA = SCHEMA()");
+        final Set<String> indexes = readNames(conn,
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = SCHEMA()");
+        final Map<String, Map<String, ColumnInfo>> columns = new HashMap<>();
+        try (final PreparedStatement stmt = conn.prepareStatement(
+                "SELECT TABLE_NAME, COLUMN_NAME, TYPE_NAME, CHARACTER_MAXIMUM_LENGTH, IS_NULLABLE, COLUMN_DEFAULT " +
+                        "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA() ORDER BY ORDINAL_POSITION");
+             final ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                final ColumnInfo col = new ColumnInfo(rs.getString(2), rs.getString(3), rs.getLong(4),
+                        "YES".equalsIgnoreCase(rs.getString(5)), rs.getString(6));
+                columns.computeIfAbsent(normalize(rs.getString(1)), t -> new LinkedHashMap<>()).put(normalize(col.getName()), col);
+            }
+        }
+        final ImmutableMap.Builder<String, Map<String, ColumnInfo>> immutableColumns = ImmutableMap.builder();
+        columns.forEach((table, cols) -> immutableColumns.put(table, ImmutableMap.copyOf(cols)));
+        return new H2Catalog(tables.build(), views.build(), sequences, indexes, immutableColumns.build());
+    }
+
+    boolean hasTable(final String name) {
+        return tables.contains(normalize(name));
+    }
+
+    boolean hasView(final String name) {
+        return views.contains(normalize(name));
+    }
+
+    boolean hasSequence(final String name) {
+        return sequences.contains(normalize(name));
+    }
+
+    boolean hasIndex(final String name) {
+        return indexes.contains(normalize(name));
+    }
+
+    /**
+     * @return the table's columns keyed by normalized name, in table order, or an empty map if there's no such table.
+     */
+    Map<String, ColumnInfo> getColumns(final String tableName) {
+        final Map<String, ColumnInfo> out = columns.get(normalize(tableName));
+        return out == null ? ImmutableMap.of() : out;
+    }
+
+    static String normalize(final String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    private static Set<String> readNames(final Connection conn, final String sql) throws SQLException {
+        final ImmutableSet.Builder<String> out = ImmutableSet.builder();
+        try (final PreparedStatement stmt = conn.prepareStatement(sql);
+             final ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                out.add(normalize(rs.getString(1)));
+            }
+        }
+        return out.build();
+    }
+
+    /**
+     * What H2 reports about an existing column.
+     */
+    @Immutable
+    static final class ColumnInfo {
+
+        private final String name;
+        private final String typeName;
+        private final long maxLength;
+        private final boolean nullable;
+        private final String defaultExpression;
+
+        ColumnInfo(String name, String typeName, long maxLength, boolean nullable, String defaultExpression) {
+            this.name = requireNonNull(name);
+            this.typeName = requireNonNull(typeName);
+            this.maxLength = maxLength;
+            this.nullable = nullable;
+            this.defaultExpression = defaultExpression;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getTypeName() {
+            return typeName;
+        }
+
+        long getMaxLength() {
+            return maxLength;
+        }
+
+        boolean isNullable() {
+            return nullable;
+        }
+
+        /**
+         * @return the column's DEFAULT expression, or null if it has none.
+         */
+        String getDefaultExpression() {
+            return defaultExpression;
+        }
+    }
+}
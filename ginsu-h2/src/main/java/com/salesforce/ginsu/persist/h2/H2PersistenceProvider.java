@@ -8,6 +8,7 @@ package com.salesforce.ginsu.persist.h2;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.salesforce.ginsu.persistence.*;
 import com.salesforce.ginsu.schema.ColumnType;
@@ -15,10 +16,26 @@ import com.salesforce.ginsu.warehouse.SurrogateKey;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,40 +49,243 @@ public class H2PersistenceProvider implements PersistenceProvider {
 
     // NOTE: There doesn't seem to be any advantage to using more compact key types for low-cardinality dimensions
     private static final String SURROGATE_KEY_TYPE = "INT";
+    private static final String DIGEST_TYPE = "BINARY(16)";
+
+    /**
+     * Batch upserts smaller than this aren't worth the four statements that staging them takes.
+     */
+    private static final int MIN_STAGED_UPSERT_ROWS = 4;
+
+    /**
+     * How many of a table's fixed rows createSchema writes per JDBC batch.
+     */
+    private static final int FIXED_ROWS_BATCH_SIZE = 1000;
+
+    /**
+     * Stands in for the column name in the name of a table's natural key index.
+     */
+    private static final String NATURAL_KEY_INDEX = "NATURAL_KEY";
+
+    /**
+     * Run on every connection in bulk-load mode.  The load can simply be rerun if it fails, so there's no point paying
+     * for the transaction log or the undo log.  UNDO_LOG is per-session; LOG is database-wide.  Table locking stays
+     * on, since the loader threads each have their own connection and LOCK_MODE 0 isn't safe with more than one.
+     */
+    private static final List<String> BULK_LOAD_SESSION_SQL = ImmutableList.of("SET LOG 0", "SET UNDO_LOG 0");
+
+    /**
+     * Puts the settings back to H2's defaults once a bulk load is done.
+     */
+    private static final List<String> BULK_LOAD_RESTORE_SQL = ImmutableList.of("SET LOG 2", "SET UNDO_LOG 1");
 
     private final ThreadLocalConnectionPool connections;
     private final int batchSize;
+    private final int keyBlockSize;
+    private final boolean bulkLoad;
     private final Logger logger;
 
+    /**
+     * CREATE INDEX statements that bulk-load mode put off until the data is in.
+     */
+    private final List<String> deferredIndexSql = new ArrayList<>();
+
+    /**
+     * Each loader thread batches into its own buffers and writes them on its own connection.  Every buffer is also
+     * registered in allBatches so that close() can drain the ones that threads left behind.
+     */
+    private final ThreadLocal<Batches> threadBatches = ThreadLocal.withInitial(this::newBatches);
+    private final Collection<Batches> allBatches = new ConcurrentLinkedQueue<>();
 
-    private final ListMultimap<TableDef, Row> batchedRows = ArrayListMultimap.create();
+    /**
+     * Surrogate-keyed rows that are sitting in any thread's batches, by natural key, so that upserts don't miss them
+     * or get overwritten by them.  Rows batched for insert have their keys; rows batched for merge don't.
+     */
+    private final ConcurrentMap<TableDef, ConcurrentMap<Object, Row>> batchedRows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TableDef, KeyAllocator> keyAllocators = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TableDef, TableSql> tableSql = new ConcurrentHashMap<>();
 
-    H2PersistenceProvider(String connectionString, String username, String password, int batchSize, Logger logger) {
+    /**
+     * Null unless we're in single-writer mode.
+     */
+    private final SingleWriter singleWriter;
+
+    H2PersistenceProvider(String connectionString, String username, String password, int batchSize, int keyBlockSize,
+                          boolean bulkLoad, boolean singleWriter, int writerQueueCapacity,
+                          WaitStrategy writerWaitStrategy, int writerCommitRows, Logger logger) {
         this.batchSize = batchSize;
+        if (keyBlockSize < 1) throw new IllegalArgumentException("invalid keyBlockSize " + keyBlockSize);
+        this.keyBlockSize = keyBlockSize;
+        this.bulkLoad = bulkLoad;
         this.logger = requireNonNull(logger);
-        this.connections = new ThreadLocalConnectionPool(connectionString, username, password, logger);
+        this.connections = new ThreadLocalConnectionPool(connectionString, username, password,
+                bulkLoad ? BULK_LOAD_SESSION_SQL : ImmutableList.of(), logger);
+        this.singleWriter = singleWriter ?
+                new SingleWriter(new HandoffQueue<>(writerQueueCapacity, writerWaitStrategy), writerCommitRows) : null;
+    }
+
+    /**
+     * @return how full the single writer's queue is and has been, or null if the provider isn't in single-writer
+     * mode.
+     */
+    public WriterQueueStats getWriterQueueStats() {
+        return singleWriter == null ? null : singleWriter.queue;
     }
 
 
     @Override
     public void validateSchema(final ValidateSchemaRequest request) throws PersistenceException {
-        logger.warning("validateSchema not yet implemented - FIXME");
+        final H2Catalog catalog;
+        try {
+            catalog = H2Catalog.read(connections.get());
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+        final List<String> problems = new ArrayList<>();
+        for (final TableDef table : request.getTables()) {
+            if (!catalog.hasTable(table.getTableName())) continue; // createSchema will take care of it
+            if (!request.isOpenExisting()) {
+                problems.add(table.getTableName() + " already exists");
+                continue;
+            }
+            validateTable(catalog, table, problems);
+            if (!table.getFixedRows().isEmpty()) {
+                try {
+                    validateFixedRows(table, problems);
+                } catch (SQLException e) {
+                    throw new PersistenceException(e);
+                }
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new PersistenceException("Existing schema doesn't match the warehouse: " + String.join("; ", problems));
+        }
+    }
+
+    /**
+     * Only flags differences that would make loading fail or lose data; a column that's wider or more permissive
+     * than we would have made it is fine.
+     */
+    private void validateTable(final H2Catalog catalog, final TableDef table, final List<String> problems) {
+        final Map<String, H2Catalog.ColumnInfo> existing = new HashMap<>(catalog.getColumns(table.getTableName()));
+        if (table.hasSurrogateKey()) {
+            final H2Catalog.ColumnInfo sk = existing.remove(H2Catalog.normalize(table.getSurrogateKeyColumnName()));
+            if (sk == null) {
+                problems.add(table.getTableName() + " is missing surrogate key column " + table.getSurrogateKeyColumnName());
+            } else if (!isSameType(sk, SURROGATE_KEY_TYPE)) {
+                problems.add(table.getTableName() + "." + sk.getName() + " is " + sk.getTypeName() + ", expected " + SURROGATE_KEY_TYPE);
+            }
+        }
+        for (final ColumnDef col : table.getValueColumns()) {
+            final H2Catalog.ColumnInfo info = existing.remove(H2Catalog.normalize(col.getColumnName()));
+            final String expectedType = getTypeForColumn(table, col);
+            if (info == null) {
+                problems.add(table.getTableName() + " is missing column " + col.getColumnName());
+            } else if (!isSameType(info, expectedType)) {
+                problems.add(table.getTableName() + "." + info.getName() + " is " + info.getTypeName() + ", expected " + expectedType);
+            } else if (col.isNullable() && !info.isNullable()) {
+                problems.add(table.getTableName() + "." + info.getName() + " is NOT NULL but the column is nullable");
+            }
+        }
+        if (table.getDigestColumnName() != null) {
+            final H2Catalog.ColumnInfo digest = existing.remove(H2Catalog.normalize(table.getDigestColumnName()));
+            if (digest == null) {
+                problems.add(table.getTableName() + " is missing digest column " + table.getDigestColumnName());
+            } else if (!isSameType(digest, DIGEST_TYPE)) {
+                problems.add(table.getTableName() + "." + digest.getName() + " is " + digest.getTypeName() + ", expected " + DIGEST_TYPE);
+            }
+        }
+        for (final H2Catalog.ColumnInfo extra : existing.values()) {
+            if (!extra.isNullable() && extra.getDefaultExpression() == null) {
+                problems.add(table.getTableName() + "." + extra.getName() + " is NOT NULL with no default and isn't in the warehouse");
+            } else {
+                logger.warning("ignoring column " + table.getTableName() + "." + extra.getName() + " that isn't in the warehouse");
+            }
+        }
+    }
+
+    /**
+     * The keys of fixed rows are worked out from their values, so if the table doesn't have the same number of them
+     * it was made with different columns or enums and the keys won't line up.
+     */
+    private void validateFixedRows(final TableDef table, final List<String> problems) throws SQLException {
+        try (final Statement stmt = connections.get().createStatement();
+             final ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table.getTableName())) {
+            rs.next();
+            final long count = rs.getLong(1);
+            if (count != table.getFixedRows().size()) {
+                problems.add(table.getTableName() + " has " + count + " rows, expected " + table.getFixedRows().size());
+            }
+        }
+    }
+
+    /**
+     * @param expectedType a type as it appears in our DDL, e.g. VARCHAR(255), or VARCHAR for one without a limit.
+     */
+    private static boolean isSameType(final H2Catalog.ColumnInfo info, final String expectedType) {
+        final int paren = expectedType.indexOf('(');
+        String baseType = paren < 0 ? expectedType : expectedType.substring(0, paren);
+        if (baseType.equals("INT")) baseType = "INTEGER";
+        if (baseType.equals("BINARY")) baseType = "VARBINARY"; // H2 treats them the same
+        if (!baseType.equalsIgnoreCase(info.getTypeName())) return false;
+        if (paren >= 0) {
+            final long expectedLength = Long.parseLong(expectedType.substring(paren + 1, expectedType.indexOf(')')));
+            return info.getMaxLength() >= expectedLength;
+        }
+        return !baseType.equals("VARCHAR") || info.getMaxLength() >= Integer.MAX_VALUE;
     }
 
     @Override
     public void createSchema(final CreateSchemaRequest request) throws PersistenceException {
         try (final Statement stmt = connections.get().createStatement()) {
+            // When starting from scratch, pretend the database is empty so that anything in the way causes an error
+            final H2Catalog existing = request.isOpenExisting() ? H2Catalog.read(connections.get()) : null;
             for (final TableDef table : request.getTables()) {
-                createTable(stmt, table);
+                final boolean tableExists = existing != null && existing.hasTable(table.getTableName());
+                if (table.hasSurrogateKey() && (existing == null || !existing.hasSequence(getSequenceName(table)))) {
+                    if (tableExists) {
+                        adoptTable(stmt, table);
+                    } else {
+                        createSequence(stmt, table, 1);
+                    }
+                }
+                if (tableExists) {
+                    logger.info("keeping existing table " + table.getTableName());
+                } else {
+                    createTable(stmt, table);
+                }
+                tableSql.put(table, new TableSql(table));
+                if (!tableExists && !table.getFixedRows().isEmpty()) {
+                    insertFixedRows(table);
+                }
+                // Upserts look rows up by value, so tables with surrogate keys need their indexes during the load.
+                // Nothing looks up the others until the load is done.
+                final boolean deferIndexes = bulkLoad && !table.hasSurrogateKey();
                 for (final ColumnDef col : table.getValueColumns()) {
                     if (!col.needsIndex()) {
                         logger.warning("creating index on " + col.getColumnName() + " anyway");
 
                     }
                     final boolean useHashIndex = col.getType() == ColumnType.FOREIGN_KEY;
-                    createIndex(stmt, table, col.getColumnName(), useHashIndex);
+                    if (existing != null && existing.hasIndex(getIndexName(table, col.getColumnName()))) {
+                        continue;
+                    }
+                    if (deferIndexes) {
+                        deferIndex(table, col.getColumnName(), useHashIndex);
+                    } else {
+                        createIndex(stmt, table, col.getColumnName(), useHashIndex);
+                    }
+                }
+                // the digest or a natural key narrower than the row is how dimensions are looked up, and it has to
+                // stay unique
+                if (table.getDigestColumnName() != null) {
+                    if (existing == null || !existing.hasIndex(getIndexName(table, table.getDigestColumnName()))) {
+                        createDigestIndex(stmt, table);
+                    }
+                } else if (table.hasSurrogateKey() && table.getNaturalKeyColumns().size() < table.getValueColumns().size() &&
+                        (existing == null || !existing.hasIndex(getIndexName(table, NATURAL_KEY_INDEX)))) {
+                    createNaturalKeyIndex(stmt, table);
                 }
-                if (table.getTableName().endsWith("_FACT")) { //FIXME
+                if (table.getTableName().endsWith("_FACT") && (existing == null || !existing.hasView(table.getName()))) { //FIXME
                     createView(stmt, table);
                 }
             }
@@ -75,17 +295,29 @@ public class H2PersistenceProvider implements PersistenceProvider {
     }
 
     @Override
-    public SurrogateKey insert(final InsertMode mode, final TableDef table, final Row values) {
+    public SurrogateKey update(final UpdateRequest request) {
+        if (singleWriter != null) return singleWriter.handOff(request);
+        return execute(request);
+    }
+
+    private SurrogateKey execute(final UpdateRequest request) {
+        final TableDef table = request.getTableDef();
+        final Row row = request.getRow();
         try {
-            switch (mode) {
+            switch (request.getMode()) {
                 case INSERT:
-                case INSERT_ANONYMOUS:
-                    return insert(table, values);
+                    final SurrogateKey key = insert(table, row);
+                    return request.isReturnValueRequired() ? key : null;
                 case UPSERT:
-                case UPSERT_ANONYMOUS:
-                    return upsert(table, values);
+                case MERGE:
+                    if (request.isReturnValueRequired()) {
+                        return upsert(table, row);
+                    } else {
+                        blindMerge(table, row);
+                        return null;
+                    }
                 default:
-                    throw new IllegalStateException("bad mode " + mode);
+                    throw new IllegalStateException("bad mode " + request.getMode());
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
@@ -93,11 +325,164 @@ public class H2PersistenceProvider implements PersistenceProvider {
         }
     }
 
+    /**
+     * Stages the rows in a temporary table, merges them all into the table with one statement and reads all of their
+     * keys back with another, joining on the natural key or digest.  Small batches, tables whose natural key can be
+     * NULL and the single writer, which has to see every update on its own, get the default row-at-a-time upserts.
+     */
+    @Override
+    public List<SurrogateKey> upsertBatch(final UpsertBatchRequest request) {
+        final TableDef table = request.getTableDef();
+        if (singleWriter != null || request.getRows().size() < MIN_STAGED_UPSERT_ROWS || !getTableSql(table).isMergeNullSafe()) {
+            return PersistenceProvider.super.upsertBatch(request);
+        }
+        try {
+            return stagedUpsert(table, request.getRows());
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private List<SurrogateKey> stagedUpsert(final TableDef table, final List<? extends Row> rows) throws SQLException {
+        final Map<Object, Row> pending = batchedRows.get(table);
+        if (pending != null && !pending.isEmpty()) flushBatches(table); // the merge has to see them
+        final TableSql tableSql = getTableSql(table);
+        connections.createTemporaryTable(tableSql.getStageTableName(), buildCreateStageTableSql(table, tableSql.getStageTableName()));
+        connections.prepare("DELETE FROM " + tableSql.getStageTableName()).executeUpdate();
+        for (int first = 0; first < rows.size(); first += TableSql.STAGE_INSERT_ROWS) {
+            final int count = Math.min(TableSql.STAGE_INSERT_ROWS, rows.size() - first);
+            final PreparedStatement stage = connections.prepare(tableSql.getStageInsertSql(table, count));
+            int paramIndex = 1;
+            for (int i = first; i < first + count; i++) {
+                final Row row = rows.get(i);
+                stage.setInt(paramIndex++, i);
+                paramIndex = tableSql.getValueBinder().bind(stage, paramIndex, row);
+                if (table.getDigestColumnName() != null) {
+                    stage.setBytes(paramIndex++, getDigest(table, row));
+                }
+            }
+            stage.executeUpdate();
+        }
+        logger.fine(() -> "executing staged merge: " + tableSql.getMergeFromStageSql());
+        connections.prepare(tableSql.getMergeFromStageSql()).executeUpdate();
+        final SurrogateKey[] out = new SurrogateKey[rows.size()];
+        try (final ResultSet rs = connections.prepare(tableSql.getSelectStagedKeysSql()).executeQuery()) {
+            while (rs.next()) {
+                out[rs.getInt(1)] = new LongSurrogateKey(rs.getLong(2));
+            }
+        }
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == null) {
+                throw new IllegalStateException("no key found for staged row " + i + " of " + table.getTableName());
+            }
+        }
+        return Arrays.asList(out);
+    }
+
+    @Override
+    public void flush() throws PersistenceException {
+        try {
+            if (singleWriter != null) {
+                singleWriter.flush();
+            } else {
+                flushBatches();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public boolean supportsScanKeys() {
+        return true;
+    }
+
+    /**
+     * Runs on the calling thread's connection, so scanning tables from separate threads scans them in parallel.
+     */
+    @Override
+    public void scanKeys(final ScanKeysRequest request) throws PersistenceException {
+        final TableDef table = request.getTableDef();
+        if (!table.hasSurrogateKey()) {
+            throw new IllegalArgumentException(table.getTableName() + " does not have a surrogate key");
+        }
+        final List<ColumnDef> columns = table.getValueColumns();
+        final String sql = getTableSql(table).getScanKeysSql();
+        logger.info(() -> "scanning keys: " + sql);
+        try (final PreparedStatement stmt = connections.get().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(request.getFetchSize());
+            try (final ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    final Object[] values = new Object[columns.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = readValue(rs, i + 2, columns.get(i));
+                    }
+                    if (!request.accept(values, new LongSurrogateKey(rs.getLong(1)))) break;
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    /**
+     * @return the column's value as the Java type that its ColumnType calls for, which is what rows hold.
+     */
+    private static Object readValue(final ResultSet rs, final int index, final ColumnDef col) throws SQLException {
+        final Object out;
+        switch (col.getType()) {
+            case INTEGER:
+                out = rs.getInt(index);
+                break;
+            case LONG:
+                out = rs.getLong(index);
+                break;
+            case DOUBLE:
+                out = rs.getDouble(index);
+                break;
+            case BOOLEAN:
+                out = rs.getBoolean(index);
+                break;
+            case DATE: {
+                final Timestamp ts = rs.getTimestamp(index);
+                out = ts == null ? null : new java.sql.Date(ts.getTime());
+                break;
+            }
+            case TIMESTAMP:
+                out = rs.getTimestamp(index);
+                break;
+            case STRING:
+                out = rs.getString(index);
+                break;
+            case SURROGATE_KEY:
+            case FOREIGN_KEY:
+                out = new LongSurrogateKey(rs.getLong(index));
+                break;
+            default:
+                throw new IllegalArgumentException("invalid type " + col.getType());
+        }
+        return rs.wasNull() ? null : out;
+    }
+
     @Override
     public synchronized void close() throws IOException {
         try {
-            logger.info("H2 shutdown: Flushing batched inserts");
+            if (singleWriter != null) {
+                logger.info("H2 shutdown: Waiting for the writer to finish");
+                singleWriter.close();
+            }
+            logger.info("H2 shutdown: Flushing batched inserts and merges");
             flushBatches();
+            if (bulkLoad) {
+                logger.info("H2 shutdown: Finishing bulk load");
+                createDeferredIndexes();
+                try (final Statement stmt = connections.get().createStatement()) {
+                    for (final String sql : BULK_LOAD_RESTORE_SQL) {
+                        stmt.execute(sql);
+                    }
+                }
+            }
             logger.info("H2 shutdown: Executing SHUTDOWN DEFRAG");
             try (final Statement stmt = connections.get().createStatement()) {
                 stmt.execute("SHUTDOWN DEFRAG");
@@ -111,63 +496,83 @@ public class H2PersistenceProvider implements PersistenceProvider {
     }
 
     private SurrogateKey upsert(final TableDef table, final Row values) throws SQLException {
-        final StringBuilder sql = new StringBuilder();
-        sql.append("MERGE INTO ");
-        sql.append(table.getTableName());
-        sql.append(" (");
-        for (final ColumnDef col : table.getValueColumns()) {
-            sql.append(col.getColumnName());
-            sql.append(",");
+        final Row batchedRow = getBatchedRow(table, values);
+        if (batchedRow != null) {
+            if (batchedRow.getKey() != null && batchedRow.equals(values)) return batchedRow.getKey();
+            flushBatches(table); // so that it can be found, and this goes in after it
         }
-        sql.append(") KEY (");
-        for (final ColumnDef col : table.getValueColumns()) {
-            sql.append(col.getColumnName());
-            sql.append(",");
+        if (!getTableSql(table).isMergeNullSafe()) {
+            return updateOrInsert(table, values) ? querySurrogateKey(table, values) : values.getKey();
         }
-        sql.append(") VALUES (");
-        for (final ColumnDef col : table.getValueColumns()) {
-            sql.append("?, ");
+        final String sql = getTableSql(table).getMergeSql();
+        final PreparedStatement stmt = connections.prepare(sql);
+        logger.fine(() -> "executing merge: " + sql);
+        bindRow(stmt, table, values, false);
+        stmt.executeUpdate();
+        return querySurrogateKey(table, values);
+    }
+
+    /**
+     * Merges a row whose key nobody needs.  This doesn't need to read anything back, so it can be batched.
+     */
+    private void blindMerge(final TableDef table, final Row values) throws SQLException {
+        final Row batchedRow = table.hasSurrogateKey() ? getBatchedRow(table, values) : null;
+        if (batchedRow != null) {
+            if (batchedRow.equals(values)) return; // it's already on its way in
+            flushBatches(table); // so that this goes in after it
         }
-        sql.append(")");
-        try (final PreparedStatement stmt = connections.get().prepareStatement(sql.toString())) {
-            logger.fine("executing merge: " + sql);
-            int paramIndex = 1;
-            for (final ColumnDef col : table.getValueColumns()) {
-                stmt.setObject(paramIndex++, prepareValue(col, values.getValue(col)));
-            }
-            stmt.executeUpdate();
-            if (table.hasSurrogateKey()) { //FIXME need a 'blindInsert' method
-                return querySurrogateKey(table, values);
-            } else {
-                return null;
+        if (!getTableSql(table).isMergeNullSafe()) {
+            updateOrInsert(table, values);
+            return;
+        }
+        if (this.batchSize > 1) {
+            batchMerge(table, values);
+            return;
+        }
+        final String sql = getTableSql(table).getMergeSql();
+        final PreparedStatement stmt = connections.prepare(sql);
+        logger.fine(() -> "executing merge: " + sql);
+        bindRow(stmt, table, values, false);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Stands in for MERGE on tables with nullable natural key columns.  Inserts go through insert(), so they get keys
+     * and may be batched like any other.
+     *
+     * @return true if the row was already there and has been updated, false if it was inserted.
+     */
+    private boolean updateOrInsert(final TableDef table, final Row values) throws SQLException {
+        if (!table.hasSurrogateKey()) {
+            // no batchedRows to find them by, but this thread's own inserts at least have to be visible
+            final Batches batches = threadBatches.get();
+            synchronized (batches) {
+                final List<Row> rowsToInsert = batches.inserts.removeAll(table);
+                if (!rowsToInsert.isEmpty()) doBatch(table, rowsToInsert);
             }
         }
+        final TableSql tableSql = getTableSql(table);
+        final String sql = tableSql.getUpdateSql();
+        final PreparedStatement stmt = connections.prepare(sql);
+        logger.fine(() -> "executing update: " + sql);
+        tableSql.getNaturalKeyBinder().bind(stmt, tableSql.getValueBinder().bind(stmt, 1, values), values);
+        if (stmt.executeUpdate() > 0) return true;
+        insert(table, values);
+        return false;
     }
 
     private SurrogateKey querySurrogateKey(final TableDef table, final Row values) throws SQLException {
         if (!table.hasSurrogateKey()) {
             throw new IllegalArgumentException(table.getTableName() + " does not have a surrogate key");
         }
-        final StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ");
-        sql.append(table.getSurrogateKeyColumnName());
-        sql.append(" FROM ");
-        sql.append(table.getTableName());
-        sql.append(" WHERE ");
-        {
-            int paramIndex = 1;
-            for (final ColumnDef col : table.getValueColumns()) {
-                if (paramIndex++ > 1) sql.append(" AND ");
-                sql.append(col.getColumnName());
-                sql.append(" = ?");
-            }
+        final String sql = getTableSql(table).getSelectKeySql();
+        final PreparedStatement stmt = connections.prepare(sql);
+        if (table.getDigestColumnName() != null) {
+            stmt.setBytes(1, getDigest(table, values));
+        } else {
+            getTableSql(table).getNaturalKeyBinder().bind(stmt, 1, values);
         }
-        try (final PreparedStatement stmt = connections.get().prepareStatement(sql.toString())) {
-            int paramIndex = 1;
-            for (final ColumnDef col : table.getValueColumns()) {
-                stmt.setObject(paramIndex++, prepareValue(col, values.getValue(col)));
-            }
-            final ResultSet rs = stmt.executeQuery();
+        try (final ResultSet rs = stmt.executeQuery()) {
             if (!rs.next()) {
                 throw new IllegalStateException("no next row after executing query " + sql);
             }
@@ -175,91 +580,194 @@ public class H2PersistenceProvider implements PersistenceProvider {
         }
     }
 
-    private Object prepareValue(final ColumnDef col, final Object value) {
-        if (value instanceof LongSurrogateKey) {
-            return ((LongSurrogateKey) value).getKeyValue();
-        } else if (value instanceof String) {
-            if (((String) value).length() > 254) {
-                return ((String) value).substring(0, 255);
-            }
+    private SurrogateKey insert(TableDef table, Row values) throws SQLException {
+        if (table.hasSurrogateKey() && values.getKey() == null) {
+            values.setKey(new LongSurrogateKey(getKeyAllocator(table).next()));
         }
-        return value;
+        if (this.batchSize > 1) {
+            batchInsert(table, values);
+            return values.getKey();
+        }
+        final String sql = getTableSql(table).getInsertSql();
+        final PreparedStatement stmt = connections.prepare(sql);
+        logger.fine(() -> "executing insert: " + sql);
+        bindRow(stmt, table, values, true);
+        stmt.executeUpdate();
+        return values.getKey();
     }
 
-    private SurrogateKey insert(TableDef table, Row values) throws SQLException {
-        if (this.batchSize > 1 && !table.hasSurrogateKey()) {
-            batchInsert(table, values);
-            return null;
+    /**
+     * Binds the surrogate key, if requested and the table has one, followed by the value columns and the digest, if
+     * the table has one.
+     */
+    private void bindRow(final PreparedStatement stmt, final TableDef table, final Row row, final boolean includeKey) throws SQLException {
+        int paramIndex = 1;
+        if (includeKey && table.hasSurrogateKey()) {
+            stmt.setLong(paramIndex++, ((LongSurrogateKey) row.getKey()).getKeyValue());
         }
-        final String sql = buildInsertSql(table);
-        try (final PreparedStatement stmt = connections.get().prepareStatement(sql)) {
-            logger.fine("executing merge: " + sql);
-            int paramIndex = 1;
-            for (final ColumnDef col : table.getValueColumns()) {
-                stmt.setObject(paramIndex++, prepareValue(col, values.getValue(col)));
-            }
-            stmt.executeUpdate();
-            if (table.hasSurrogateKey()) {
-                return querySurrogateKey(table, values);
-            } else {
-                return null;
+        paramIndex = getTableSql(table).getValueBinder().bind(stmt, paramIndex, row);
+        if (table.getDigestColumnName() != null) {
+            stmt.setBytes(paramIndex, getDigest(table, row));
+        }
+    }
+
+    private static byte[] getDigest(final TableDef table, final Row row) {
+        final byte[] out = row.getNaturalKeyDigest();
+        if (out == null) {
+            throw new IllegalStateException("no digest for a row of " + table.getTableName());
+        }
+        return out;
+    }
+
+    private void batchInsert(TableDef table, Row row) throws SQLException {
+        if (table.hasSurrogateKey()) {
+            batchedRows.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(getNaturalKey(table, row), row);
+        }
+        final Batches batches = threadBatches.get();
+        synchronized (batches) {
+            batches.inserts.put(table, row);
+            if (batches.inserts.get(table).size() < batchSize) return;
+            logger.info(() -> {
+                return "==== Executing batch insert on " + table.getTableName();
+            });
+            doBatch(table, batches.inserts.removeAll(table));
+        }
+    }
+
+    private void batchMerge(TableDef table, Row row) throws SQLException {
+        if (table.hasSurrogateKey()) {
+            batchedRows.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(getNaturalKey(table, row), row);
+        }
+        final Batches batches = threadBatches.get();
+        synchronized (batches) {
+            batches.merges.put(table, row);
+            if (batches.merges.get(table).size() < batchSize) return;
+            logger.info(() -> {
+                return "==== Executing batch merge on " + table.getTableName();
+            });
+            // inserts that this thread requested before these merges need to go in first
+            final List<Row> rowsToInsert = batches.inserts.removeAll(table);
+            if (!rowsToInsert.isEmpty()) {
+                doBatch(table, rowsToInsert);
             }
+            doMergeBatch(table, batches.merges.removeAll(table));
         }
     }
 
+    /**
+     * @return the row with the same natural key that's waiting in some thread's batches, or null.
+     */
+    private Row getBatchedRow(TableDef table, Row row) {
+        final Map<Object, Row> rows = batchedRows.get(table);
+        return rows == null ? null : rows.get(getNaturalKey(table, row));
+    }
 
-    private String buildInsertSql(TableDef table) {
-        final StringBuilder sql = new StringBuilder();
-        sql.append("INSERT INTO ");
-        sql.append(table.getTableName());
-        sql.append(" (");
-        for (final ColumnDef col : table.getValueColumns()) {
-            sql.append(col.getColumnName());
-            sql.append(",");
+    /**
+     * @return something that's equal for rows with the same natural key.
+     */
+    private static Object getNaturalKey(TableDef table, Row row) {
+        if (table.getDigestColumnName() != null) return ByteBuffer.wrap(getDigest(table, row));
+        final List<ColumnDef> columns = table.getNaturalKeyColumns();
+        if (columns.size() == table.getValueColumns().size()) return row;
+        final List<Object> out = new ArrayList<>(columns.size());
+        for (final ColumnDef col : columns) {
+            out.add(row.getValue(col));
         }
-        sql.append(") VALUES (");
-        for (final ColumnDef col : table.getValueColumns()) {
-            sql.append("?, ");
+        return out;
+    }
+
+    /**
+     * Writes out every thread's batches for the table on the calling thread's connection: the inserts, then the
+     * merges.
+     */
+    private void flushBatches(TableDef table) throws SQLException {
+        for (final Batches batches : allBatches) {
+            synchronized (batches) {
+                final List<Row> rowsToInsert = batches.inserts.removeAll(table);
+                if (!rowsToInsert.isEmpty()) doBatch(table, rowsToInsert);
+            }
+        }
+        for (final Batches batches : allBatches) {
+            synchronized (batches) {
+                final List<Row> rowsToMerge = batches.merges.removeAll(table);
+                if (!rowsToMerge.isEmpty()) doMergeBatch(table, rowsToMerge);
+            }
         }
-        sql.append(")");
-        return sql.toString();
     }
 
-    private synchronized void batchInsert(TableDef table, Row row) throws SQLException {
-        batchedRows.put(table, row);
-        if (batchedRows.get(table).size() < batchSize) return;
-        logger.info(() -> {
-            return "==== Executing batch insert on " + table.getTableName();
-        });
-        final List<Row> rowsToInsert = batchedRows.removeAll(table);
-        doBatch(table, rowsToInsert);
+    private void doBatch(TableDef table, List<Row> rowsToInsert) throws SQLException {
+        final PreparedStatement stmt = connections.prepare(getTableSql(table).getInsertSql());
+        for (final Row rowToInsert : rowsToInsert) {
+            bindRow(stmt, table, rowToInsert, true);
+            stmt.addBatch();
+            stmt.clearParameters();
+        }
+        stmt.executeBatch();
+        forgetBatchedRows(table, rowsToInsert);
     }
 
-    private synchronized void doBatch(TableDef table, List<Row> rowsToInsert) throws SQLException {
-        final String sql = buildInsertSql(table);
-        try (final PreparedStatement stmt = connections.get().prepareStatement(sql)) {
-            for (final Row rowToInsert : rowsToInsert) {
-                int paramIndex = 1;
-                for (final ColumnDef col : table.getValueColumns()) {
-                    stmt.setObject(paramIndex++, prepareValue(col, rowToInsert.getValue(col)));
-                }
-                stmt.addBatch();
-                stmt.clearParameters();
+    /**
+     * Now that the rows can be found in the table, stop vouching for them.  Other threads' rows stay.
+     */
+    private void forgetBatchedRows(TableDef table, List<Row> writtenRows) {
+        final Map<Object, Row> rows = batchedRows.get(table);
+        if (rows != null) {
+            for (final Row writtenRow : writtenRows) {
+                rows.remove(getNaturalKey(table, writtenRow), writtenRow);
             }
-            stmt.executeBatch();
         }
     }
 
-    private synchronized void flushBatches() throws SQLException {
-        for (TableDef table : this.batchedRows.keySet()) {
-            logger.info("Flushing batched inserts to " + table.getTableName());
-            List<Row> remainingRows = this.batchedRows.removeAll(table);
-            if (remainingRows != null) {
-                doBatch(table, remainingRows);
+    private void doMergeBatch(TableDef table, List<Row> rowsToMerge) throws SQLException {
+        final PreparedStatement stmt = connections.prepare(getTableSql(table).getMergeSql());
+        for (final Row rowToMerge : rowsToMerge) {
+            bindRow(stmt, table, rowToMerge, false);
+            stmt.addBatch();
+            stmt.clearParameters();
+        }
+        stmt.executeBatch();
+        forgetBatchedRows(table, rowsToMerge);
+    }
+
+    /**
+     * Writes out every thread's batches on the calling thread's connection: all of the inserts, then all of the merges.
+     */
+    private void flushBatches() throws SQLException {
+        for (final Batches batches : allBatches) {
+            synchronized (batches) {
+                for (TableDef table : new ArrayList<>(batches.inserts.keySet())) {
+                    logger.info("Flushing batched inserts to " + table.getTableName());
+                    doBatch(table, batches.inserts.removeAll(table));
+                }
+            }
+        }
+        for (final Batches batches : allBatches) {
+            synchronized (batches) {
+                for (TableDef table : new ArrayList<>(batches.merges.keySet())) {
+                    logger.info("Flushing batched merges to " + table.getTableName());
+                    doMergeBatch(table, batches.merges.removeAll(table));
+                }
             }
         }
     }
 
+    private Batches newBatches() {
+        final Batches out = new Batches();
+        allBatches.add(out);
+        return out;
+    }
+
+    /**
+     * The SQL is normally built by createSchema; tables that we didn't create get theirs built on first use.
+     */
+    private TableSql getTableSql(final TableDef table) {
+        return tableSql.computeIfAbsent(table, TableSql::new);
+    }
+
+    private KeyAllocator getKeyAllocator(final TableDef table) {
+        return keyAllocators.computeIfAbsent(table, t -> new KeyAllocator(getSequenceName(t), keyBlockSize));
+    }
+
     private void createView(final Statement stmt, final TableDef table) throws SQLException {
         final String sql = buildCreateViewSql(table);
         logger.info("creating view: " + sql);
@@ -320,12 +828,80 @@ public class H2PersistenceProvider implements PersistenceProvider {
     }
 
 
+    private static String getSequenceName(final TableDef table) {
+        return table.getTableName() + "_SEQ";
+    }
+
+    private void createSequence(final Statement stmt, final TableDef table, final long startWith) throws SQLException {
+        final String sql = "CREATE SEQUENCE " + getSequenceName(table) + " START WITH " + startWith;
+        logger.info("creating sequence for " + table.getTableName() + ": " + sql);
+        stmt.executeUpdate(sql);
+    }
+
+    /**
+     * Brings an existing table that has no key sequence (e.g., one created with AUTO_INCREMENT keys) in line with what
+     * createTable would have made: a sequence starting after its highest key, used as the key column's default.
+     */
+    private void adoptTable(final Statement stmt, final TableDef table) throws SQLException {
+        long maxKey = 0;
+        try (final ResultSet rs = stmt.executeQuery("SELECT MAX(" + table.getSurrogateKeyColumnName() + ") FROM " + table.getTableName())) {
+            if (rs.next()) maxKey = rs.getLong(1);
+        }
+        createSequence(stmt, table, maxKey + 1);
+        final String sql = "ALTER TABLE " + table.getTableName() + " ALTER COLUMN " + table.getSurrogateKeyColumnName() +
+                " SET DEFAULT NEXT VALUE FOR " + getSequenceName(table);
+        logger.info("adopting existing table " + table.getTableName() + ": " + sql);
+        stmt.executeUpdate(sql);
+    }
+
+    /**
+     * Runs before the table's indexes are created, so they're built once over all the rows.
+     */
+    private void insertFixedRows(final TableDef table) throws SQLException {
+        final List<? extends Row> rows = table.getFixedRows();
+        logger.info("inserting " + rows.size() + " fixed rows into " + table.getTableName());
+        final PreparedStatement stmt = connections.prepare(getTableSql(table).getInsertSql());
+        for (int i = 0; i < rows.size(); i++) {
+            bindRow(stmt, table, rows.get(i), true);
+            stmt.addBatch();
+            if ((i + 1) % FIXED_ROWS_BATCH_SIZE == 0 || i == rows.size() - 1) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
     private void createTable(Statement stmt, TableDef table) throws SQLException {
         final String sql = buildCreateTableSql(table);
         logger.info("creating table " + table.getTableName() + ": " + sql);
         stmt.executeUpdate(sql);
     }
 
+    /**
+     * The stage table is LOCAL TEMPORARY, so each connection has its own and it goes away with the connection.
+     */
+    private String buildCreateStageTableSql(final TableDef table, final String stageTableName) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS ");
+        sb.append(stageTableName);
+        sb.append("(");
+        sb.append(TableSql.STAGE_ORDINAL_COLUMN);
+        sb.append(" INT NOT NULL");
+        for (final ColumnDef column : table.getValueColumns()) {
+            sb.append(", ");
+            sb.append(column.getColumnName());
+            sb.append(" ");
+            sb.append(getTypeForColumn(table, column));
+        }
+        if (table.getDigestColumnName() != null) {
+            sb.append(", ");
+            sb.append(table.getDigestColumnName());
+            sb.append(" ");
+            sb.append(DIGEST_TYPE);
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
     private String buildCreateTableSql(final TableDef table) {
         final StringBuilder sb = new StringBuilder();
         sb.append("CREATE TABLE ");
@@ -336,7 +912,10 @@ public class H2PersistenceProvider implements PersistenceProvider {
             sb.append(table.getSurrogateKeyColumnName());
             sb.append(" ");
             sb.append(SURROGATE_KEY_TYPE);
-            sb.append(" AUTO_INCREMENT PRIMARY KEY HASH ");
+            // Rows inserted by MERGE get their key from the same sequence that KeyAllocator draws from
+            sb.append(" DEFAULT NEXT VALUE FOR ");
+            sb.append(getSequenceName(table));
+            sb.append(" NOT NULL PRIMARY KEY HASH ");
             index++;
         }
         for (final ColumnDef column : table.getValueColumns()) {
@@ -348,6 +927,13 @@ public class H2PersistenceProvider implements PersistenceProvider {
                 sb.append(" NOT NULL");
             }
         }
+        if (table.getDigestColumnName() != null) {
+            sb.append(", ");
+            sb.append(table.getDigestColumnName());
+            sb.append(" ");
+            sb.append(DIGEST_TYPE);
+            sb.append(" NOT NULL");
+        }
         sb.append(")");
         return sb.toString();
     }
@@ -359,9 +945,87 @@ public class H2PersistenceProvider implements PersistenceProvider {
         stmt.executeUpdate(indexSql);
     }
 
+    private void createNaturalKeyIndex(final Statement stmt, final TableDef table) throws SQLException {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("CREATE UNIQUE INDEX ");
+        sb.append(getIndexName(table, NATURAL_KEY_INDEX));
+        sb.append(" ON ");
+        sb.append(table.getTableName());
+        sb.append("(");
+        int i = 0;
+        for (final ColumnDef col : table.getNaturalKeyColumns()) {
+            if (i++ > 0) sb.append(", ");
+            sb.append(col.getColumnName());
+        }
+        sb.append(")");
+        final String indexSql = sb.toString();
+        logger.info("creating natural key index for " + table.getTableName() + ": " + indexSql);
+        stmt.executeUpdate(indexSql);
+    }
+
+    private void createDigestIndex(final Statement stmt, final TableDef table) throws SQLException {
+        final String columnName = table.getDigestColumnName();
+        final String indexSql = "CREATE UNIQUE HASH INDEX " + getIndexName(table, columnName) + " ON " +
+                table.getTableName() + "(" + columnName + ")";
+        logger.info("creating digest index for " + table.getTableName() + ": " + indexSql);
+        stmt.executeUpdate(indexSql);
+    }
+
+    private void deferIndex(final TableDef table, final String columnName, boolean hashIndex) {
+        final String indexSql = buildCreateIndexSql(table, columnName, hashIndex);
+        logger.info("deferring index for " + table.getTableName() + "." + columnName + " until after the load");
+        synchronized (deferredIndexSql) {
+            deferredIndexSql.add(indexSql);
+        }
+    }
+
+    /**
+     * Builds the indexes that bulk-load mode put off, each on its own connection so that H2 can build them in parallel
+     * if the database allows it (MULTI_THREADED).
+     */
+    private void createDeferredIndexes() throws SQLException {
+        final List<String> indexSql;
+        synchronized (deferredIndexSql) {
+            indexSql = new ArrayList<>(deferredIndexSql);
+            deferredIndexSql.clear();
+        }
+        if (indexSql.isEmpty()) return;
+        final int threads = Math.min(indexSql.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(indexSql.size());
+            for (final String sql : indexSql) {
+                futures.add(executor.submit(() -> {
+                    try (final Statement stmt = connections.get().createStatement()) {
+                        logger.info("creating deferred index: " + sql);
+                        stmt.executeUpdate(sql);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), SQLException.class);
+                    throw new SQLException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException(e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String getIndexName(final TableDef table, final String columnName) {
+        return table.getTableName() + "__" + columnName + "__INDEX";
+    }
+
     private String buildCreateIndexSql(final TableDef table, final String columnName, boolean hashIndex) {
         final StringBuilder sb = new StringBuilder();
-        final String indexName = table.getTableName() + "__" + columnName + "__INDEX";
+        final String indexName = getIndexName(table, columnName);
         sb.append("CREATE ");
         if (hashIndex) sb.append("HASH ");
         sb.append("INDEX " + indexName);
@@ -385,7 +1049,8 @@ public class H2PersistenceProvider implements PersistenceProvider {
             case TIMESTAMP:
                 return "TIMESTAMP"; //??
             case STRING:
-                return "VARCHAR(255)"; //FIXME
+                // H2's VARCHAR without a length is as long as a VARCHAR can be
+                return column.getMaxLength() == Integer.MAX_VALUE ? "VARCHAR" : "VARCHAR(" + column.getMaxLength() + ")";
             case SURROGATE_KEY:
             case FOREIGN_KEY:
                 return SURROGATE_KEY_TYPE;
@@ -394,47 +1059,332 @@ public class H2PersistenceProvider implements PersistenceProvider {
         }
     }
 
+    /**
+     * One thread's rows waiting to be written.  Only the owning thread touches them until close() drains them, so the
+     * lock on them is uncontended during the load.
+     */
+    private static class Batches {
+        final ListMultimap<TableDef, Row> inserts = ArrayListMultimap.create();
+        final ListMultimap<TableDef, Row> merges = ArrayListMultimap.create();
+    }
+
+    /**
+     * Hands out surrogate keys for a table from blocks reserved from its sequence.  A whole block is reserved in one
+     * round trip, so new rows can be assigned their key without going to the database and then inserted in
+     * batches.  Because every key (including those assigned by the column default) comes from the same sequence,
+     * they can't collide.
+     */
+    private class KeyAllocator {
+
+        private final String sql;
+        private final long[] block;
+        private int nextIndex;
+        private int blockLength;
+
+        KeyAllocator(String sequenceName, int blockSize) {
+            this.sql = "SELECT NEXT VALUE FOR " + requireNonNull(sequenceName) + " FROM SYSTEM_RANGE(1, " + blockSize + ")";
+            this.block = new long[blockSize];
+        }
+
+        synchronized long next() throws SQLException {
+            if (nextIndex == blockLength) {
+                try (final ResultSet rs = connections.prepare(sql).executeQuery()) {
+                    blockLength = 0;
+                    while (rs.next() && blockLength < block.length) {
+                        block[blockLength++] = rs.getLong(1);
+                    }
+                }
+                if (blockLength == 0) throw new IllegalStateException("no keys returned by " + sql);
+                nextIndex = 0;
+            }
+            return block[nextIndex++];
+        }
+    }
+
+    /**
+     * Owns the only connection that writes.  Loader threads hand their updates over through a HandoffQueue and, unless
+     * they need a key that only the database knows, go straight back to building rows; new rows' keys come from the
+     * KeyAllocator on the loader's thread, so inserts don't have to wait.  The writer runs the updates in the order
+     * they were queued, through the same code as any other thread, so it batches per table just the same, and it
+     * commits every commitRows updates and whenever it runs out of work.
+     *
+     * An update that fails after its loader has moved on can only be reported later: by the next update() from any
+     * thread, and by close().
+     */
+    private class SingleWriter implements Runnable {
+
+        private final HandoffQueue<Handoff> queue;
+        private final int commitRows;
+        private final Thread thread;
+        private volatile Throwable failure;
+
+        SingleWriter(final HandoffQueue<Handoff> queue, final int commitRows) {
+            if (commitRows < 1) throw new IllegalArgumentException("invalid commitRows " + commitRows);
+            this.queue = requireNonNull(queue);
+            this.commitRows = commitRows;
+            this.thread = new Thread(this, "ginsu-h2-writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        SurrogateKey handOff(final UpdateRequest request) {
+            checkFailure();
+            final TableDef table = request.getTableDef();
+            final Row row = request.getRow();
+            final boolean isInsert = request.getMode() == UpdateRequest.Mode.INSERT;
+            final CompletableFuture<SurrogateKey> result = request.isReturnValueRequired() && !isInsert ?
+                    new CompletableFuture<>() : null;
+            try {
+                if (isInsert && table.hasSurrogateKey() && row.getKey() == null) {
+                    row.setKey(new LongSurrogateKey(getKeyAllocator(table).next()));
+                }
+                queue.put(new Handoff(request, result));
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+                throw Throwables.propagate(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted handing off an update", e);
+            }
+            if (result == null) return request.isReturnValueRequired() ? row.getKey() : null;
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+        }
+
+        /**
+         * Has the writer write out its batches and commit, once it's done everything queued before this.
+         */
+        void flush() throws PersistenceException {
+            checkFailure();
+            final CompletableFuture<SurrogateKey> done = new CompletableFuture<>();
+            try {
+                queue.put(new Handoff(null, done));
+                done.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PersistenceException(e);
+            } catch (CompletionException e) {
+                throw new PersistenceException(e.getCause());
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean stopped = false;
+            try {
+                connections.get().setAutoCommit(false);
+                int uncommitted = 0;
+                while (true) {
+                    Handoff next = queue.poll();
+                    if (next == null) {
+                        if (uncommitted > 0) {
+                            commit();
+                            uncommitted = 0;
+                        }
+                        next = queue.take();
+                    }
+                    if (next == Handoff.STOP) {
+                        stopped = true;
+                        break;
+                    }
+                    try {
+                        if (next.request == null) { // flush()
+                            flushBatches();
+                            commit();
+                            uncommitted = 0;
+                            next.result.complete(null);
+                            continue;
+                        }
+                        final SurrogateKey key = execute(next.request);
+                        if (next.result != null) next.result.complete(key);
+                    } catch (Throwable t) {
+                        if (next.result != null) {
+                            next.result.completeExceptionally(t);
+                        } else if (failure == null) {
+                            failure = t;
+                        }
+                    }
+                    if (++uncommitted >= commitRows) {
+                        commit();
+                        uncommitted = 0;
+                    }
+                }
+                flushBatches();
+                commit();
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+                logger.log(Level.SEVERE, "single writer failed", t);
+                if (!stopped) drain();
+            }
+        }
+
+        /**
+         * Stops the writer once it has written everything that's been handed to it.
+         */
+        void close() throws IOException {
+            try {
+                queue.put(Handoff.STOP);
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for the writer");
+            }
+            if (failure != null) throw new IOException("single writer failed", failure);
+        }
+
+        private void checkFailure() {
+            final Throwable t = failure;
+            if (t != null) throw new IllegalStateException("single writer failed", t);
+        }
+
+        private void commit() throws SQLException {
+            connections.get().commit();
+        }
+
+        /**
+         * Keeps the queue moving after the writer has failed, so that nobody waits on it forever.
+         */
+        private void drain() {
+            try {
+                for (Handoff next = queue.take(); next != Handoff.STOP; next = queue.take()) {
+                    if (next.result != null) next.result.completeExceptionally(failure);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * An update for the writer to run, with somewhere to put the key if the loader is waiting for it.  With no update,
+     * it's a flush() to run, or if there's nowhere to put a result either, it tells the writer to stop.
+     */
+    private static class Handoff {
+
+        static final Handoff STOP = new Handoff(null, null);
+
+        final UpdateRequest request;
+        final CompletableFuture<SurrogateKey> result;
+
+        Handoff(final UpdateRequest request, final CompletableFuture<SurrogateKey> result) {
+            this.request = request;
+            this.result = result;
+        }
+    }
+
     /**
      * A real connection pool seems pointless since every thread is going to be hammering on the db.
+     *
+     * Each connection keeps the statements that have been prepared on it, keyed by their SQL, so that a statement is
+     * parsed once per connection rather than once per row.  Cached statements stay open until the pool is closed;
+     * callers must not close them.
      */
     private static class ThreadLocalConnectionPool implements Closeable {
 
-        private final ThreadLocal<Connection> threadLocal;
-        private final Collection<Connection> allConnections;
+        private final ThreadLocal<PooledConnection> threadLocal;
+        private final Collection<PooledConnection> allConnections;
         private final String connectionString;
         private final String username;
         private final String password;
+        private final List<String> sessionSql;
         private final Logger logger;
 
-        ThreadLocalConnectionPool(String connectionString, String username, String password, Logger logger) {
+        ThreadLocalConnectionPool(String connectionString, String username, String password, List<String> sessionSql, Logger logger) {
             this.connectionString = requireNonNull(connectionString);
             this.username = requireNonNull(username);
             this.password = requireNonNull(password);
+            this.sessionSql = requireNonNull(sessionSql);
             this.threadLocal = new ThreadLocal();
             this.allConnections = new ArrayList(16);
             this.logger = requireNonNull(logger);
         }
 
         public Connection get() throws SQLException {
-            Connection out = threadLocal.get();
-            if (out == null || out.isClosed()) {
+            return getPooled().connection;
+        }
+
+        /**
+         * @return a statement for the given sql on the current thread's connection, prepared on first use.
+         */
+        public PreparedStatement prepare(final String sql) throws SQLException {
+            final PooledConnection pc = getPooled();
+            PreparedStatement out = pc.statements.get(sql);
+            if (out == null) {
+                out = pc.connection.prepareStatement(sql);
+                pc.statements.put(sql, out);
+            }
+            return out;
+        }
+
+        /**
+         * Creates a temporary table on the current thread's connection, unless it's already been created there.
+         */
+        public void createTemporaryTable(final String name, final String ddl) throws SQLException {
+            final PooledConnection pc = getPooled();
+            if (pc.temporaryTables.contains(name)) return;
+            logger.info("creating temporary table " + name + ": " + ddl);
+            try (final Statement stmt = pc.connection.createStatement()) {
+                stmt.execute(ddl);
+            }
+            pc.temporaryTables.add(name);
+        }
+
+        private PooledConnection getPooled() throws SQLException {
+            PooledConnection out = threadLocal.get();
+            if (out == null || out.connection.isClosed()) {
                 logger.info("opening db connection to " + connectionString);
-                out = DriverManager.getConnection(connectionString, username, password);
+                out = new PooledConnection(DriverManager.getConnection(connectionString, username, password));
+                if (!sessionSql.isEmpty()) {
+                    try (final Statement stmt = out.connection.createStatement()) {
+                        for (final String sql : sessionSql) {
+                            stmt.execute(sql);
+                        }
+                    }
+                }
                 threadLocal.set(out);
-                allConnections.add(out);
+                synchronized (allConnections) {
+                    allConnections.add(out);
+                }
             }
             return out;
         }
 
         @Override
         public void close() throws IOException {
-            for (Connection c : this.allConnections) {
+            final List<PooledConnection> toClose;
+            synchronized (allConnections) {
+                toClose = new ArrayList<>(allConnections);
+                allConnections.clear();
+            }
+            for (PooledConnection pc : toClose) {
+                for (PreparedStatement stmt : pc.statements.values()) {
+                    try {
+                        stmt.close();
+                    } catch (SQLException e) {
+                        logger.log(Level.WARNING, "Problem closing statement", e);
+                    }
+                }
+                pc.statements.clear();
                 try {
-                    c.close();
+                    pc.connection.close();
                 } catch (SQLException e) {
                     logger.log(Level.SEVERE, "Problem closing db connection", e);
                 }
             }
         }
+
+        private static class PooledConnection {
+            final Connection connection;
+            final Map<String, PreparedStatement> statements = new HashMap<>();
+            final Set<String> temporaryTables = new HashSet<>();
+
+            PooledConnection(Connection connection) {
+                this.connection = requireNonNull(connection);
+            }
+        }
     }
 }
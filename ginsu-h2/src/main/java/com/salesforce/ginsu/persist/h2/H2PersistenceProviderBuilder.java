@@ -32,6 +32,9 @@ public class H2PersistenceProviderBuilder {
     private static final String DEFAULT_USER = "sa";
     private static final String DEFAULT_PASS = "";
     private static final int DEFAULT_INSERT_BATCH_SIZE = 50000;
+    private static final int DEFAULT_KEY_BLOCK_SIZE = 1000;
+    private static final int DEFAULT_WRITER_QUEUE_CAPACITY = 8192;
+    private static final int DEFAULT_WRITER_COMMIT_ROWS = 50000;
 
     private Path dbFile;
     private String connectionString;
@@ -39,6 +42,12 @@ public class H2PersistenceProviderBuilder {
     private String username = DEFAULT_USER;
     private String password = DEFAULT_PASS;
     private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+    private int keyBlockSize = DEFAULT_KEY_BLOCK_SIZE;
+    private boolean bulkLoad = false;
+    private boolean singleWriter = false;
+    private int writerQueueCapacity = DEFAULT_WRITER_QUEUE_CAPACITY;
+    private WaitStrategy writerWaitStrategy = WaitStrategy.BLOCKING;
+    private int writerCommitRows = DEFAULT_WRITER_COMMIT_ROWS;
 
     private Logger logger;
 
@@ -75,6 +84,63 @@ public class H2PersistenceProviderBuilder {
         return this;
     }
 
+    /**
+     * Sets how many surrogate keys are reserved from a table's sequence at a time.
+     */
+    public H2PersistenceProviderBuilder keyBlockSize(final int keyBlockSize) {
+        this.keyBlockSize = keyBlockSize;
+        return this;
+    }
+
+    /**
+     * Sets up the provider for building a warehouse from scratch.  Tables without surrogate keys are created without
+     * their indexes, and the load runs without H2's transaction log or undo log.  When the provider
+     * is closed, the missing indexes are built (in parallel where H2 allows) and the normal settings are restored.
+     * Only use this for a database that can be thrown away and rebuilt if the load fails.
+     */
+    public H2PersistenceProviderBuilder bulkLoad(final boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+        return this;
+    }
+
+    /**
+     * Has every update written by one dedicated thread on one connection, instead of by each loader thread on its
+     * own.  H2 serializes writes anyway, so loader threads writing in parallel mostly contend; with a single writer
+     * they just build rows and hand them over through a bounded queue.  Loader threads still wait for upserts whose
+     * keys they need.  See getWriterQueueStats() for sizing the number of loader threads against the writer.
+     */
+    public H2PersistenceProviderBuilder singleWriter(final boolean singleWriter) {
+        this.singleWriter = singleWriter;
+        return this;
+    }
+
+    /**
+     * Sets how many updates can wait for the single writer before loader threads have to wait for it.  Rounded up to
+     * a power of two.
+     */
+    public H2PersistenceProviderBuilder writerQueueCapacity(final int writerQueueCapacity) {
+        if (writerQueueCapacity < 1) throw new IllegalArgumentException("invalid writerQueueCapacity " + writerQueueCapacity);
+        this.writerQueueCapacity = writerQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets how the single writer and the loader threads wait for each other.  Defaults to BLOCKING.
+     */
+    public H2PersistenceProviderBuilder writerWaitStrategy(final WaitStrategy writerWaitStrategy) {
+        this.writerWaitStrategy = requireNonNull(writerWaitStrategy);
+        return this;
+    }
+
+    /**
+     * Sets how many updates the single writer runs between commits.  It also commits whenever its queue runs empty.
+     */
+    public H2PersistenceProviderBuilder writerCommitRows(final int writerCommitRows) {
+        if (writerCommitRows < 1) throw new IllegalArgumentException("invalid writerCommitRows " + writerCommitRows);
+        this.writerCommitRows = writerCommitRows;
+        return this;
+    }
+
     public H2PersistenceProviderBuilder logger(final Logger logger) {
         this.logger = requireNonNull(logger);
         return this;
@@ -101,7 +167,8 @@ public class H2PersistenceProviderBuilder {
         }
         if (logger == null) logger = Logger.getAnonymousLogger();
 
-        return new H2PersistenceProvider(connectionStringToUse, username, password, insertBatchSize,
+        return new H2PersistenceProvider(connectionStringToUse, username, password, insertBatchSize, keyBlockSize, bulkLoad,
+                singleWriter, writerQueueCapacity, writerWaitStrategy, writerCommitRows,
                 logger == null ? Logger.getAnonymousLogger() : logger);
     }
 
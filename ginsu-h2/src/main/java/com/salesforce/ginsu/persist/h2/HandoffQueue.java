@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded ring buffer from any number of producer threads to a single consumer.  Each slot has a sequence number
+ * that says whose turn it is: a producer claims the slot at the tail with a CAS on the tail counter, fills it and
+ * bumps its sequence to publish it; the consumer takes it and bumps the sequence again to hand the slot to the
+ * producer one lap later.  Neither side takes a lock unless the WaitStrategy is BLOCKING and the other side is
+ * asleep.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@ThreadSafe
+final class HandoffQueue<E> implements WriterQueueStats {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong(); // only the consumer writes it
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private volatile boolean consumerWaiting;
+    private volatile int producersWaiting; // only changed under the lock
+
+    private final AtomicInteger maxSize = new AtomicInteger();
+    private final LongAdder producerWaits = new LongAdder();
+    private volatile long consumerWaits; // only the consumer writes it
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    HandoffQueue(final int capacity, final WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("invalid capacity " + capacity);
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = requireNonNull(waitStrategy);
+    }
+
+    /**
+     * Adds an element, waiting for room if the queue is full.
+     */
+    void put(final E element) throws InterruptedException {
+        requireNonNull(element);
+        long pos;
+        boolean waited = false;
+        for (int tries = 0; ; ) {
+            pos = tail.get();
+            final long seq = sequences.get(slot(pos));
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (seq < pos) {
+                // still holding the element from the last lap
+                if (!waited) {
+                    producerWaits.increment();
+                    waited = true;
+                }
+                if (waitStrategy == WaitStrategy.BLOCKING) {
+                    awaitNotFull();
+                } else {
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    tries = idle(tries);
+                }
+            }
+            // otherwise another producer got there first
+        }
+        buffer[slot(pos)] = element;
+        sequences.set(slot(pos), pos + 1);
+        final int size = (int) Math.min(pos + 1 - head.get(), buffer.length); // head may not have caught up yet
+        if (size > maxSize.get()) maxSize.accumulateAndGet(size, Math::max);
+        if (consumerWaiting) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the next element, waiting for one if the queue is empty.  Only the consumer thread may call this.
+     */
+    E take() throws InterruptedException {
+        final long pos = head.get();
+        if (!isPublished(pos)) {
+            consumerWaits++;
+            if (waitStrategy == WaitStrategy.BLOCKING) {
+                awaitNotEmpty(pos);
+            } else {
+                for (int tries = 0; !isPublished(pos); ) {
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    tries = idle(tries);
+                }
+            }
+        }
+        return remove(pos);
+    }
+
+    /**
+     * @return the next element, or null if the queue is empty.  Only the consumer thread may call this.
+     */
+    E poll() {
+        final long pos = head.get();
+        return isPublished(pos) ? remove(pos) : null;
+    }
+
+    @Override
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public int getSize() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize.get();
+    }
+
+    @Override
+    public long getHandoffCount() {
+        return tail.get();
+    }
+
+    @Override
+    public long getProducerWaitCount() {
+        return producerWaits.sum();
+    }
+
+    @Override
+    public long getWriterWaitCount() {
+        return consumerWaits;
+    }
+
+    private int slot(final long pos) {
+        return (int) pos & mask;
+    }
+
+    private boolean isPublished(final long pos) {
+        return sequences.get(slot(pos)) == pos + 1;
+    }
+
+    private E remove(final long pos) {
+        final int slot = slot(pos);
+        @SuppressWarnings("unchecked") final E out = (E) buffer[slot];
+        buffer[slot] = null;
+        sequences.set(slot, pos + buffer.length);
+        head.set(pos + 1);
+        if (producersWaiting > 0) {
+            lock.lock();
+            try {
+                notFull.signal(); // one slot, one producer
+            } finally {
+                lock.unlock();
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The waiting flags are set before the queue is checked, and the other side sets the sequence before it checks
+     * the flags, so either we see the change or they see us waiting and signal.
+     */
+    private void awaitNotEmpty(final long pos) throws InterruptedException {
+        lock.lock();
+        try {
+            consumerWaiting = true;
+            while (!isPublished(pos)) {
+                notEmpty.await();
+            }
+        } finally {
+            consumerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void awaitNotFull() throws InterruptedException {
+        lock.lock();
+        try {
+            producersWaiting++;
+            while (true) {
+                final long pos = tail.get();
+                if (sequences.get(slot(pos)) >= pos) break;
+                notFull.await();
+            }
+        } finally {
+            producersWaiting--;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the tries to pass next time.
+     */
+    private int idle(final int tries) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                if (tries >= SPIN_TRIES) Thread.yield();
+                break;
+            case SLEEPING:
+                if (tries >= SPIN_TRIES + YIELD_TRIES) {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                } else if (tries >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+                break;
+            default:
+                throw new IllegalStateException("unexpected wait strategy " + waitStrategy);
+        }
+        return Math.min(tries + 1, SPIN_TRIES + YIELD_TRIES);
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+import com.salesforce.ginsu.persistence.ColumnDef;
+import com.salesforce.ginsu.persistence.TableDef;
+import com.salesforce.ginsu.persistence.jdbc.JdbcRowBinder;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The DML we run against a single table, and the binders for its parameters.  They never change once the schema is
+ * known, so they're built once per table rather than once per row.  The strings also serve as keys into the
+ * per-connection statement caches.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+@Immutable
+final class TableSql {
+
+    /**
+     * The column of the stage table that holds each row's position in its batch.
+     */
+    static final String STAGE_ORDINAL_COLUMN = "STAGE_ORDINAL";
+
+    /**
+     * How many rows go into the stage table per INSERT.  JDBC batches don't save round trips with H2's client, but
+     * multi-row VALUES do.
+     */
+    static final int STAGE_INSERT_ROWS = 100;
+
+    private final String insertSql;
+    private final String mergeSql;
+    private final String selectKeySql;
+    private final String scanKeysSql;
+    private final String updateSql;
+    private final String stageTableName;
+    private final String stageInsertSql;
+    private final String mergeFromStageSql;
+    private final String selectStagedKeysSql;
+    private final boolean mergeNullSafe;
+    private final JdbcRowBinder valueBinder;
+    private final JdbcRowBinder naturalKeyBinder;
+
+    TableSql(final TableDef table) {
+        requireNonNull(table);
+        this.insertSql = buildInsertSql(table);
+        this.mergeSql = buildMergeSql(table);
+        this.updateSql = buildUpdateSql(table);
+        this.mergeNullSafe = table.getDigestColumnName() != null ||
+                table.getNaturalKeyColumns().stream().noneMatch(ColumnDef::isNullable);
+        this.selectKeySql = table.hasSurrogateKey() ? buildSelectKeySql(table) : null;
+        this.scanKeysSql = table.hasSurrogateKey() ? buildScanKeysSql(table) : null;
+        this.stageTableName = table.getTableName() + "_STAGE";
+        this.stageInsertSql = buildStageInsertSql(table, stageTableName, STAGE_INSERT_ROWS);
+        this.mergeFromStageSql = buildMergeFromStageSql(table, stageTableName);
+        this.selectStagedKeysSql = table.hasSurrogateKey() ? buildSelectStagedKeysSql(table, stageTableName) : null;
+        this.valueBinder = JdbcRowBinder.forValueColumns(table);
+        this.naturalKeyBinder = new JdbcRowBinder(table.getNaturalKeyColumns());
+    }
+
+    /**
+     * @return the binder for the value columns, in the order the statements here list them.
+     */
+    JdbcRowBinder getValueBinder() {
+        return this.valueBinder;
+    }
+
+    /**
+     * @return the binder for the natural key columns, in the order getUpdateSql() and getSelectKeySql() find rows by
+     * them.
+     */
+    JdbcRowBinder getNaturalKeyBinder() {
+        return this.naturalKeyBinder;
+    }
+
+    /**
+     * @return an INSERT that binds the surrogate key (if the table has one), the value columns and the digest (if the
+     * table has one).
+     */
+    String getInsertSql() {
+        return this.insertSql;
+    }
+
+    /**
+     * @return a MERGE keyed on the digest or else the natural key columns that binds the value columns and the digest
+     * (if the table has one).
+     */
+    String getMergeSql() {
+        return this.mergeSql;
+    }
+
+    /**
+     * @return false if a natural key column is nullable and there's no digest to key on instead.  MERGE never matches a
+     * NULL key value, so it would insert those rows again every time; they have to go through getUpdateSql() and an
+     * insert instead.
+     */
+    boolean isMergeNullSafe() {
+        return this.mergeNullSafe;
+    }
+
+    /**
+     * @return an UPDATE of every value column that binds the value columns, followed by the natural key columns to
+     * find the row by.  NULLs match NULLs.
+     */
+    String getUpdateSql() {
+        return this.updateSql;
+    }
+
+    /**
+     * @return a SELECT of the surrogate key that binds the digest or else the natural key columns, or null if the table
+     * has no surrogate key.  NULLs match NULLs.
+     */
+    String getSelectKeySql() {
+        return this.selectKeySql;
+    }
+
+    /**
+     * @return a SELECT of the surrogate key followed by the value columns of every row, or null if the table has no
+     * surrogate key.
+     */
+    String getScanKeysSql() {
+        return this.scanKeysSql;
+    }
+
+    /**
+     * @return the name of the temporary table that batch upserts stage their rows in.  It has an ordinal column
+     * followed by the value columns and the digest, if the table has one.
+     */
+    String getStageTableName() {
+        return this.stageTableName;
+    }
+
+    /**
+     * @return an INSERT of the given number of rows into the stage table that binds, for each row, its position in the
+     * batch, the value columns and the digest (if the table has one).
+     */
+    String getStageInsertSql(final TableDef table, final int rows) {
+        return rows == STAGE_INSERT_ROWS ? this.stageInsertSql : buildStageInsertSql(table, this.stageTableName, rows);
+    }
+
+    /**
+     * @return a statement that adds everything in the stage table to the table, binding nothing.  Where the natural key
+     * is the whole row there's nothing to update, so it's an INSERT of the staged rows that aren't there yet;
+     * otherwise it's a MERGE keyed like getMergeSql().
+     */
+    String getMergeFromStageSql() {
+        return this.mergeFromStageSql;
+    }
+
+    /**
+     * @return a SELECT of each staged row's position and the surrogate key of its row in the table, or null if the
+     * table has no surrogate key.  Binds nothing.  Only for tables where isMergeNullSafe(), since it joins with =.
+     */
+    String getSelectStagedKeysSql() {
+        return this.selectStagedKeysSql;
+    }
+
+    private static String buildInsertSql(final TableDef table) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ");
+        sql.append(table.getTableName());
+        sql.append(" (");
+        if (table.hasSurrogateKey()) {
+            sql.append(table.getSurrogateKeyColumnName());
+            sql.append(",");
+        }
+        appendColumnsAndDigest(table, sql);
+        sql.append(") VALUES (");
+        if (table.hasSurrogateKey()) {
+            sql.append("?, ");
+        }
+        appendParametersAndDigest(table, sql);
+        sql.append(")");
+        return sql.toString();
+    }
+
+    private static String buildMergeSql(final TableDef table) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("MERGE INTO ");
+        sql.append(table.getTableName());
+        sql.append(" (");
+        appendColumnsAndDigest(table, sql);
+        sql.append(") KEY (");
+        if (table.getDigestColumnName() != null) {
+            sql.append(table.getDigestColumnName());
+        } else {
+            for (final ColumnDef col : table.getNaturalKeyColumns()) {
+                sql.append(col.getColumnName());
+                sql.append(",");
+            }
+        }
+        sql.append(") VALUES (");
+        appendParametersAndDigest(table, sql);
+        sql.append(")");
+        return sql.toString();
+    }
+
+    private static String buildSelectKeySql(final TableDef table) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        sql.append(table.getSurrogateKeyColumnName());
+        sql.append(" FROM ");
+        sql.append(table.getTableName());
+        if (table.getDigestColumnName() != null) {
+            sql.append(" WHERE ");
+            sql.append(table.getDigestColumnName());
+            sql.append(" = ?");
+        } else {
+            appendNaturalKeyCondition(table, sql);
+        }
+        return sql.toString();
+    }
+
+    private static String buildStageInsertSql(final TableDef table, final String stageTableName, final int rows) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ");
+        sql.append(stageTableName);
+        sql.append(" (");
+        sql.append(STAGE_ORDINAL_COLUMN);
+        sql.append(",");
+        appendColumnsAndDigest(table, sql);
+        sql.append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("(?, ");
+            appendParametersAndDigest(table, sql);
+            sql.append(")");
+        }
+        return sql.toString();
+    }
+
+    private static String buildMergeFromStageSql(final TableDef table, final String stageTableName) {
+        if (table.getNaturalKeyColumns().size() == table.getValueColumns().size()) {
+            // nothing to update on rows that are already there, so just insert the ones that aren't
+            final StringBuilder sql = new StringBuilder();
+            sql.append("INSERT INTO ");
+            sql.append(table.getTableName());
+            sql.append(" (");
+            appendColumnsAndDigest(table, sql);
+            sql.setLength(sql.length() - 1);
+            sql.append(") SELECT DISTINCT ");
+            appendColumnsAndDigest(table, sql);
+            sql.setLength(sql.length() - 1);
+            sql.append(" FROM ");
+            sql.append(stageTableName);
+            sql.append(" S WHERE NOT EXISTS (SELECT 1 FROM ");
+            sql.append(table.getTableName());
+            sql.append(" T WHERE ");
+            appendStageJoinCondition(table, sql);
+            sql.append(")");
+            return sql.toString();
+        }
+        final String mergeSql = buildMergeSql(table);
+        final StringBuilder sql = new StringBuilder(mergeSql.substring(0, mergeSql.indexOf(" VALUES (")));
+        sql.append(" SELECT ");
+        appendColumnsAndDigest(table, sql);
+        sql.setLength(sql.length() - 1);
+        sql.append(" FROM ");
+        sql.append(stageTableName);
+        return sql.toString();
+    }
+
+    private static String buildSelectStagedKeysSql(final TableDef table, final String stageTableName) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT S.");
+        sql.append(STAGE_ORDINAL_COLUMN);
+        sql.append(", T.");
+        sql.append(table.getSurrogateKeyColumnName());
+        sql.append(" FROM ");
+        sql.append(stageTableName);
+        sql.append(" S JOIN ");
+        sql.append(table.getTableName());
+        sql.append(" T ON ");
+        appendStageJoinCondition(table, sql);
+        return sql.toString();
+    }
+
+    /**
+     * Matches a row of the table, T, to a staged row, S, by digest or else natural key.
+     */
+    private static void appendStageJoinCondition(final TableDef table, final StringBuilder sql) {
+        if (table.getDigestColumnName() != null) {
+            sql.append("T.").append(table.getDigestColumnName()).append(" = S.").append(table.getDigestColumnName());
+        } else {
+            int index = 1;
+            for (final ColumnDef col : table.getNaturalKeyColumns()) {
+                if (index++ > 1) sql.append(" AND ");
+                sql.append("T.").append(col.getColumnName()).append(" = S.").append(col.getColumnName());
+            }
+        }
+    }
+
+    private static void appendColumnsAndDigest(final TableDef table, final StringBuilder sql) {
+        for (final ColumnDef col : table.getValueColumns()) {
+            sql.append(col.getColumnName());
+            sql.append(",");
+        }
+        if (table.getDigestColumnName() != null) {
+            sql.append(table.getDigestColumnName());
+            sql.append(",");
+        }
+    }
+
+    private static void appendParametersAndDigest(final TableDef table, final StringBuilder sql) {
+        for (final ColumnDef col : table.getValueColumns()) {
+            sql.append("?, ");
+        }
+        if (table.getDigestColumnName() != null) {
+            sql.append("?, ");
+        }
+    }
+
+    private static String buildUpdateSql(final TableDef table) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ");
+        sql.append(table.getTableName());
+        sql.append(" SET ");
+        int paramIndex = 1;
+        for (final ColumnDef col : table.getValueColumns()) {
+            if (paramIndex++ > 1) sql.append(", ");
+            sql.append(col.getColumnName());
+            sql.append(" = ?");
+        }
+        appendNaturalKeyCondition(table, sql);
+        return sql.toString();
+    }
+
+    /**
+     * IS rather than = so that NULLs match; H2 still uses indexes for it.
+     */
+    private static void appendNaturalKeyCondition(final TableDef table, final StringBuilder sql) {
+        sql.append(" WHERE ");
+        int paramIndex = 1;
+        for (final ColumnDef col : table.getNaturalKeyColumns()) {
+            if (paramIndex++ > 1) sql.append(" AND ");
+            sql.append(col.getColumnName());
+            sql.append(" IS ?");
+        }
+    }
+
+    private static String buildScanKeysSql(final TableDef table) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        sql.append(table.getSurrogateKeyColumnName());
+        for (final ColumnDef col : table.getValueColumns()) {
+            sql.append(", ");
+            sql.append(col.getColumnName());
+        }
+        sql.append(" FROM ");
+        sql.append(table.getTableName());
+        return sql.toString();
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+/**
+ * How the single writer waits for rows when its queue is empty, and how loader threads wait for room when it's full.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see H2PersistenceProviderBuilder#singleWriter(boolean)
+ */
+public enum WaitStrategy {
+
+    /**
+     * Park on a lock until signalled.  Costs a lock and a wakeup per hand-off that finds the other side waiting, but
+     * burns no CPU.  The right choice unless there are cores to spare.
+     */
+    BLOCKING,
+
+    /**
+     * Spin briefly, then yield, then sleep for a fraction of a millisecond at a time.  Cheaper hand-offs than BLOCKING
+     * at the cost of some latency and a little CPU while idle.
+     */
+    SLEEPING,
+
+    /**
+     * Spin briefly, then keep yielding.  Low latency, but an idle side keeps a core busy unless other threads want it.
+     */
+    YIELDING,
+
+    /**
+     * Spin.  Lowest latency; only for when the writer and every loader thread have a core to themselves.
+     */
+    BUSY_SPIN
+}
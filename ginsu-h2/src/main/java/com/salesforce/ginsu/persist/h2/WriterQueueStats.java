@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+/**
+ * Occupancy of the queue between the loader threads and the single writer.  A queue that's usually near capacity,
+ * with loader threads often waiting, means the writer is the bottleneck and more loader threads won't help; a queue
+ * that's usually empty, with the writer often waiting, means the loaders are.
+ *
+ * @author pcal
+ * @since 0.0.1
+ * @see H2PersistenceProvider#getWriterQueueStats()
+ */
+public interface WriterQueueStats {
+
+    /**
+     * @return how many updates the queue can hold.
+     */
+    int getCapacity();
+
+    /**
+     * @return how many updates are in the queue now.
+     */
+    int getSize();
+
+    /**
+     * @return the most updates that have been in the queue at once.
+     */
+    int getMaxSize();
+
+    /**
+     * @return how many updates have been handed to the writer.
+     */
+    long getHandoffCount();
+
+    /**
+     * @return how many times a loader thread found the queue full and had to wait.
+     */
+    long getProducerWaitCount();
+
+    /**
+     * @return how many times the writer found the queue empty and had to wait.
+     */
+    long getWriterWaitCount();
+}
@@ -0,0 +1,435 @@
+/**
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package com.salesforce.ginsu.persist.h2;
+
+import com.google.common.base.Throwables;
+import com.salesforce.ginsu.persistence.LongSurrogateKey;
+import com.salesforce.ginsu.persistence.PersistenceException;
+import com.salesforce.ginsu.persistence.TableDef;
+import com.salesforce.ginsu.schema.*;
+import com.salesforce.ginsu.warehouse.*;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs the provider against in-memory databases and checks what it wrote with a connection of its own.  close() ends
+ * with SHUTDOWN, which drops an in-memory database, so the checks happen before it; tests that need to look after
+ * close() use a file instead.
+ *
+ * @author pcal
+ * @since 0.0.1
+ */
+public class H2PersistenceProviderTest extends TestCase {
+
+    public void testKeyBlocks() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("color").setKeyCacheSize(0);
+        final Column<String> name = tb.addColumn("name", ColumnType.STRING).build();
+        final Table color = tb.build();
+        final H2PersistenceProvider pp = builder().insertBatchSize(4).keyBlockSize(10).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect()) {
+            for (int i = 1; i <= 25; i++) {
+                assertEquals(new LongSurrogateKey(i), w.buildRow(color).set(name, "c" + i).insert());
+            }
+            pp.flush();
+            final List<List<Object>> expected = new ArrayList<>();
+            for (int i = 1; i <= 25; i++) {
+                expected.add(Arrays.asList(i, "c" + i));
+            }
+            assertEquals(expected, query(c, "SELECT COLOR_ID, NAME FROM COLOR_DIM ORDER BY COLOR_ID"));
+            // three blocks of ten came off the sequence, so a key the database assigns comes after them
+            assertEquals(rows(row(30L)), query(c, "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'COLOR_DIM_SEQ'"));
+            assertEquals(new LongSurrogateKey(31), w.buildRow(color).set(name, "c26").upsert());
+            assertEquals(new LongSurrogateKey(31), w.buildRow(color).set(name, "c26").upsert());
+            assertEquals(new LongSurrogateKey(5), w.buildRow(color).set(name, "c5").upsert());
+            assertEquals(rows(row(26L)), query(c, "SELECT COUNT(*) FROM COLOR_DIM"));
+        }
+        w.close();
+    }
+
+    public void testBlindUpsertBatches() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("color").setKeyCacheSize(0);
+        final Column<String> name = tb.addColumn("name", ColumnType.STRING).build();
+        final Table color = tb.build();
+        final H2PersistenceProvider pp = builder().insertBatchSize(3).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect()) {
+            w.buildRow(color).set(name, "red").blindUpsert();
+            w.buildRow(color).set(name, "green").blindUpsert();
+            w.buildRow(color).set(name, "red").blindUpsert(); // already in the batch
+            assertEquals(rows(row(0L)), query(c, "SELECT COUNT(*) FROM COLOR_DIM"));
+            w.buildRow(color).set(name, "blue").blindUpsert();
+            assertEquals(rows(row("blue"), row("green"), row("red")), query(c, "SELECT NAME FROM COLOR_DIM ORDER BY NAME"));
+            w.buildRow(color).set(name, "green").blindUpsert(); // already in the table
+            w.buildRow(color).set(name, "teal").blindUpsert();
+            assertEquals(rows(row(3L)), query(c, "SELECT COUNT(*) FROM COLOR_DIM"));
+            pp.flush();
+            assertEquals(rows(row("blue"), row("green"), row("red"), row("teal")), query(c, "SELECT NAME FROM COLOR_DIM ORDER BY NAME"));
+            assertEquals(4, query(c, "SELECT DISTINCT COLOR_ID FROM COLOR_DIM").size());
+
+            // an upsert of a batched row writes the batch first so that it can read the key back
+            w.buildRow(color).set(name, "cyan").blindUpsert();
+            final SurrogateKey cyan = w.buildRow(color).set(name, "cyan").upsert();
+            assertEquals(rows(row(key(cyan))), query(c, "SELECT COLOR_ID FROM COLOR_DIM WHERE NAME = 'cyan'"));
+        }
+        w.close();
+    }
+
+    public void testNullableNaturalKey() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("customer").setKeyCacheSize(0);
+        final Column<String> code = tb.addColumn("code", ColumnType.STRING).nullable(true).build();
+        final Column<String> region = tb.addColumn("region", ColumnType.STRING).nullable(true).build();
+        final Column<Integer> tier = tb.addColumn("tier", ColumnType.INTEGER).build();
+        tb.setPrimaryKeyColumns(Arrays.asList(code, region));
+        final Table customer = tb.build();
+        final H2PersistenceProvider pp = builder().build();
+        assertFalse(new TableSql((TableDef) customer).isMergeNullSafe());
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect()) {
+            final SurrogateKey west = w.buildRow(customer).set(region, "west").setInt(tier, 1).upsert();
+            final SurrogateKey none = w.buildRow(customer).setInt(tier, 1).upsert();
+            assertFalse(west.equals(none));
+            // NULLs in the natural key match, so these update the rows rather than adding more
+            assertEquals(west, w.buildRow(customer).set(region, "west").setInt(tier, 2).upsert());
+            assertEquals(none, w.buildRow(customer).setInt(tier, 3).upsert());
+            assertEquals(rows(row(key(west), null, "west", 2), row(key(none), null, null, 3)),
+                    query(c, "SELECT CUSTOMER_ID, CODE, REGION, TIER FROM CUSTOMER_DIM ORDER BY REGION DESC NULLS LAST"));
+
+            // MERGE can't match the NULLs, so these go one at a time rather than through the stage table
+            final List<SurrogateKey> keys = w.upsertBatch(customer, Arrays.asList("a", null, "west", "a", null), (r, row) -> {
+                row.set(code, "a".equals(r) ? r : null).set(region, "west".equals(r) ? r : null).setInt(tier, 4);
+                return true;
+            });
+            assertEquals(none, keys.get(1));
+            assertEquals(west, keys.get(2));
+            assertEquals(keys.get(0), keys.get(3));
+            assertEquals(none, keys.get(4));
+            pp.flush(); // new members are inserted, and inserts are batched
+            assertEquals(rows(row(3L, 1L)), query(c, "SELECT COUNT(*), COUNT(DISTINCT TIER) FROM CUSTOMER_DIM"));
+        }
+        w.close();
+    }
+
+    public void testNaturalKeyAndDigestIndexes() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder customerBuilder = sb.dimensionTableBuilder("customer");
+        final Column<String> code = customerBuilder.addColumn("code", ColumnType.STRING).build();
+        final Column<Integer> tier = customerBuilder.addColumn("tier", ColumnType.INTEGER).build();
+        customerBuilder.setPrimaryKeyColumns(Collections.singletonList(code));
+        final Table customer = customerBuilder.build();
+        final TableBuilder productBuilder = sb.dimensionTableBuilder("product").setNaturalKeyDigest(true);
+        final Column<String> sku = productBuilder.addColumn("sku", ColumnType.STRING).build();
+        final Column<String> maker = productBuilder.addColumn("maker", ColumnType.STRING).nullable(true).build();
+        final Table product = productBuilder.build();
+        final String digest = ((TableDef) product).getDigestColumnName();
+        final H2PersistenceProvider pp = builder().build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect()) {
+            assertEquals(rows(row(false)), query(c, "SELECT NON_UNIQUE FROM INFORMATION_SCHEMA.INDEXES " +
+                    "WHERE INDEX_NAME = 'CUSTOMER_DIM__NATURAL_KEY__INDEX'"));
+            assertEquals(rows(row(false)), query(c, "SELECT NON_UNIQUE FROM INFORMATION_SCHEMA.INDEXES " +
+                    "WHERE INDEX_NAME = '" + ("product_DIM__" + digest + "__INDEX").toUpperCase() + "'"));
+
+            final SurrogateKey a = w.buildRow(customer).set(code, "a").setInt(tier, 1).upsert();
+            assertEquals(a, w.buildRow(customer).set(code, "a").setInt(tier, 2).upsert());
+            assertEquals(rows(row(key(a), "a", 2)), query(c, "SELECT CUSTOMER_ID, CODE, TIER FROM CUSTOMER_DIM"));
+            assertUpdateFails(c, "INSERT INTO CUSTOMER_DIM (CODE, TIER) VALUES ('a', 3)");
+
+            // the digest stands in for the nullable natural key, so MERGE can be used
+            assertTrue(new TableSql((TableDef) product).isMergeNullSafe());
+            final SurrogateKey widget = w.buildRow(product).set(sku, "widget").upsert();
+            assertEquals(widget, w.buildRow(product).set(sku, "widget").upsert());
+            final SurrogateKey acmeWidget = w.buildRow(product).set(sku, "widget").set(maker, "acme").upsert();
+            assertFalse(widget.equals(acmeWidget));
+            assertEquals(rows(row(key(widget), null, 16L), row(key(acmeWidget), "acme", 16L)),
+                    query(c, "SELECT PRODUCT_ID, MAKER, LENGTH(" + digest + ") FROM PRODUCT_DIM ORDER BY PRODUCT_ID"));
+            assertUpdateFails(c, "INSERT INTO PRODUCT_DIM (SKU, MAKER, " + digest + ") " +
+                    "SELECT SKU, MAKER, " + digest + " FROM PRODUCT_DIM WHERE PRODUCT_ID = " + key(widget));
+        }
+        w.close();
+    }
+
+    public void testOpenExisting() throws Exception {
+        try (final Connection c = connectToFile(); final Statement stmt = c.createStatement()) {
+            // as another tool might have made it, with no sequence
+            stmt.executeUpdate("CREATE TABLE COLOR_DIM (COLOR_ID INT PRIMARY KEY, NAME VARCHAR, SHADE INTEGER, NOTE VARCHAR(10))");
+            stmt.executeUpdate("INSERT INTO COLOR_DIM VALUES (5, 'red', 1, 'x'), (9, 'green', 2, NULL)");
+        }
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.dimensionTableBuilder("color").setKeyCacheSize(0);
+        final Column<String> name = tb.addColumn("name", ColumnType.STRING).build();
+        final Column<Integer> shade = tb.addColumn("shade", ColumnType.INTEGER).build();
+        final Table color = tb.build();
+        final Schema schema = sb.build();
+
+        final H2PersistenceProvider fresh = fileBuilder().build();
+        try {
+            WarehouseBuilder.create().setSchema(schema).setPersistence(fresh).build();
+            fail("didn't get expected PersistenceException");
+        } catch (PersistenceException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("_DIM already exists"));
+        } finally {
+            fresh.close();
+        }
+
+        final H2PersistenceProvider pp = fileBuilder().keyBlockSize(1).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(schema).setPersistence(pp).setOpenExisting(true).build();
+        assertEquals(new LongSurrogateKey(5), w.buildRow(color).set(name, "red").setInt(shade, 1).upsert());
+        assertEquals(new LongSurrogateKey(10), w.buildRow(color).set(name, "blue").setInt(shade, 3).insert());
+        assertEquals(new LongSurrogateKey(11), w.buildRow(color).set(name, "teal").setInt(shade, 4).upsert());
+        pp.flush();
+        try (final Connection c = connectToFile(); final Statement stmt = c.createStatement()) {
+            // the key column's default comes from the sequence now
+            stmt.executeUpdate("INSERT INTO COLOR_DIM (NAME, SHADE) VALUES ('gray', 0)");
+            assertEquals(rows(row(5, "red", 1, "x"), row(9, "green", 2, null), row(10, "blue", 3, null),
+                    row(11, "teal", 4, null), row(12, "gray", 0, null)),
+                    query(c, "SELECT COLOR_ID, NAME, SHADE, NOTE FROM COLOR_DIM ORDER BY COLOR_ID"));
+        }
+        w.close();
+
+        // now that the sequence is there, it's used as is
+        final Warehouse w2 = WarehouseBuilder.create().setSchema(schema).setPersistence(fileBuilder().keyBlockSize(1).build()).
+                setOpenExisting(true).build();
+        assertEquals(new LongSurrogateKey(9), w2.buildRow(color).set(name, "green").setInt(shade, 2).upsert());
+        assertEquals(new LongSurrogateKey(13), w2.buildRow(color).set(name, "pink").setInt(shade, 5).upsert());
+        w2.close();
+
+        try (final Connection c = connectToFile(); final Statement stmt = c.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE COLOR_DIM ALTER COLUMN SHADE VARCHAR");
+            stmt.executeUpdate("ALTER TABLE COLOR_DIM ADD COLUMN HUE INTEGER NOT NULL DEFAULT 0");
+            stmt.executeUpdate("ALTER TABLE COLOR_DIM ADD COLUMN SATURATION INTEGER");
+            stmt.executeUpdate("UPDATE COLOR_DIM SET SATURATION = 0");
+            stmt.executeUpdate("ALTER TABLE COLOR_DIM ALTER COLUMN SATURATION SET NOT NULL");
+        }
+        final H2PersistenceProvider mismatched = fileBuilder().build();
+        try {
+            WarehouseBuilder.create().setSchema(schema).setPersistence(mismatched).setOpenExisting(true).build();
+            fail("didn't get expected PersistenceException");
+        } catch (PersistenceException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("_DIM.SHADE is VARCHAR, expected INTEGER"));
+            assertTrue(expected.getMessage(), expected.getMessage().contains("_DIM.SATURATION is NOT NULL with no default"));
+            assertFalse(expected.getMessage(), expected.getMessage().contains("HUE"));
+        } finally {
+            mismatched.close();
+        }
+    }
+
+    public void testBulkLoadDefersIndexes() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder colorBuilder = sb.dimensionTableBuilder("color");
+        final Column<String> name = colorBuilder.addColumn("name", ColumnType.STRING).build();
+        final Table color = colorBuilder.build();
+        final TableBuilder paintBuilder = sb.factTableBuilder("paint");
+        final Column<SurrogateKey> colorKey = paintBuilder.addForeignKey(color).build();
+        final Column<Double> liters = paintBuilder.addColumn("liters", ColumnType.DOUBLE).build();
+        final Table paint = paintBuilder.build();
+        final H2PersistenceProvider pp = fileBuilder().bulkLoad(true).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connectToFile()) {
+            // the dimension is looked up during the load, so its indexes are there from the start
+            assertEquals(rows(row("COLOR_DIM__NAME__INDEX")), query(c, "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES " +
+                    "WHERE TABLE_NAME = 'COLOR_DIM' AND INDEX_NAME LIKE '%__INDEX'"));
+            assertEquals(rows(), query(c, "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PAINT_FACT'"));
+            assertEquals(rows(row(3)), query(c, "SELECT LOCK_MODE()"));
+            for (int i = 0; i < 100; i++) {
+                final SurrogateKey key = w.buildRow(color).set(name, "c" + (i % 7)).upsert();
+                w.buildRow(paint).set(colorKey, key).setDouble(liters, i).insert();
+            }
+        }
+        w.close();
+        try (final Connection c = connectToFile()) {
+            assertEquals(rows(row("PAINT_FACT__COLOR_ID__INDEX"), row("PAINT_FACT__LITERS__INDEX")),
+                    query(c, "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PAINT_FACT' ORDER BY INDEX_NAME"));
+            assertEquals(rows(row(100L, 7L, 4950.0)), query(c, "SELECT COUNT(*), COUNT(DISTINCT F.COLOR_ID), SUM(F.LITERS) " +
+                    "FROM PAINT_FACT F JOIN COLOR_DIM D ON F.COLOR_ID = D.COLOR_ID"));
+        }
+    }
+
+    public void testSingleWriterFailureOnClose() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder tb = sb.factTableBuilder("paint");
+        final Column<Double> liters = tb.addColumn("liters", ColumnType.DOUBLE).build();
+        final Table paint = tb.build();
+        final H2PersistenceProvider pp = builder().singleWriter(true).insertBatchSize(1).build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect(); final Statement stmt = c.createStatement()) {
+            w.buildRow(paint).setDouble(liters, 1).insert();
+            pp.flush();
+            assertEquals(rows(row(1.0)), query(c, "SELECT LITERS FROM PAINT_FACT"));
+            stmt.executeUpdate("ALTER TABLE PAINT_FACT ADD CONSTRAINT PAINT_FACT__LITERS__CHECK CHECK (LITERS >= 0)");
+            w.buildRow(paint).setDouble(liters, -1).insert(); // nobody waits on this one
+            try {
+                w.close();
+                fail("didn't get expected IOException");
+            } catch (IOException expected) {
+                assertEquals("single writer failed", expected.getMessage());
+                assertTrue(Throwables.getRootCause(expected) instanceof SQLException);
+            }
+            assertEquals(rows(row(1.0)), query(c, "SELECT LITERS FROM PAINT_FACT"));
+        } finally {
+            dropDatabase();
+        }
+    }
+
+    public void testStagedUpsert() throws Exception {
+        final SchemaBuilder sb = SchemaBuilder.create();
+        final TableBuilder colorBuilder = sb.dimensionTableBuilder("color").setKeyCacheSize(0);
+        final Column<String> name = colorBuilder.addColumn("name", ColumnType.STRING).build();
+        final Column<Integer> shade = colorBuilder.addColumn("shade", ColumnType.INTEGER).build();
+        colorBuilder.setPrimaryKeyColumns(Collections.singletonList(name));
+        final Table color = colorBuilder.build();
+        final TableBuilder sizeBuilder = sb.dimensionTableBuilder("size").setKeyCacheSize(0);
+        final Column<String> label = sizeBuilder.addColumn("label", ColumnType.STRING).build();
+        final Table size = sizeBuilder.build();
+        final H2PersistenceProvider pp = builder().build();
+        final Warehouse w = WarehouseBuilder.create().setSchema(sb.build()).setPersistence(pp).build();
+        try (final Connection c = connect()) {
+            // the natural key is narrower than the row, so the staged rows are merged in
+            assertTrue(new TableSql((TableDef) color).getMergeFromStageSql().startsWith("MERGE"));
+            final SurrogateKey red = w.buildRow(color).set(name, "red").setInt(shade, 0).upsert();
+            final List<String> names = Arrays.asList("green", "red", "blue", "green", "teal", "red");
+            final List<SurrogateKey> colorKeys = w.upsertBatch(color, names, (n, row) -> {
+                row.set(name, n).setInt(shade, n.length());
+                return true;
+            });
+            assertEquals(red, colorKeys.get(1));
+            assertEquals(red, colorKeys.get(5));
+            assertEquals(colorKeys.get(0), colorKeys.get(3));
+            assertEquals(4, new HashSet<>(colorKeys).size());
+            assertEquals(rows(row(key(colorKeys.get(2)), "blue", 4), row(key(colorKeys.get(0)), "green", 5),
+                    row(key(red), "red", 3), row(key(colorKeys.get(4)), "teal", 4)),
+                    query(c, "SELECT COLOR_ID, NAME, SHADE FROM COLOR_DIM ORDER BY NAME"));
+
+            // the natural key is the whole row, so only the staged rows that aren't there yet are inserted
+            assertTrue(new TableSql((TableDef) size).getMergeFromStageSql().startsWith("INSERT"));
+            final SurrogateKey small = w.buildRow(size).set(label, "S").upsert();
+            final List<String> labels = Arrays.asList("M", "S", "L", "M", "XL");
+            final List<SurrogateKey> sizeKeys = w.upsertBatch(size, labels, (l, row) -> {
+                row.set(label, l);
+                return true;
+            });
+            assertEquals(small, sizeKeys.get(1));
+            assertEquals(sizeKeys.get(0), sizeKeys.get(3));
+            assertEquals(4, new HashSet<>(sizeKeys).size());
+            final List<List<Object>> expected = new ArrayList<>();
+            for (int i = 0; i < labels.size(); i++) {
+                expected.add(row(labels.get(i), key(sizeKeys.get(i))));
+            }
+            assertEquals(expected, query(c, "SELECT L.X, S.SIZE_ID FROM (" +
+                    "SELECT 0 AS I, 'M' AS X UNION ALL SELECT 1, 'S' UNION ALL SELECT 2, 'L' UNION ALL SELECT 3, 'M' UNION ALL SELECT 4, 'XL'" +
+                    ") L JOIN SIZE_DIM S ON S.LABEL = L.X ORDER BY L.I"));
+            assertEquals(rows(row(4L)), query(c, "SELECT COUNT(*) FROM SIZE_DIM"));
+        }
+        w.close();
+    }
+
+    private Path tempDir;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (tempDir != null) {
+            try (final Stream<Path> files = Files.list(tempDir)) {
+                for (final Iterator<Path> i = files.iterator(); i.hasNext(); ) {
+                    Files.delete(i.next());
+                }
+            }
+            Files.delete(tempDir);
+        }
+    }
+
+    private H2PersistenceProviderBuilder builder() {
+        return new H2PersistenceProviderBuilder().connectionString(getUrl());
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(getUrl(), "sa", "");
+    }
+
+    /**
+     * Each test gets its own database, kept open between connections until the provider shuts it down.
+     */
+    private String getUrl() {
+        return "jdbc:h2:mem:" + getName() + ";DB_CLOSE_DELAY=-1";
+    }
+
+    private H2PersistenceProviderBuilder fileBuilder() throws IOException {
+        return new H2PersistenceProviderBuilder().connectionString(getFileUrl());
+    }
+
+    private Connection connectToFile() throws IOException, SQLException {
+        return DriverManager.getConnection(getFileUrl(), "sa", "");
+    }
+
+    /**
+     * For tests that need the database to outlive the provider.
+     */
+    private String getFileUrl() throws IOException {
+        if (tempDir == null) tempDir = Files.createTempDirectory("ginsu-h2-test");
+        return "jdbc:h2:" + tempDir.resolve("db");
+    }
+
+    /**
+     * For tests that don't close the provider, or whose close fails before the SHUTDOWN.
+     */
+    private void dropDatabase() throws SQLException {
+        try (final Connection c = connect(); final Statement stmt = c.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+    }
+
+    private static void assertUpdateFails(final Connection c, final String sql) {
+        try (final Statement stmt = c.createStatement()) {
+            stmt.executeUpdate(sql);
+            fail("didn't get expected SQLException from " + sql);
+        } catch (SQLException expected) {
+        }
+    }
+
+    /**
+     * Keys are INTs in H2, so this is how they come back from a query.
+     */
+    private static int key(final SurrogateKey key) {
+        return Math.toIntExact(((LongSurrogateKey) key).getKeyValue());
+    }
+
+    private static List<Object> row(final Object... values) {
+        return Arrays.asList(values);
+    }
+
+    @SafeVarargs
+    private static List<List<Object>> rows(final List<Object>... rows) {
+        return Arrays.asList(rows);
+    }
+
+    private static List<List<Object>> query(final Connection c, final String sql) throws SQLException {
+        final List<List<Object>> out = new ArrayList<>();
+        try (final Statement stmt = c.createStatement(); final ResultSet rs = stmt.executeQuery(sql)) {
+            final int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                final List<Object> row = new ArrayList<>(columns);
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getObject(i));
+                }
+                out.add(row);
+            }
+        }
+        return out;
+    }
+}